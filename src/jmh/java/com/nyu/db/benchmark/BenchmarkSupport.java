@@ -0,0 +1,21 @@
+package com.nyu.db.benchmark;
+
+import com.nyu.db.utils.TraceLoggers;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+
+/**
+ * Shared setup of the benchmarks
+ */
+final class BenchmarkSupport {
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Silence the protocol trace so that benchmarks measure the database rather than console output
+     */
+    static void silenceLogging() {
+        Configurator.setLevel(TraceLoggers.ROOT, Level.OFF);
+    }
+}
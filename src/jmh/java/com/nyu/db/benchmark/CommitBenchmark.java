@@ -0,0 +1,70 @@
+package com.nyu.db.benchmark;
+
+import com.nyu.db.datamanager.DataManager;
+import com.nyu.db.datamanager.impl.DataManagerImpl;
+import com.nyu.db.model.CommitOperation;
+import com.nyu.db.model.Transaction;
+import com.nyu.db.model.WriteOperation;
+import com.nyu.db.transactionmanager.TransactionManager;
+import com.nyu.db.transactionmanager.TransactionManagerConfig;
+import com.nyu.db.transactionmanager.impl.TransactionManagerImpl;
+import com.nyu.db.utils.TimeManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write and commit of a transaction through the transaction manager, where the written variable is replicated on
+ * every site. Measures the cost of the precommit and commit fan-out as the number of sites grows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommitBenchmark {
+
+    private static final int VARIABLE_ID = 2;
+
+    @Param({"1", "4", "10", "32"})
+    private int numSites;
+
+    @Param({"1", "4"})
+    private int commitParallelism;
+
+    private TransactionManager transactionManager;
+    private long nextTransactionId;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkSupport.silenceLogging();
+        List<DataManager> dataManagers = new ArrayList<>();
+        for (int siteId=1; siteId<=this.numSites; siteId++) {
+            DataManager dm = new DataManagerImpl(siteId);
+            dm.registerVariable(VARIABLE_ID, 0);
+            dataManagers.add(dm);
+        }
+        this.transactionManager = new TransactionManagerImpl(dataManagers, TransactionManagerConfig.builder()
+                .concurrent(true)
+                .commitParallelism(this.commitParallelism)
+                .build());
+        this.nextTransactionId = 1;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.transactionManager.close();
+    }
+
+    @Benchmark
+    public boolean writeAndCommit() {
+        Transaction transaction = this.transactionManager.createTransaction(this.nextTransactionId++);
+        WriteOperation write = new WriteOperation(transaction, VARIABLE_ID, (int) transaction.getTransactionId(), TimeManager.getTime());
+        transaction.addOperation(write);
+        this.transactionManager.write(write);
+        return this.transactionManager.commitTransaction(new CommitOperation(transaction, TimeManager.getTime()));
+    }
+}
@@ -0,0 +1,69 @@
+package com.nyu.db.benchmark;
+
+import com.nyu.db.datamanager.impl.DataManagerImpl;
+import com.nyu.db.model.CommitOperation;
+import com.nyu.db.model.ReadOperation;
+import com.nyu.db.model.Transaction;
+import com.nyu.db.model.WriteOperation;
+import com.nyu.db.utils.TimeManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.OptionalInt;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshot reads of a single variable on one site, against version chains of increasing depth. Reads at the latest
+ * version take the inline fast path, reads from the middle of the chain binary search the history.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataManagerReadBenchmark {
+
+    private static final int VARIABLE_ID = 2;
+
+    @Param({"1", "16", "256", "4096"})
+    private int chainDepth;
+
+    private DataManagerImpl dataManager;
+    private ReadOperation latestRead;
+    private ReadOperation snapshotRead;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkSupport.silenceLogging();
+        this.dataManager = new DataManagerImpl(1);
+        this.dataManager.registerVariable(VARIABLE_ID, 0);
+
+        // The low watermark is never advanced, so every committed version stays in the chain
+        Transaction snapshotReader = null;
+        for (int i=1; i<this.chainDepth; i++) {
+            if (i == this.chainDepth / 2)
+                snapshotReader = new Transaction(-1);
+            Transaction writer = new Transaction(i);
+            WriteOperation write = new WriteOperation(writer, VARIABLE_ID, i, TimeManager.getTime());
+            writer.addOperation(write);
+            this.dataManager.write(write);
+            writer.setCommitTimestamp(TimeManager.incrementTime());
+            this.dataManager.commitTransaction(new CommitOperation(writer, TimeManager.getTime()));
+        }
+        if (snapshotReader == null)
+            snapshotReader = new Transaction(-1);
+        Transaction latestReader = new Transaction(-2);
+        this.latestRead = new ReadOperation(latestReader, VARIABLE_ID, TimeManager.getTime());
+        this.snapshotRead = new ReadOperation(snapshotReader, VARIABLE_ID, TimeManager.getTime());
+    }
+
+    @Benchmark
+    public OptionalInt readLatest() {
+        return this.dataManager.read(this.latestRead);
+    }
+
+    @Benchmark
+    public OptionalInt readSnapshot() {
+        return this.dataManager.read(this.snapshotRead);
+    }
+}
@@ -0,0 +1,53 @@
+package com.nyu.db.benchmark;
+
+import com.nyu.db.datamanager.impl.DataManagerImpl;
+import com.nyu.db.model.CommitOperation;
+import com.nyu.db.model.Transaction;
+import com.nyu.db.model.WriteOperation;
+import com.nyu.db.utils.TimeManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * First committer wins check of a transaction on one site, for write sets of increasing size. The check doesn't
+ * change any state, so the same transaction is validated on every invocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrecommitBenchmark {
+
+    private static final int NUM_VARIABLES = 4096;
+
+    @Param({"1", "16", "256"})
+    private int writeSetSize;
+
+    private DataManagerImpl dataManager;
+    private CommitOperation commit;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkSupport.silenceLogging();
+        this.dataManager = new DataManagerImpl(1);
+        for (int variableId=1; variableId<=NUM_VARIABLES; variableId++)
+            this.dataManager.registerVariable(variableId, variableId);
+
+        Transaction transaction = new Transaction(1);
+        int stride = NUM_VARIABLES / this.writeSetSize;
+        for (int i=0; i<this.writeSetSize; i++) {
+            WriteOperation write = new WriteOperation(transaction, 1 + i * stride, i, TimeManager.getTime());
+            transaction.addOperation(write);
+            this.dataManager.write(write);
+        }
+        this.commit = new CommitOperation(transaction, TimeManager.getTime());
+    }
+
+    @Benchmark
+    public boolean precommit() {
+        return this.dataManager.precommitTransaction(this.commit);
+    }
+}
@@ -0,0 +1,72 @@
+package com.nyu.db.benchmark;
+
+import com.nyu.db.model.ReadOperation;
+import com.nyu.db.model.Transaction;
+import com.nyu.db.model.WriteOperation;
+import com.nyu.db.transactionmanager.SerializationGraph;
+import com.nyu.db.utils.TimeManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cycle checks against a serialization graph holding a growing number of committed transactions. Every measured
+ * transaction began before the graph was built, so its reads get RW edges to the committed writers and the cycle
+ * check has to walk the graph. The graph is rebuilt before every iteration, which only adds a batch of transactions,
+ * so its size stays close to the parameter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, batchSize = SerializationGraphBenchmark.BATCH_SIZE)
+@Measurement(iterations = 10, batchSize = SerializationGraphBenchmark.BATCH_SIZE)
+@Fork(1)
+public class SerializationGraphBenchmark {
+
+    static final int BATCH_SIZE = 1000;
+    private static final int NUM_VARIABLES = 1000;
+
+    @Param({"1000", "10000", "100000"})
+    private int committedTransactions;
+
+    private SerializationGraph graph;
+    private Transaction[] concurrentTransactions;
+    private int next;
+    private long nextTransactionId;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        BenchmarkSupport.silenceLogging();
+        SplittableRandom random = new SplittableRandom(42);
+        this.graph = new SerializationGraph();
+        this.nextTransactionId = 1;
+
+        this.concurrentTransactions = new Transaction[BATCH_SIZE];
+        for (int i=0; i<BATCH_SIZE; i++)
+            this.concurrentTransactions[i] = this.newTransaction(random);
+        this.next = 0;
+
+        // Committed one after another, so the graph only has edges from older to newer transactions and stays acyclic
+        while (this.graph.size() < this.committedTransactions) {
+            Transaction transaction = this.newTransaction(random);
+            transaction.setCommitTimestamp(TimeManager.incrementTime());
+            this.graph.addTransactionAndRunChecks(transaction);
+        }
+    }
+
+    @Benchmark
+    public boolean addTransactionAndRunChecks() {
+        Transaction transaction = this.concurrentTransactions[this.next++];
+        transaction.setCommitTimestamp(TimeManager.incrementTime());
+        return this.graph.addTransactionAndRunChecks(transaction);
+    }
+
+    private Transaction newTransaction(SplittableRandom random) {
+        Transaction transaction = new Transaction(this.nextTransactionId++);
+        long now = TimeManager.getTime();
+        transaction.addOperation(new ReadOperation(transaction, random.nextInt(NUM_VARIABLES), now));
+        transaction.addOperation(new WriteOperation(transaction, random.nextInt(NUM_VARIABLES), 0, now));
+        return transaction;
+    }
+}
@@ -5,10 +5,14 @@ import com.nyu.db.model.CommitOperation;
 import com.nyu.db.model.ReadOperation;
 import com.nyu.db.model.Transaction;
 import com.nyu.db.model.WriteOperation;
+import com.nyu.db.placement.PlacementPolicy;
+import com.nyu.db.placement.impl.LegacyPlacementPolicy;
 import com.nyu.db.transactionmanager.TransactionManager;
 import com.nyu.db.transactionmanager.impl.TransactionManagerImpl;
+import com.nyu.db.transport.RemoteDataManager;
 
 import com.nyu.db.utils.TimeManager;
+import com.nyu.db.utils.TraceLoggers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.io.BufferedReader;
@@ -18,32 +22,47 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.IntFunction;
 
 
 public class Simulation {
 
     private static final Logger logger = LoggerFactory.getLogger(Simulation.class);
+    private static final Logger trace = TraceLoggers.get(Simulation.class);
     private static final int NUM_VARIABLES = 20;
     private static final int NUM_SITES = 10;
+    private final IntFunction<DataManager> siteFactory;
+    private final PlacementPolicy placementPolicy;
     private TransactionManager transactionManager;
 
+    public Simulation() {
+        this(DataManagerImpl::new);
+    }
+
+    /**
+     * @param siteFactory Creates the data manager of each site from its id, e.g. a RemoteDataManager to run the sites
+     *                    in other processes
+     */
+    public Simulation(IntFunction<DataManager> siteFactory) {
+        this(siteFactory, new LegacyPlacementPolicy(NUM_SITES));
+    }
+
+    /**
+     * @param siteFactory Creates the data manager of each site from its id
+     * @param placementPolicy Sites holding each variable. The expected outputs of the test inputs assume the legacy
+     *                        placement, where odd variables live on one site and even variables on every site.
+     */
+    public Simulation(IntFunction<DataManager> siteFactory, PlacementPolicy placementPolicy) {
+        this.siteFactory = siteFactory;
+        this.placementPolicy = placementPolicy;
+    }
+
     private void initializeDatabaseManagers() {
         List<DataManager> dataManagers = new ArrayList<>();
         for (int siteId=1; siteId<=NUM_SITES; siteId++) {
-            dataManagers.add(new DataManagerImpl(siteId));
-        }
-        for (int variableId=1; variableId<=NUM_VARIABLES; variableId+=1) {
-            if (variableId % 2 == 1) {
-                // Available only at one site
-                int siteId = 1 + variableId % NUM_SITES;
-                dataManagers.get(siteId-1).registerVariable(variableId, variableId*10);
-            } else {
-                // Available at all sites
-                for (DataManager dm: dataManagers) {
-                    dm.registerVariable(variableId, variableId*10);
-                }
-            }
+            dataManagers.add(this.siteFactory.apply(siteId));
         }
+        this.placementPolicy.registerVariables(dataManagers, NUM_VARIABLES, variableId -> variableId*10);
         this.transactionManager = new TransactionManagerImpl(dataManagers);
     }
 
@@ -52,7 +71,7 @@ public class Simulation {
      * @param inputFilePath Path to the input file
      */
     public void run(String inputFilePath) {
-        logger.info("Starting simulation with input from "+inputFilePath);
+        trace.info("Starting simulation with input from {}", inputFilePath);
         this.initializeDatabaseManagers();
 
         try (BufferedReader br = new BufferedReader(new FileReader(inputFilePath))) {
@@ -72,7 +91,11 @@ public class Simulation {
                         logger.error(errMsg);
                         throw new RuntimeException(errMsg);
                     }
-                    this.transactionManager.createTransaction(Long.parseLong(transactionName.substring(1)));
+                    long transactionId = Long.parseLong(transactionName.substring(1));
+                    if (token.startsWith("beginRO"))
+                        this.transactionManager.createReadOnlyTransaction(transactionId);
+                    else
+                        this.transactionManager.createTransaction(transactionId);
                 } else if (token.startsWith("W") || token.startsWith("R") || token.startsWith("end")) {
                     String transactionName = params[0].trim();
                     if (!transactionName.startsWith("T")) {
@@ -86,12 +109,12 @@ public class Simulation {
                         int variableId = Integer.parseInt(params[1].trim().substring(1));
                         int value = Integer.parseInt(params[2].trim());
                         WriteOperation op = new WriteOperation(transaction, variableId, value, TimeManager.getTime());
-                        transaction.getOperations().add(op);
+                        transaction.addOperation(op);
                         this.transactionManager.write(op);
                     } else if (token.startsWith("R")) {
                         int variableId = Integer.parseInt(params[1].trim().substring(1));
                         ReadOperation op = new ReadOperation(transaction, variableId, TimeManager.getTime());
-                        transaction.getOperations().add(op);
+                        transaction.addOperation(op);
                         this.transactionManager.read(op);
                     } else if (token.startsWith("end")) {
                         CommitOperation op = new CommitOperation(transaction, TimeManager.getTime());
@@ -114,21 +137,38 @@ public class Simulation {
                 TimeManager.incrementTime();
             }
         } catch (FileNotFoundException e) {
-            logger.error("File not found: "+inputFilePath);
+            logger.error("File not found: {}", inputFilePath);
             System.exit(1);
         } catch (IOException e) {
             logger.error(e.getMessage());
             System.exit(1);
         }
-        logger.info("Simulation complete!");
+        trace.info("Simulation complete!");
     }
 
+    /**
+     * @param args Path to the input file, optionally followed by host:port of the server of each site, in site order,
+     *             to run against sites served by DataManagerServer processes
+     */
     public static void main(String[] args) {
         if (args.length < 1) {
             logger.error("Argument expected with path to input file");
             System.exit(1);
         }
-        Simulation sim = new Simulation();
+        Simulation sim;
+        if (args.length == 1) {
+            sim = new Simulation();
+        } else if (args.length == NUM_SITES + 1) {
+            sim = new Simulation(siteId -> {
+                String address = args[siteId];
+                int separator = address.lastIndexOf(':');
+                return new RemoteDataManager(siteId, address.substring(0, separator), Integer.parseInt(address.substring(separator + 1)));
+            });
+        } else {
+            logger.error("Expected the address of all {} sites after the input file", NUM_SITES);
+            System.exit(1);
+            return;
+        }
         sim.run(args[0]);
     }
 }
\ No newline at end of file
@@ -0,0 +1,54 @@
+package com.nyu.db.client;
+
+import com.nyu.db.model.Transaction;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Session through which a client runs transactions against the transaction manager, one transaction at a time.
+ * Operations return futures instead of blocking the caller. An operation that has to wait for a failed site is
+ * completed when the site recovers, and every pending future of a transaction fails with
+ * TransactionAbortedException once the transaction aborts. A client should wait for each operation to complete
+ * before issuing the next one of the same transaction.
+ */
+public interface ClientSession {
+
+    /**
+     * Begin a new transaction on this session
+     * @return Transaction object
+     */
+    public Transaction begin();
+
+    /**
+     * Begin a new transaction on this session that only reads, writes issued on it fail with IllegalStateException
+     * @return Transaction object
+     */
+    public Transaction beginReadOnly();
+
+    /**
+     * Read a variable's value
+     * @param variableId Variable id
+     * @return Future of the value read
+     */
+    public CompletableFuture<Integer> read(int variableId);
+
+    /**
+     * Write to a variable
+     * @param variableId Variable id
+     * @param value Value to write
+     * @return Future that completes with true once the write has been applied to at least one site
+     */
+    public CompletableFuture<Boolean> write(int variableId, int value);
+
+    /**
+     * Commit the current transaction
+     * @return Future of the commit outcome, true if the transaction committed
+     */
+    public CompletableFuture<Boolean> commit();
+
+    /**
+     * Get the current transaction of the session
+     * @return Transaction object, null if begin() has not been called
+     */
+    public Transaction getTransaction();
+}
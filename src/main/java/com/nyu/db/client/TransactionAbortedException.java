@@ -0,0 +1,20 @@
+package com.nyu.db.client;
+
+/**
+ * Thrown to clients when an operation can't complete because its transaction aborted
+ */
+public class TransactionAbortedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long transactionId;
+
+    public TransactionAbortedException(long transactionId) {
+        super("T"+transactionId+" aborted");
+        this.transactionId = transactionId;
+    }
+
+    public long getTransactionId() {
+        return this.transactionId;
+    }
+}
@@ -0,0 +1,106 @@
+package com.nyu.db.client.impl;
+
+import com.nyu.db.client.ClientSession;
+import com.nyu.db.client.TransactionAbortedException;
+import com.nyu.db.model.*;
+import com.nyu.db.transactionmanager.TransactionManager;
+import com.nyu.db.utils.TimeManager;
+
+import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Future based client session. No thread is held while an operation waits for a site, the operation is parked in the
+ * transaction manager's waiting queue and its future is completed from the recovery path. Completions that happen
+ * inside the transaction manager are handed off to an executor, so client continuations never run under its locks.
+ */
+public class ClientSessionImpl implements ClientSession {
+
+    // Session transaction ids start far above the ids used by simulation scripts
+    private static final AtomicLong nextTransactionId = new AtomicLong(1L << 32);
+
+    private final TransactionManager transactionManager;
+    private final Executor callbackExecutor;
+    private Transaction transaction;
+
+    public ClientSessionImpl(TransactionManager transactionManager) {
+        this(transactionManager, ForkJoinPool.commonPool());
+    }
+
+    public ClientSessionImpl(TransactionManager transactionManager, Executor callbackExecutor) {
+        this.transactionManager = transactionManager;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    @Override
+    public Transaction begin() {
+        this.transaction = this.transactionManager.createTransaction(nextTransactionId.incrementAndGet());
+        return this.transaction;
+    }
+
+    @Override
+    public Transaction beginReadOnly() {
+        this.transaction = this.transactionManager.createReadOnlyTransaction(nextTransactionId.incrementAndGet());
+        return this.transaction;
+    }
+
+    @Override
+    public CompletableFuture<Integer> read(int variableId) {
+        Transaction t = this.requireTransaction();
+        ReadOperation op = new ReadOperation(t, variableId, TimeManager.getTime());
+        t.addOperation(op);
+        OptionalInt val = this.transactionManager.read(op);
+        if (val.isPresent())
+            return CompletableFuture.completedFuture(val.getAsInt());
+        return this.awaitExecution(op, op::getValue);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> write(int variableId, int value) {
+        Transaction t = this.requireTransaction();
+        WriteOperation op = new WriteOperation(t, variableId, value, TimeManager.getTime());
+        t.addOperation(op);
+        if (this.transactionManager.write(op))
+            return CompletableFuture.completedFuture(true);
+        return this.awaitExecution(op, () -> true);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> commit() {
+        Transaction t = this.requireTransaction();
+        boolean committed = this.transactionManager.commitTransaction(new CommitOperation(t, TimeManager.getTime()));
+        return CompletableFuture.completedFuture(committed);
+    }
+
+    @Override
+    public Transaction getTransaction() {
+        return this.transaction;
+    }
+
+    private <T> CompletableFuture<T> awaitExecution(Operation op, Supplier<T> result) {
+        Transaction t = op.getTransaction();
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (t.getStatus() == TransactionStatus.COMMITTED) {
+            future.completeExceptionally(new IllegalStateException("T"+t.getTransactionId()+" has already committed"));
+            return future;
+        }
+        if (t.getStatus() == TransactionStatus.ABORTED) {
+            future.completeExceptionally(new TransactionAbortedException(t.getTransactionId()));
+            return future;
+        }
+        op.onExecuted(() -> this.callbackExecutor.execute(() -> future.complete(result.get())));
+        t.onAbort(() -> this.callbackExecutor.execute(() ->
+                future.completeExceptionally(new TransactionAbortedException(t.getTransactionId()))));
+        return future;
+    }
+
+    private Transaction requireTransaction() {
+        if (this.transaction == null)
+            throw new IllegalStateException("begin() has to be called before issuing operations");
+        return this.transaction;
+    }
+}
@@ -1,11 +1,18 @@
 package com.nyu.db.datamanager;
 
+import com.nyu.db.metrics.MetricsRegistry;
 import com.nyu.db.model.CommitOperation;
+import com.nyu.db.model.DataEntry;
 import com.nyu.db.model.ReadOperation;
+import com.nyu.db.model.VariableSnapshot;
 import com.nyu.db.model.WriteOperation;
 
-import java.util.Set;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.function.Consumer;
 
 
 /**
@@ -35,17 +42,28 @@ public interface DataManager {
     /**
      * Read a variable's value
      * @param op Read operation with details of transaction and which variable to read
-     * @return Optional value of variable, Optional.empty() if site cannot serve the read
+     * @return Optional value of variable, OptionalInt.empty() if site cannot serve the read
+     * @throws StorageException if the site can't reach its stable storage
      */
-    public Optional<Integer> read(ReadOperation op);
+    public OptionalInt read(ReadOperation op);
 
     /**
      * Read a variable's value
      * @param op Read operation with details of transaction and which variable to read
      * @param runConsistencyChecks Boolean configuring whether to run consistency checks
-     * @return Optional value of variable, Optional.empty() if site cannot serve the read
+     * @return Optional value of variable, OptionalInt.empty() if site cannot serve the read
+     * @throws StorageException if the site can't reach its stable storage
+     */
+    public OptionalInt read(ReadOperation op, boolean runConsistencyChecks);
+
+    /**
+     * Read the version of a variable visible to a transaction along with its commit timestamp, without the available
+     * copies consistency checks. Quorum reads compare the timestamps returned by several replicas to find the latest.
+     * @param op Read operation with details of transaction and which variable to read
+     * @return Version visible to the transaction, with commit timestamp Long.MAX_VALUE if it is the transaction's own
+     * uncommitted write. Empty if the site no longer holds the version visible to the transaction.
      */
-    public Optional<Integer> read(ReadOperation op, boolean runConsistencyChecks);
+    public Optional<VariableSnapshot> readVersion(ReadOperation op);
 
     /**
      * Write to a variable
@@ -54,6 +72,21 @@ public interface DataManager {
      */
     public boolean write(WriteOperation op);
 
+    /**
+     * Read several variables in one call, in order
+     * @param ops Read operations
+     * @param runConsistencyChecks Whether to run the consistency checks of read(op, runConsistencyChecks) for each operation
+     * @return One result per operation, as read(op, runConsistencyChecks) would return it
+     */
+    public List<OptionalInt> read(List<ReadOperation> ops, boolean[] runConsistencyChecks);
+
+    /**
+     * Buffer several writes in one call, in order, so a later write to the same variable by the same transaction wins
+     * @param ops Write operations
+     * @return true if every write was buffered
+     */
+    public boolean write(List<WriteOperation> ops);
+
     /**
      * Aborts a transaction
      * @param transactionId ID of the transaction
@@ -74,6 +107,49 @@ public interface DataManager {
      */
     public boolean commitTransaction(CommitOperation op);
 
+    /**
+     * Rebuilds committed state from stable storage after a restart of the process, to be called once all variables
+     * of the site are registered. The global clock is moved past every restored commit.
+     * @return true if the state was restored (trivially true if the site keeps no durable state)
+     */
+    public boolean restoreCommittedState();
+
+    /**
+     * Persists the latest committed version of every variable changed since the last checkpoint and truncates the
+     * write-ahead log, so that a restart only replays commits made after this point
+     */
+    public void checkpoint();
+
+    /**
+     * Flushes and releases durable storage held by the site
+     */
+    public void close();
+
+    /**
+     * Informs the data manager of the start time of the oldest active transaction. Committed versions that are not
+     * visible to any transaction starting at or after this time may be reclaimed.
+     * @param lowWatermark Low watermark timestamp, never moves backwards
+     */
+    public void advanceLowWatermark(long lowWatermark);
+
+    /**
+     * Get number of committed versions currently held on this site
+     * @return Number of retained versions
+     */
+    public long getRetainedVersionCount();
+
+    /**
+     * Get number of committed versions reclaimed on this site since it started
+     * @return Number of reclaimed versions
+     */
+    public long getReclaimedVersionCount();
+
+    /**
+     * Publish the site's counters and gauges to a metrics registry, under names starting with "site.&lt;siteId&gt;."
+     * @param registry Metrics registry
+     */
+    public void registerMetrics(MetricsRegistry registry);
+
     /**
      * Method to manually fail a data manager. This is only for simulation purposes
      */
@@ -84,6 +160,21 @@ public interface DataManager {
      */
     public void recover();
 
+    /**
+     * Recovers a failed site without waiting for new commits to refresh its replicated copies. Committed state is
+     * rebuilt from stable storage (if the site keeps any), then every version committed while the site was down is
+     * pulled from the peers. Afterwards the site serves reads of its replicated variables right away.
+     * @param peers Up-to-date data managers that together hold every replicated variable of this site
+     */
+    public void recover(List<DataManager> peers);
+
+    /**
+     * Streams committed versions to a recovering peer, oldest first for each variable
+     * @param sinceTimestamps Variable ids to send, each with the commit timestamp of the latest version the peer holds
+     * @param consumer Receives the versions committed after those timestamps, in chunks
+     */
+    public void streamCommittedVersions(Map<Integer, Long> sinceTimestamps, Consumer<List<DataEntry>> consumer);
+
     /**
      * Prints the committed variable values on this site
      */
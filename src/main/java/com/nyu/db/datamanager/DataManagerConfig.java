@@ -0,0 +1,48 @@
+package com.nyu.db.datamanager;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.nio.file.Path;
+
+/**
+ * Tunables of a data manager. Defaults keep all state in memory, as expected by the simulation.
+ */
+@Getter
+@Builder
+public class DataManagerConfig {
+
+    @Builder.Default
+    private final DurabilityMode durabilityMode = DurabilityMode.NONE;
+
+    /**
+     * Directory holding the write-ahead log and persistent store of each site, required unless the durability mode is NONE
+     */
+    private final Path dataDirectory;
+
+    /**
+     * How often buffered log records are forced to disk in ASYNC mode
+     */
+    @Builder.Default
+    private final long flushIntervalMillis = 10;
+
+    /**
+     * How often committed state is checkpointed to the persistent store and the log truncated, 0 to only checkpoint
+     * on demand
+     */
+    @Builder.Default
+    private final long checkpointIntervalMillis = 0;
+
+    /**
+     * Number of variables whose single committed version is cached in the buffer pool, 0 to keep every variable in
+     * memory. Needs a durability mode other than NONE, since evicted versions go to the persistent store. Variables
+     * committed to after the low watermark always stay in memory, the others move to the buffer pool at each
+     * checkpoint.
+     */
+    @Builder.Default
+    private final int bufferCapacity = 0;
+
+    public static DataManagerConfig defaults() {
+        return DataManagerConfig.builder().build();
+    }
+}
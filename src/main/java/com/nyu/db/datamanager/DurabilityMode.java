@@ -0,0 +1,7 @@
+package com.nyu.db.datamanager;
+
+public enum DurabilityMode {
+    NONE, // Committed state only lives in memory and is lost when the process exits
+    ASYNC, // Commits are logged and forced to disk in the background, the last few may be lost on a crash
+    GROUP_COMMIT // A commit returns once its log record is on disk, concurrent commits share a single force
+}
@@ -0,0 +1,14 @@
+package com.nyu.db.datamanager;
+
+/**
+ * Thrown when a site can't reach its stable storage to serve a request. The site should be failed, recovery rebuilds
+ * it from what is durable.
+ */
+public class StorageException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public StorageException(String message) {
+        super(message);
+    }
+}
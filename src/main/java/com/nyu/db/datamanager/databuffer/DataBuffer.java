@@ -3,18 +3,53 @@ package com.nyu.db.datamanager.databuffer;
 import com.nyu.db.model.DataEntry;
 
 import java.util.List;
+import java.util.Optional;
 
 /**
- * Code not used currently
+ * Bounded in-memory pool of committed variable versions, backed by the persistent store
  */
 public interface DataBuffer {
 
+    /**
+     * Get buffered versions not yet persisted
+     * @param uptoTimestamp Only versions committed at or before this timestamp are returned
+     * @return Dirty entries
+     */
     public List<DataEntry> getAllData(long uptoTimestamp);
 
-    public int read(int variableId, long timestamp);
-
+    /**
+     * Read the buffered version of a variable, loading it from the persistent store on a miss
+     * @param variableId Variable id
+     * @param timestamp Snapshot timestamp
+     * @return Version if one was committed at or before the timestamp, Optional.empty() otherwise
+     * @throws com.nyu.db.datamanager.StorageException if a frame is needed for the variable and none can be freed
+     */
+    public Optional<DataEntry> read(int variableId, long timestamp);
+
+    /**
+     * Buffer a committed version, replacing the variable's previous one. The entry is written back to the persistent
+     * store if it gets evicted before being persisted.
+     * @param dataEntry Committed version
+     * @throws com.nyu.db.datamanager.StorageException if a frame is needed for the variable and none can be freed
+     */
     public void write(DataEntry dataEntry);
 
+    /**
+     * Drop a variable from the buffer without writing it back, e.g. when a newer copy is kept elsewhere
+     * @param variableId Variable id
+     */
+    public void remove(int variableId);
+
+    /**
+     * Mark versions as persisted, so they can be evicted without a write back
+     * @param uptoTimestamp Versions committed at or before this timestamp are marked
+     */
     public void clearUptoTimestamp(long uptoTimestamp);
 
+    public long getHitCount();
+
+    public long getMissCount();
+
+    public long getEvictionCount();
+
 }
@@ -0,0 +1,172 @@
+package com.nyu.db.datamanager.databuffer.impl;
+
+import com.nyu.db.datamanager.StorageException;
+import com.nyu.db.datamanager.databuffer.DataBuffer;
+import com.nyu.db.datamanager.persistentstoremanager.PersistentStoreManager;
+import com.nyu.db.model.DataEntry;
+import com.nyu.db.utils.IntIntMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Buffer pool holding one version per variable in a fixed number of frames, evicted with the CLOCK algorithm.
+ * Every access sets the frame's reference bit, the clock hand clears reference bits as it sweeps and evicts the first
+ * frame found unreferenced, so recently used variables survive a full sweep. Dirty frames are written back to the
+ * persistent store on eviction, a dirty frame whose write back fails is kept and the hand moves on to the next victim.
+ */
+public class DataBufferImpl implements DataBuffer {
+
+    private final PersistentStoreManager persistentStoreManager;
+    private final IntIntMap frameOf; // Variable id to frame
+    private final int[] variableIds;
+    private final int[] values;
+    private final long[] commitTimestamps;
+    private final boolean[] referenced;
+    private final boolean[] dirty;
+    private int usedFrames;
+    private int clockHand;
+
+    private final LongAdder hitCount;
+    private final LongAdder missCount;
+    private final LongAdder evictionCount;
+
+    public DataBufferImpl(int capacity, PersistentStoreManager persistentStoreManager) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Buffer capacity must be positive: "+capacity);
+        this.persistentStoreManager = persistentStoreManager;
+        this.frameOf = new IntIntMap(capacity);
+        this.variableIds = new int[capacity];
+        this.values = new int[capacity];
+        this.commitTimestamps = new long[capacity];
+        this.referenced = new boolean[capacity];
+        this.dirty = new boolean[capacity];
+        this.usedFrames = 0;
+        this.clockHand = 0;
+        this.hitCount = new LongAdder();
+        this.missCount = new LongAdder();
+        this.evictionCount = new LongAdder();
+    }
+
+    @Override
+    public synchronized List<DataEntry> getAllData(long uptoTimestamp) {
+        List<DataEntry> data = new ArrayList<>();
+        for (int frame=0; frame<this.usedFrames; frame++) {
+            if (this.dirty[frame] && this.commitTimestamps[frame] <= uptoTimestamp)
+                data.add(this.entryAt(frame));
+        }
+        return data;
+    }
+
+    @Override
+    public synchronized Optional<DataEntry> read(int variableId, long timestamp) {
+        int frame = this.frameOf.get(variableId, -1);
+        if (frame == -1) {
+            this.missCount.increment();
+            Optional<DataEntry> persisted = this.persistentStoreManager.read(variableId, Long.MAX_VALUE);
+            if (persisted.isEmpty())
+                return Optional.empty();
+            frame = this.install(persisted.get());
+        } else {
+            this.hitCount.increment();
+            this.referenced[frame] = true;
+        }
+        return this.commitTimestamps[frame] <= timestamp ? Optional.of(this.entryAt(frame)) : Optional.empty();
+    }
+
+    @Override
+    public synchronized void write(DataEntry dataEntry) {
+        int frame = this.frameOf.get(dataEntry.getVariableId(), -1);
+        if (frame == -1) {
+            frame = this.install(dataEntry);
+        } else {
+            this.values[frame] = dataEntry.getValue();
+            this.commitTimestamps[frame] = dataEntry.getCommitTimestamp();
+            this.referenced[frame] = true;
+        }
+        this.dirty[frame] = true;
+    }
+
+    @Override
+    public synchronized void remove(int variableId) {
+        int frame = this.frameOf.remove(variableId, -1);
+        if (frame == -1)
+            return;
+        // Move the last used frame into the hole so used frames stay contiguous
+        int last = --this.usedFrames;
+        if (frame != last) {
+            this.variableIds[frame] = this.variableIds[last];
+            this.values[frame] = this.values[last];
+            this.commitTimestamps[frame] = this.commitTimestamps[last];
+            this.referenced[frame] = this.referenced[last];
+            this.dirty[frame] = this.dirty[last];
+            this.frameOf.put(this.variableIds[frame], frame);
+        }
+        if (this.clockHand >= this.usedFrames)
+            this.clockHand = 0;
+    }
+
+    @Override
+    public synchronized void clearUptoTimestamp(long uptoTimestamp) {
+        for (int frame=0; frame<this.usedFrames; frame++) {
+            if (this.commitTimestamps[frame] <= uptoTimestamp)
+                this.dirty[frame] = false;
+        }
+    }
+
+    @Override
+    public long getHitCount() {
+        return this.hitCount.sum();
+    }
+
+    @Override
+    public long getMissCount() {
+        return this.missCount.sum();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return this.evictionCount.sum();
+    }
+
+    private int install(DataEntry dataEntry) {
+        int frame = this.usedFrames < this.variableIds.length ? this.usedFrames++ : this.evict();
+        this.frameOf.put(dataEntry.getVariableId(), frame);
+        this.variableIds[frame] = dataEntry.getVariableId();
+        this.values[frame] = dataEntry.getValue();
+        this.commitTimestamps[frame] = dataEntry.getCommitTimestamp();
+        this.referenced[frame] = true;
+        this.dirty[frame] = false;
+        return frame;
+    }
+
+    /**
+     * Sweep the clock hand to the first unreferenced frame that can be written back and free it
+     * @return Freed frame
+     * @throws StorageException if no frame can be freed, every one being dirty and failing its write back
+     */
+    private int evict() {
+        // The first sweep may only clear reference bits, the second tries every frame
+        for (int examined=0; examined<2*this.usedFrames; examined++) {
+            int frame = this.clockHand;
+            this.clockHand = (this.clockHand + 1) % this.usedFrames;
+            if (this.referenced[frame]) {
+                this.referenced[frame] = false;
+                continue;
+            }
+            if (this.dirty[frame] && !this.persistentStoreManager.write(Collections.singletonList(this.entryAt(frame))))
+                continue; // Its version is only in memory, keep it
+            this.frameOf.remove(this.variableIds[frame], -1);
+            this.evictionCount.increment();
+            return frame;
+        }
+        throw new StorageException("No buffer frame can be freed, writing dirty frames back to the persistent store fails");
+    }
+
+    private DataEntry entryAt(int frame) {
+        return new DataEntry(this.variableIds[frame], this.values[frame], this.commitTimestamps[frame]);
+    }
+}
@@ -1,37 +1,132 @@
 package com.nyu.db.datamanager.impl;
 
 import com.nyu.db.datamanager.DataManager;
+import com.nyu.db.datamanager.DataManagerConfig;
+import com.nyu.db.datamanager.DurabilityMode;
+import com.nyu.db.datamanager.databuffer.DataBuffer;
+import com.nyu.db.datamanager.databuffer.impl.DataBufferImpl;
+import com.nyu.db.datamanager.logmanager.LogManager;
+import com.nyu.db.datamanager.logmanager.impl.LogManagerImpl;
+import com.nyu.db.datamanager.persistentstoremanager.PersistentStoreManager;
+import com.nyu.db.datamanager.persistentstoremanager.impl.PersistentStoreManagerImpl;
+import com.nyu.db.metrics.Counter;
+import com.nyu.db.metrics.MetricsRegistry;
 import com.nyu.db.model.*;
+import com.nyu.db.utils.IntIntMap;
 import com.nyu.db.utils.TimeManager;
+import com.nyu.db.utils.TraceLoggers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 
+/**
+ * Data manager of a single site. Transaction workspaces may be used concurrently, committed versions of a variable and
+ * the site's up/down history rely on the locking done by the transaction manager.
+ * With a bounded buffer pool, variables whose only version is visible to every transaction are moved out of the
+ * version store into the buffer pool, which spills them to the persistent store. A variable is loaded back into the
+ * version store when it is committed to again.
+ */
 public class DataManagerImpl implements DataManager {
 
     private static final Logger logger = LoggerFactory.getLogger(DataManagerImpl.class);
+    private static final Logger trace = TraceLoggers.get(DataManagerImpl.class);
+    private static final int STREAM_CHUNK_SIZE = 1024; // Versions sent per chunk when catching up a recovering peer
     private final int siteId;
 
-    private Map<Integer, List<VariableSnapshot>> committedSnapshots; // Multiple versions of committed values for every variable
+    private VersionStore committedSnapshots; // Multiple versions of committed values for every variable
+    private IntIntMap initialValues; // Value each variable was registered with, the state stable storage starts from
 
-    private Map<Long, Map<Integer, Integer>> transactionDataStore; // Uncommitted data for each transaction
-    private List<Long> bootTimes; // Time instant at which the site came back up from a down state
-    private List<Long> downTimes; // Time instant at which the site went down
+    private Map<Long, IntIntMap> transactionDataStore; // Uncommitted data for each transaction
+    private volatile DowntimeHistory downtimes; // Windows in which the site was down, replaced on every change
+    private volatile long lowWatermark; // Start time of the oldest active transaction, older versions are unreadable
+    private LongAdder retainedVersionCount;
+    private LongAdder reclaimedVersionCount;
+    private final DurabilityMode durabilityMode;
+    private LogManager logManager; // Write-ahead log of committed writes, null if the site keeps no durable state
+    private PersistentStoreManager persistentStoreManager; // Checkpointed versions, null if the site keeps no durable state
+    private ReadWriteLock checkpointLock; // Commits hold the read lock from logging to installing their versions
+    private long[] checkpointedTimestamps; // Commit timestamp of the persisted version of each slot, guarded by checkpointLock
+    private ScheduledExecutorService checkpointer;
+    private final int bufferCapacity;
+    private DataBuffer dataBuffer; // Versions of variables not in the version store, null if every variable stays in memory
+    private ReadWriteLock residencyLock; // Guards moving variables in and out of the version store, null without a buffer pool
+    private final Counter readsServed;
+    private final Counter readsRefused; // Reads the site could not serve consistently
+    private final Counter writesBuffered;
+    private final Counter commits;
+    private final Counter firstCommitterWinsAborts;
 
     public DataManagerImpl(int siteId){
+        this(siteId, DataManagerConfig.defaults());
+    }
+
+    public DataManagerImpl(int siteId, DataManagerConfig config){
         this.siteId = siteId;
-        this.committedSnapshots = new HashMap<>();
-        this.bootTimes = new ArrayList<>();
-        this.downTimes = new ArrayList<>();
-        this.transactionDataStore = new HashMap<>();
+        this.committedSnapshots = new VersionStore();
+        this.initialValues = new IntIntMap();
+        this.downtimes = DowntimeHistory.EMPTY;
+        this.transactionDataStore = new ConcurrentHashMap<>();
+        this.lowWatermark = 0;
+        this.retainedVersionCount = new LongAdder();
+        this.reclaimedVersionCount = new LongAdder();
+        this.readsServed = new Counter();
+        this.readsRefused = new Counter();
+        this.writesBuffered = new Counter();
+        this.commits = new Counter();
+        this.firstCommitterWinsAborts = new Counter();
+        this.durabilityMode = config.getDurabilityMode();
+        this.bufferCapacity = config.getBufferCapacity();
+        if (this.bufferCapacity > 0 && this.durabilityMode == DurabilityMode.NONE)
+            throw new IllegalArgumentException("A bounded buffer pool needs a persistent store, durability mode can't be NONE");
+        if (this.durabilityMode != DurabilityMode.NONE) {
+            try {
+                Files.createDirectories(config.getDataDirectory());
+            } catch (IOException e) {
+                logger.error("Unable to create data directory {}", config.getDataDirectory());
+                throw new RuntimeException(e);
+            }
+            this.logManager = new LogManagerImpl(config.getDataDirectory().resolve("site-"+siteId+".wal"),
+                    this.durabilityMode, config.getFlushIntervalMillis());
+            this.persistentStoreManager = new PersistentStoreManagerImpl(config.getDataDirectory().resolve("site-"+siteId+".dat"));
+            this.checkpointLock = new ReentrantReadWriteLock();
+            this.checkpointedTimestamps = new long[0];
+            if (this.bufferCapacity > 0) {
+                this.dataBuffer = new DataBufferImpl(this.bufferCapacity, this.persistentStoreManager);
+                this.residencyLock = new ReentrantReadWriteLock();
+            }
+            if (config.getCheckpointIntervalMillis() > 0) {
+                this.checkpointer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "checkpointer-site-"+siteId);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                this.checkpointer.scheduleWithFixedDelay(this::checkpoint, config.getCheckpointIntervalMillis(),
+                        config.getCheckpointIntervalMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
     }
 
     @Override
     public void registerVariable(int variableId, int initValue) {
-        List<VariableSnapshot> versions = new ArrayList<>();
-        versions.add(new VariableSnapshot(variableId, initValue, 0));
-        this.committedSnapshots.put(variableId, versions);
+        if (this.dataBuffer == null) {
+            int dropped = this.committedSnapshots.register(variableId, initValue, 0);
+            this.retainedVersionCount.add(1 - dropped);
+        } else if (!this.initialValues.containsKey(variableId)) {
+            // Loaded on first use, from the persistent store or else from its initial value
+            this.retainedVersionCount.increment();
+        }
+        this.initialValues.put(variableId, initValue);
     }
 
     @Override
@@ -41,11 +136,14 @@ public class DataManagerImpl implements DataManager {
 
     @Override
     public Set<Integer> getManagedVariableIds() {
-        return this.committedSnapshots.keySet();
+        Set<Integer> variableIds = new HashSet<>();
+        for (int variableId: this.initialValues.keys())
+            variableIds.add(variableId);
+        return variableIds;
     }
 
     @Override
-    public Optional<Integer> read(ReadOperation op) {
+    public OptionalInt read(ReadOperation op) {
         return read(op, true);
     }
 
@@ -54,72 +152,142 @@ public class DataManagerImpl implements DataManager {
 
         // Check 1: Fail if site went down between last commit and beginning of current transaction, unless the
         //          current transaction wrote and the site has this latest uncommitted write
-        for (long downTime: this.downTimes) {
-            if (downTime>=lastTransactionCommitTime && downTime<=transactionStartTime) {
-                return false;
-            }
-        }
-        List<SymbolOperation> operations = transaction.getOperations();
-        long latestWriteTimestamp = -1;
+        DowntimeHistory downtimes = this.downtimes;
+        if (downtimes.wentDownBetween(lastTransactionCommitTime, transactionStartTime))
+            return false;
         // Check 2: If a site goes down after the transaction began, don't respond to reads until we see a
         //          write (if the transactions contains writes)
-        for (int j=operations.size()-1; j>=0; j--) {
-            Operation operation = operations.get(j);
-            if (operation.getOperationType().equals(OperationType.WRITE) &&
-                    ((WriteOperation)operation).getVariableId()==op.getVariableId()) {
-                latestWriteTimestamp = operation.getExecutedTimestamp();
-                break;
-            }
-        }
-        if (latestWriteTimestamp!=-1) {
-            for (int k=0; k<bootTimes.size(); k++) {
-                if (latestWriteTimestamp>downTimes.get(k) && latestWriteTimestamp<bootTimes.get(k)) {
-                    return false;
-                }
-            }
-        }
-        return true;
+        SymbolOperation latestWrite = transaction.getLatestWrite(op.getVariableId());
+        long latestWriteTimestamp = latestWrite == null ? -1 : latestWrite.getExecutedTimestamp();
+        return latestWriteTimestamp==-1 || !downtimes.wasDownAt(latestWriteTimestamp);
     }
 
     @Override
-    public Optional<Integer> read(ReadOperation op, boolean runConsistencyChecks) {
-        assert this.bootTimes.size()==this.downTimes.size(); // Otherwise site would be down
+    public OptionalInt read(ReadOperation op, boolean runConsistencyChecks) {
+        assert !this.downtimes.isDown(); // Otherwise site would not be asked to read
 
         // If uncommitted write exists in same transaction, return that value
         Transaction transaction = op.getTransaction();
-        if (this.transactionDataStore.containsKey(transaction.getTransactionId()) &&
-                this.transactionDataStore.get(transaction.getTransactionId()).containsKey(op.getVariableId())) {
-            int val = this.transactionDataStore.get(transaction.getTransactionId()).get(op.getVariableId());
-            logger.info(String.format("x%d: %d (T%d, site %d)", op.getVariableId(), val, transaction.getTransactionId(), this.siteId));
-            return Optional.of(val);
+        IntIntMap localStore = this.transactionDataStore.get(transaction.getTransactionId());
+        if (localStore != null && localStore.containsKey(op.getVariableId())) {
+            int val = localStore.get(op.getVariableId(), 0);
+            return this.serveRead(op, val);
         }
 
 
         long transactionStartTime = transaction.getStartTimestamp();
-        List<VariableSnapshot> versions = this.committedSnapshots.get(op.getVariableId());
-        int i = versions.size()-1;
-        while(i>0 && versions.get(i).getCommitTimestamp()>transactionStartTime) {
-            i--;
+        long lastTransactionCommitTime;
+        int val;
+        this.lockResidency(false);
+        try {
+            int slot = this.committedSnapshots.slotOf(op.getVariableId());
+            if (slot == -1) {
+                DataEntry bufferedVersion = this.bufferedVersion(op.getVariableId());
+                lastTransactionCommitTime = bufferedVersion.getCommitTimestamp();
+                val = bufferedVersion.getValue();
+            } else {
+                int version = this.committedSnapshots.versionAt(slot, transactionStartTime);
+                lastTransactionCommitTime = this.committedSnapshots.getTimestamp(slot, version);
+                val = this.committedSnapshots.getValue(slot, version);
+            }
+        } finally {
+            this.unlockResidency(false);
+        }
+        if (lastTransactionCommitTime > transactionStartTime) {
+            // History older than the transaction's snapshot was lost when the site was rebuilt from stable storage
+            this.readsRefused.increment();
+            return OptionalInt.empty();
         }
-        long lastTransactionCommitTime = versions.get(i).getCommitTimestamp();
         if (runConsistencyChecks && !canServeRead(op, transaction, lastTransactionCommitTime)) {
+            this.readsRefused.increment();
+            return OptionalInt.empty();
+        }
+
+        return this.serveRead(op, val);
+    }
+
+    @Override
+    public Optional<VariableSnapshot> readVersion(ReadOperation op) {
+        Transaction transaction = op.getTransaction();
+        IntIntMap localStore = this.transactionDataStore.get(transaction.getTransactionId());
+        if (localStore != null && localStore.containsKey(op.getVariableId())) {
+            this.readsServed.increment();
+            return Optional.of(new VariableSnapshot(op.getVariableId(), localStore.get(op.getVariableId(), 0), Long.MAX_VALUE));
+        }
+        VariableSnapshot version = this.versionAt(op.getVariableId(), transaction.getStartTimestamp());
+        if (version.getCommitTimestamp() > transaction.getStartTimestamp()) {
+            this.readsRefused.increment();
             return Optional.empty();
         }
+        this.readsServed.increment();
+        return Optional.of(version);
+    }
+
+    /**
+     * Get the latest committed version of a variable at a timestamp
+     * @return Version visible at the timestamp, the oldest version held if every version is newer
+     */
+    private VariableSnapshot versionAt(int variableId, long timestamp) {
+        this.lockResidency(false);
+        try {
+            int slot = this.committedSnapshots.slotOf(variableId);
+            if (slot == -1) {
+                DataEntry bufferedVersion = this.bufferedVersion(variableId);
+                return new VariableSnapshot(variableId, bufferedVersion.getValue(), bufferedVersion.getCommitTimestamp());
+            }
+            int version = this.committedSnapshots.versionAt(slot, timestamp);
+            return new VariableSnapshot(variableId, this.committedSnapshots.getValue(slot, version),
+                    this.committedSnapshots.getTimestamp(slot, version));
+        } finally {
+            this.unlockResidency(false);
+        }
+    }
 
-        int val = versions.get(i).getValue();
-        logger.info(String.format("x%d: %d (T%d, site %d)", op.getVariableId(), val, transaction.getTransactionId(), this.siteId));
-        return Optional.of(val);
+    private OptionalInt serveRead(ReadOperation op, int val) {
+        // The losing replica of a hedged read still answers, but only the replica that served first is accounted
+        if (!op.markServed())
+            return OptionalInt.of(val);
+        this.readsServed.increment();
+        // Guarded so that reads don't box their arguments when the trace is off
+        if (trace.isInfoEnabled())
+            trace.info("x{}: {} (T{}, site {})", op.getVariableId(), val, op.getTransaction().getTransactionId(), this.siteId);
+        return OptionalInt.of(val);
     }
 
     @Override
     public boolean write(WriteOperation op) {
         long transactionId = op.getTransaction().getTransactionId();
-        if (!this.transactionDataStore.containsKey(transactionId)) {
-            this.transactionDataStore.put(transactionId, new HashMap<>());
-        }
-        Map<Integer, Integer> localStore = this.transactionDataStore.get(transactionId);
+        IntIntMap localStore = this.transactionDataStore.computeIfAbsent(transactionId, k -> new IntIntMap());
         localStore.put(op.getVariableId(), op.getValue());
-        logger.info(String.format("T%d wrote %d to x%d on site %d", transactionId, op.getValue(), op.getVariableId(), this.siteId));
+        this.writesBuffered.increment();
+        if (trace.isInfoEnabled())
+            trace.info("T{} wrote {} to x{} on site {}", transactionId, op.getValue(), op.getVariableId(), this.siteId);
+        return true;
+    }
+
+    @Override
+    public List<OptionalInt> read(List<ReadOperation> ops, boolean[] runConsistencyChecks) {
+        List<OptionalInt> results = new ArrayList<>(ops.size());
+        for (int i=0; i<ops.size(); i++)
+            results.add(this.read(ops.get(i), runConsistencyChecks[i]));
+        return results;
+    }
+
+    @Override
+    public boolean write(List<WriteOperation> ops) {
+        long transactionId = -1;
+        IntIntMap localStore = null;
+        for (WriteOperation op: ops) {
+            // Batches usually hold runs of writes by the same transaction, look its workspace up once per run
+            if (localStore == null || op.getTransaction().getTransactionId() != transactionId) {
+                transactionId = op.getTransaction().getTransactionId();
+                localStore = this.transactionDataStore.computeIfAbsent(transactionId, k -> new IntIntMap());
+            }
+            localStore.put(op.getVariableId(), op.getValue());
+            this.writesBuffered.increment();
+            if (trace.isInfoEnabled())
+                trace.info("T{} wrote {} to x{} on site {}", transactionId, op.getValue(), op.getVariableId(), this.siteId);
+        }
         return true;
     }
 
@@ -135,38 +303,402 @@ public class DataManagerImpl implements DataManager {
         // First Committer wins rule - Abort if some data item x that T1 has written has also been committed by some
         // other transaction T2 since T1 began
         long transactionStartTime = op.getTransaction().getStartTimestamp();
-        Map<Integer, Integer> transactionWorkspace = this.transactionDataStore.get(op.getTransaction().getTransactionId());
-        for (int variableId: transactionWorkspace.keySet()) {
-            long lastCommittedTimestamp = this.committedSnapshots.get(variableId).get(this.committedSnapshots.get(variableId).size()-1).getCommitTimestamp();
-            if (lastCommittedTimestamp > transactionStartTime) {
-                commitStatus = false;
-                logger.info(String.format("Variable x%d written to by T%d has been committed to by some other transaction since T%d began (First Committer wins rule)",
-                        variableId, op.getTransaction().getTransactionId(), op.getTransaction().getTransactionId()));
-                break;
+        IntIntMap transactionWorkspace = this.transactionDataStore.get(op.getTransaction().getTransactionId());
+        if (transactionWorkspace == null) {
+            // Workspace was dropped by an abort racing with this check
+            return false;
+        }
+        int[] writtenVariableIds = transactionWorkspace.keys();
+        Arrays.sort(writtenVariableIds);
+        this.lockResidency(false);
+        try {
+            for (int variableId: writtenVariableIds) {
+                if (this.getLatestTimestamp(variableId) > transactionStartTime) {
+                    commitStatus = false;
+                    this.firstCommitterWinsAborts.increment();
+                    trace.info("Variable x{} written to by T{} has been committed to by some other transaction since T{} began (First Committer wins rule)",
+                            variableId, op.getTransaction().getTransactionId(), op.getTransaction().getTransactionId());
+                    break;
+                }
             }
+        } finally {
+            this.unlockResidency(false);
         }
         return commitStatus;
     }
 
     @Override
     public boolean commitTransaction(CommitOperation op) {
-        Map<Integer, Integer> transactionWorkspace = this.transactionDataStore.get(op.getTransaction().getTransactionId());
-        transactionWorkspace.forEach((variableId, value) -> this.committedSnapshots.get(variableId).add(new VariableSnapshot(variableId, value, TimeManager.getTime())));
-        op.setExecutedTimestamp(TimeManager.getTime());
+        IntIntMap transactionWorkspace = this.transactionDataStore.get(op.getTransaction().getTransactionId());
+        long commitTimestamp = op.getTransaction().getCommitTimestamp();
+        if (this.logManager == null) {
+            this.installVersions(transactionWorkspace, commitTimestamp);
+        } else {
+            int[] variableIds = transactionWorkspace.keys();
+            int[] values = new int[variableIds.length];
+            for (int i=0; i<variableIds.length; i++)
+                values[i] = transactionWorkspace.get(variableIds[i], 0);
+            this.checkpointLock.readLock().lock();
+            try {
+                long logSequenceNumber = this.logManager.pushToBuffer(new LogEntry(op.getTransaction().getTransactionId(), commitTimestamp, variableIds, values));
+                // A failed flush drops the entry from the log, so the commit is not replayed after a restart either
+                if (this.durabilityMode == DurabilityMode.GROUP_COMMIT && !this.logManager.flushUpTo(logSequenceNumber)) {
+                    logger.error("Site {} could not make the commit of T{} durable", this.siteId, op.getTransaction().getTransactionId());
+                    return false;
+                }
+                this.installVersions(transactionWorkspace, commitTimestamp);
+            } finally {
+                this.checkpointLock.readLock().unlock();
+            }
+        }
+        op.setExecutedTimestamp(commitTimestamp);
         this.transactionDataStore.remove(op.getTransaction().getTransactionId());
+        this.commits.increment();
+        return true;
+    }
+
+    private void installVersions(IntIntMap transactionWorkspace, long commitTimestamp) {
+        this.lockResidency(true);
+        try {
+            transactionWorkspace.forEach((variableId, value) -> {
+                // Versions are reclaimed as chains grow, so hot variables stay short and cold ones are left untouched
+                int reclaimed = this.committedSnapshots.append(this.residentSlot(variableId), value, commitTimestamp, this.lowWatermark);
+                this.retainedVersionCount.add(1 - reclaimed);
+                this.reclaimedVersionCount.add(reclaimed);
+            });
+        } finally {
+            this.unlockResidency(true);
+        }
+    }
+
+    /**
+     * Take the residency lock, if the site has a buffer pool. Reads of the version store hold it shared, moving
+     * variables in or out of the version store holds it exclusively.
+     */
+    private void lockResidency(boolean exclusive) {
+        if (this.residencyLock != null)
+            (exclusive ? this.residencyLock.writeLock() : this.residencyLock.readLock()).lock();
+    }
+
+    private void unlockResidency(boolean exclusive) {
+        if (this.residencyLock != null)
+            (exclusive ? this.residencyLock.writeLock() : this.residencyLock.readLock()).unlock();
+    }
+
+    /**
+     * Get the version of a variable that is not in the version store. Must be called holding the residency lock.
+     */
+    private DataEntry bufferedVersion(int variableId) {
+        return this.dataBuffer.read(variableId, Long.MAX_VALUE)
+                .orElseGet(() -> new DataEntry(variableId, this.initialValues.get(variableId, 0), 0));
+    }
+
+    private long getLatestTimestamp(int variableId) {
+        int slot = this.committedSnapshots.slotOf(variableId);
+        return slot == -1 ? this.bufferedVersion(variableId).getCommitTimestamp() : this.committedSnapshots.getLatestTimestamp(slot);
+    }
+
+    /**
+     * Get the version store slot of a variable, loading it from the buffer pool if needed. Must be called holding the
+     * residency lock exclusively.
+     */
+    private int residentSlot(int variableId) {
+        int slot = this.committedSnapshots.slotOf(variableId);
+        if (slot != -1 || this.dataBuffer == null)
+            return slot;
+        DataEntry bufferedVersion = this.bufferedVersion(variableId);
+        this.dataBuffer.remove(variableId);
+        this.committedSnapshots.register(variableId, bufferedVersion.getValue(), bufferedVersion.getCommitTimestamp());
+        slot = this.committedSnapshots.slotOf(variableId);
+        if (this.checkpointedTimestamps.length <= slot)
+            this.checkpointedTimestamps = Arrays.copyOf(this.checkpointedTimestamps, Math.max(slot + 1, this.checkpointedTimestamps.length << 1));
+        // Whether the buffered version had been persisted is unknown, write it at the next checkpoint
+        this.checkpointedTimestamps[slot] = -1;
+        return slot;
+    }
+
+    @Override
+    public boolean restoreCommittedState() {
+        if (this.logManager == null)
+            return true;
+        this.checkpointLock.writeLock().lock();
+        this.lockResidency(true);
+        try {
+            // Map the checkpoint, then replay the log written since. Entries already covered by the checkpoint (from a
+            // crash between checkpointing and truncating the log) are skipped. With a buffer pool, checkpointed
+            // variables are left in the persistent store until they are used.
+            this.checkpointedTimestamps = new long[this.committedSnapshots.size()];
+            if (this.dataBuffer == null) {
+                for (DataEntry dataEntry: this.persistentStoreManager.getAllData()) {
+                    int slot = this.committedSnapshots.slotOf(dataEntry.getVariableId());
+                    if (slot != -1 && this.restoreVersion(slot, dataEntry.getValue(), dataEntry.getCommitTimestamp()))
+                        this.checkpointedTimestamps[slot] = dataEntry.getCommitTimestamp();
+                }
+            }
+            return this.logManager.recover(logEntry -> {
+                for (int i=0; i<logEntry.getVariableIds().length; i++) {
+                    if (this.initialValues.containsKey(logEntry.getVariableIds()[i]))
+                        this.restoreVersion(this.residentSlot(logEntry.getVariableIds()[i]), logEntry.getValues()[i], logEntry.getCommitTimestamp());
+                }
+            });
+        } finally {
+            this.unlockResidency(true);
+            this.checkpointLock.writeLock().unlock();
+        }
+    }
+
+    private boolean restoreVersion(int slot, int value, long commitTimestamp) {
+        if (commitTimestamp <= this.committedSnapshots.getLatestTimestamp(slot))
+            return false;
+        // Older versions were not visible to anyone when the process stopped, keep only the latest
+        int reclaimed = this.committedSnapshots.append(slot, value, commitTimestamp, Long.MAX_VALUE);
+        this.retainedVersionCount.add(1 - reclaimed);
+        this.reclaimedVersionCount.add(reclaimed);
+        TimeManager.advanceTo(commitTimestamp);
         return true;
     }
 
+    @Override
+    public void checkpoint() {
+        if (this.persistentStoreManager == null)
+            return;
+        this.checkpointLock.writeLock().lock();
+        this.lockResidency(true);
+        try {
+            if (this.dataBuffer != null)
+                this.moveToDataBuffer();
+            int numSlots = this.committedSnapshots.size();
+            if (this.checkpointedTimestamps.length < numSlots)
+                this.checkpointedTimestamps = Arrays.copyOf(this.checkpointedTimestamps, numSlots);
+            List<DataEntry> changed = new ArrayList<>();
+            for (int slot=0; slot<numSlots; slot++) {
+                long latestTimestamp = this.committedSnapshots.getLatestTimestamp(slot);
+                if (!this.committedSnapshots.isFree(slot) && latestTimestamp != this.checkpointedTimestamps[slot])
+                    changed.add(new DataEntry(this.committedSnapshots.getVariableId(slot), this.committedSnapshots.getLatestValue(slot), latestTimestamp));
+            }
+            int numResidentChanged = changed.size();
+            if (this.dataBuffer != null)
+                changed.addAll(this.dataBuffer.getAllData(Long.MAX_VALUE));
+            if (!this.persistentStoreManager.write(changed)) {
+                logger.error("Checkpoint of site {} failed, keeping the log", this.siteId);
+                return;
+            }
+            for (int i=0; i<numResidentChanged; i++)
+                this.checkpointedTimestamps[this.committedSnapshots.slotOf(changed.get(i).getVariableId())] = changed.get(i).getCommitTimestamp();
+            if (this.dataBuffer != null)
+                this.dataBuffer.clearUptoTimestamp(Long.MAX_VALUE);
+            this.logManager.truncate();
+            logger.debug("Checkpointed {} variables on site {}", changed.size(), this.siteId);
+        } finally {
+            this.unlockResidency(true);
+            this.checkpointLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Move variables whose latest version is visible to every transaction from the version store to the buffer pool.
+     * Must be called holding the residency lock exclusively.
+     */
+    private void moveToDataBuffer() {
+        int moved = 0;
+        for (int slot=0; slot<this.committedSnapshots.size(); slot++) {
+            if (this.committedSnapshots.isFree(slot) || this.committedSnapshots.getLatestTimestamp(slot) > this.lowWatermark)
+                continue;
+            // Older versions are hidden by the latest one for every transaction
+            int variableId = this.committedSnapshots.getVariableId(slot);
+            this.dataBuffer.write(new DataEntry(variableId, this.committedSnapshots.getLatestValue(slot), this.committedSnapshots.getLatestTimestamp(slot)));
+            int reclaimed = this.committedSnapshots.remove(variableId) - 1;
+            this.retainedVersionCount.add(-reclaimed);
+            this.reclaimedVersionCount.add(reclaimed);
+            moved++;
+        }
+        logger.debug("Moved {} variables of site {} to the buffer pool", moved, this.siteId);
+    }
+
+    @Override
+    public void close() {
+        if (this.checkpointer != null)
+            this.checkpointer.shutdownNow();
+        if (this.logManager != null)
+            this.logManager.close();
+        if (this.persistentStoreManager != null)
+            this.persistentStoreManager.close();
+    }
+
+    @Override
+    public void advanceLowWatermark(long lowWatermark) {
+        synchronized (this) {
+            this.lowWatermark = Math.max(this.lowWatermark, lowWatermark);
+            this.downtimes = this.downtimes.trimmedBefore(this.lowWatermark);
+        }
+    }
+
+    @Override
+    public long getRetainedVersionCount() {
+        return this.retainedVersionCount.sum();
+    }
+
+    @Override
+    public long getReclaimedVersionCount() {
+        return this.reclaimedVersionCount.sum();
+    }
+
+    @Override
+    public void registerMetrics(MetricsRegistry registry) {
+        String prefix = "site."+this.siteId+".";
+        registry.gauge(prefix+"reads.served", this.readsServed::get);
+        registry.gauge(prefix+"reads.refused", this.readsRefused::get);
+        registry.gauge(prefix+"writes", this.writesBuffered::get);
+        registry.gauge(prefix+"commits", this.commits::get);
+        registry.gauge(prefix+"aborts.firstCommitterWins", this.firstCommitterWinsAborts::get);
+        registry.gauge(prefix+"versions.retained", this::getRetainedVersionCount);
+        registry.gauge(prefix+"versions.reclaimed", this::getReclaimedVersionCount);
+        registry.gauge(prefix+"versions.longestChain", this::getLongestVersionChain);
+        if (this.dataBuffer != null) {
+            registry.gauge(prefix+"buffer.hits", this.dataBuffer::getHitCount);
+            registry.gauge(prefix+"buffer.misses", this.dataBuffer::getMissCount);
+            registry.gauge(prefix+"buffer.evictions", this.dataBuffer::getEvictionCount);
+        }
+    }
+
+    /**
+     * Get the number of versions of the variable with the longest chain, to spot hot variables whose history is held
+     * back by a long running transaction. Scans every slot, meant for metrics scrapes only.
+     */
+    private long getLongestVersionChain() {
+        int longest = 0;
+        this.lockResidency(false);
+        try {
+            for (int slot=0; slot<this.committedSnapshots.size(); slot++) {
+                if (!this.committedSnapshots.isFree(slot))
+                    longest = Math.max(longest, this.committedSnapshots.getVersionCount(slot));
+            }
+        } finally {
+            this.unlockResidency(false);
+        }
+        return longest;
+    }
+
+    /**
+     * Get the buffer pool of the site
+     * @return Buffer pool, null if every variable is kept in memory
+     */
+    public DataBuffer getDataBuffer() {
+        return this.dataBuffer;
+    }
+
     @Override
     public void fail() {
         // Flush local store
         this.transactionDataStore.clear();
-        this.downTimes.add(TimeManager.getTime());
+        synchronized (this) {
+            this.downtimes = this.downtimes.withFailure(TimeManager.getTime());
+        }
     }
 
     @Override
     public void recover() {
-        this.bootTimes.add(TimeManager.getTime());
+        synchronized (this) {
+            this.downtimes = this.downtimes.withRecovery(TimeManager.getTime());
+        }
+    }
+
+    @Override
+    public void recover(List<DataManager> peers) {
+        if (this.logManager != null) {
+            // Memory of a crashed site is gone, start over from what reached stable storage
+            this.committedSnapshots = new VersionStore();
+            if (this.dataBuffer == null) {
+                for (int variableId: this.initialValues.keys())
+                    this.committedSnapshots.register(variableId, this.initialValues.get(variableId, 0), 0);
+            } else {
+                this.dataBuffer = new DataBufferImpl(this.bufferCapacity, this.persistentStoreManager);
+            }
+            long lostVersions = this.retainedVersionCount.sumThenReset() - this.initialValues.size();
+            this.retainedVersionCount.add(this.initialValues.size());
+            this.reclaimedVersionCount.add(lostVersions);
+            if (!this.restoreCommittedState())
+                throw new RuntimeException("Unable to restore committed state of site "+this.siteId);
+        }
+
+        // Pull every version committed on a peer after the latest one this site has, one peer per shared variable
+        Set<Integer> remainingVariableIds = this.getManagedVariableIds();
+        long[] installedVersions = new long[1];
+        for (DataManager peer: peers) {
+            Map<Integer, Long> sinceTimestamps = new HashMap<>();
+            this.lockResidency(false);
+            try {
+                for (int variableId: peer.getManagedVariableIds()) {
+                    if (remainingVariableIds.remove(variableId))
+                        sinceTimestamps.put(variableId, this.getLatestTimestamp(variableId));
+                }
+            } finally {
+                this.unlockResidency(false);
+            }
+            if (sinceTimestamps.isEmpty())
+                continue;
+            peer.streamCommittedVersions(sinceTimestamps, chunk -> {
+                this.lockResidency(true);
+                try {
+                    for (DataEntry dataEntry: chunk) {
+                        int slot = this.residentSlot(dataEntry.getVariableId());
+                        if (dataEntry.getCommitTimestamp() <= this.committedSnapshots.getLatestTimestamp(slot))
+                            continue;
+                        int reclaimed = this.committedSnapshots.append(slot, dataEntry.getValue(), dataEntry.getCommitTimestamp(), this.lowWatermark);
+                        this.retainedVersionCount.add(1 - reclaimed);
+                        this.reclaimedVersionCount.add(reclaimed);
+                        installedVersions[0]++;
+                    }
+                } finally {
+                    this.unlockResidency(true);
+                }
+            });
+        }
+        // Copies are now as current as if the site never went down, so the outage no longer restricts reads
+        synchronized (this) {
+            this.downtimes = this.downtimes.withoutLastFailure();
+        }
+        logger.info("Site {} caught up {} committed versions from {} peers", this.siteId, installedVersions[0], peers.size());
+    }
+
+    @Override
+    public void streamCommittedVersions(Map<Integer, Long> sinceTimestamps, Consumer<List<DataEntry>> consumer) {
+        List<DataEntry> chunk = new ArrayList<>(STREAM_CHUNK_SIZE);
+        for (Map.Entry<Integer, Long> since: sinceTimestamps.entrySet()) {
+            if (!this.initialValues.containsKey(since.getKey()))
+                continue;
+            for (DataEntry version: this.getVersionsSince(since.getKey(), since.getValue())) {
+                chunk.add(version);
+                if (chunk.size() == STREAM_CHUNK_SIZE) {
+                    consumer.accept(chunk);
+                    chunk = new ArrayList<>(STREAM_CHUNK_SIZE);
+                }
+            }
+        }
+        if (!chunk.isEmpty())
+            consumer.accept(chunk);
+    }
+
+    private List<DataEntry> getVersionsSince(int variableId, long sinceTimestamp) {
+        List<DataEntry> versions = new ArrayList<>();
+        this.lockResidency(false);
+        try {
+            int slot = this.committedSnapshots.slotOf(variableId);
+            if (slot == -1) {
+                DataEntry bufferedVersion = this.bufferedVersion(variableId);
+                if (bufferedVersion.getCommitTimestamp() > sinceTimestamp)
+                    versions.add(bufferedVersion);
+                return versions;
+            }
+            for (int version=this.committedSnapshots.versionAt(slot, sinceTimestamp); version<this.committedSnapshots.getVersionCount(slot); version++) {
+                long commitTimestamp = this.committedSnapshots.getTimestamp(slot, version);
+                if (commitTimestamp > sinceTimestamp)
+                    versions.add(new DataEntry(variableId, this.committedSnapshots.getValue(slot, version), commitTimestamp));
+            }
+            return versions;
+        } finally {
+            this.unlockResidency(false);
+        }
     }
 
     @Override
@@ -175,8 +707,14 @@ public class DataManagerImpl implements DataManager {
         Collections.sort(variableIds);
         for (int v=0; v<variableIds.size(); ++v) {
             int variableId = variableIds.get(v);
-            List<VariableSnapshot> versions = this.committedSnapshots.get(variableId);
-            int lastCommittedValue = versions.get(versions.size()-1).getValue();
+            int lastCommittedValue;
+            this.lockResidency(false);
+            try {
+                int slot = this.committedSnapshots.slotOf(variableId);
+                lastCommittedValue = slot == -1 ? this.bufferedVersion(variableId).getValue() : this.committedSnapshots.getLatestValue(slot);
+            } finally {
+                this.unlockResidency(false);
+            }
             if (v == (variableIds.size() - 1))
                 System.out.printf("x%d: %d", variableId, lastCommittedValue);
             else
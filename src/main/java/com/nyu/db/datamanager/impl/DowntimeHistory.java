@@ -0,0 +1,116 @@
+package com.nyu.db.datamanager.impl;
+
+import java.util.Arrays;
+
+/**
+ * Failure history of a site as down windows [down, boot) sorted by time, held in parallel primitive arrays. Windows
+ * never overlap since a site recovers before it can fail again, so both availability checks are binary searches.
+ * Instances are immutable, every change returns a new history, so readers never see a change half applied.
+ * Windows that closed before the low watermark are collapsed into the latest failure among them, which is all that
+ * transactions still active can ask about.
+ */
+class DowntimeHistory {
+
+    static final DowntimeHistory EMPTY = new DowntimeHistory(new long[0], new long[0], Long.MIN_VALUE);
+
+    private static final long OPEN = Long.MAX_VALUE; // Boot time of a window the site has not recovered from
+
+    private final long[] downTimes; // Time instant at which the site went down, ascending
+    private final long[] bootTimes; // Time instant at which the site came back up, OPEN while still down
+    private final long trimmedDownTime; // Latest failure among the trimmed windows, Long.MIN_VALUE if none
+
+    private DowntimeHistory(long[] downTimes, long[] bootTimes, long trimmedDownTime) {
+        this.downTimes = downTimes;
+        this.bootTimes = bootTimes;
+        this.trimmedDownTime = trimmedDownTime;
+    }
+
+    boolean isDown() {
+        int n = this.bootTimes.length;
+        return n > 0 && this.bootTimes[n-1] == OPEN;
+    }
+
+    /**
+     * @return Number of down windows retained
+     */
+    int size() {
+        return this.downTimes.length;
+    }
+
+    /**
+     * @return true if the site went down at some instant in [from, to]
+     */
+    boolean wentDownBetween(long from, long to) {
+        if (this.trimmedDownTime >= from && this.trimmedDownTime <= to)
+            return true;
+        int i = this.firstDownAtOrAfter(from);
+        return i < this.downTimes.length && this.downTimes[i] <= to;
+    }
+
+    /**
+     * @return true if the timestamp lies strictly inside a window the site has recovered from
+     */
+    boolean wasDownAt(long timestamp) {
+        int i = this.firstDownAtOrAfter(timestamp) - 1; // Latest window that began before the timestamp
+        return i >= 0 && timestamp < this.bootTimes[i] && this.bootTimes[i] != OPEN;
+    }
+
+    DowntimeHistory withFailure(long timestamp) {
+        if (this.isDown())
+            return this; // Still down since the earlier failure, which covers every check a later one would
+        int n = this.downTimes.length;
+        long[] downTimes = Arrays.copyOf(this.downTimes, n+1);
+        long[] bootTimes = Arrays.copyOf(this.bootTimes, n+1);
+        downTimes[n] = timestamp;
+        bootTimes[n] = OPEN;
+        return new DowntimeHistory(downTimes, bootTimes, this.trimmedDownTime);
+    }
+
+    DowntimeHistory withRecovery(long timestamp) {
+        if (!this.isDown())
+            return this;
+        long[] bootTimes = this.bootTimes.clone();
+        bootTimes[bootTimes.length-1] = timestamp;
+        return new DowntimeHistory(this.downTimes, bootTimes, this.trimmedDownTime);
+    }
+
+    /**
+     * Forget the ongoing failure, e.g. once the site caught up every write it missed
+     */
+    DowntimeHistory withoutLastFailure() {
+        if (!this.isDown())
+            return this;
+        int n = this.downTimes.length - 1;
+        return new DowntimeHistory(Arrays.copyOf(this.downTimes, n), Arrays.copyOf(this.bootTimes, n), this.trimmedDownTime);
+    }
+
+    /**
+     * Collapse windows that closed before the low watermark. Transactions still active started at or after it, so
+     * no timestamp they check can fall inside those windows, and only whether a failure happened after some earlier
+     * instant matters.
+     * @param lowWatermark Start time of the oldest active transaction
+     */
+    DowntimeHistory trimmedBefore(long lowWatermark) {
+        int trimmed = 0;
+        while (trimmed < this.bootTimes.length && this.bootTimes[trimmed] != OPEN && this.bootTimes[trimmed] < lowWatermark)
+            trimmed++;
+        if (trimmed == 0)
+            return this;
+        int n = this.downTimes.length;
+        return new DowntimeHistory(Arrays.copyOfRange(this.downTimes, trimmed, n),
+                Arrays.copyOfRange(this.bootTimes, trimmed, n), this.downTimes[trimmed-1]);
+    }
+
+    private int firstDownAtOrAfter(long timestamp) {
+        int low = 0;
+        int high = this.downTimes.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (this.downTimes[mid] < timestamp)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+}
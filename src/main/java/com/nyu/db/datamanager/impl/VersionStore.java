@@ -0,0 +1,228 @@
+package com.nyu.db.datamanager.impl;
+
+import com.nyu.db.utils.IntIntMap;
+
+import java.util.Arrays;
+
+/**
+ * Committed versions of every variable on a site, held in parallel primitive arrays.
+ * Each variable gets a dense slot. The latest version of a slot is stored inline, older versions that may still be
+ * visible to some transaction are kept in per-slot history arrays that are only allocated once a variable is
+ * overwritten. Versions of a slot are addressed by an index in [0, getVersionCount(slot)), ordered by commit
+ * timestamp, with the latest version last. Slots of removed variables are reused by later registrations.
+ */
+class VersionStore {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int FREE = Integer.MIN_VALUE; // Variable id of a free slot
+
+    private final IntIntMap slots; // Variable id to slot
+    private int[] variableIds;
+    private int[] latestValues;
+    private long[] latestTimestamps;
+    private int[][] historyValues;
+    private long[][] historyTimestamps;
+    private int[] historySizes;
+    private int size;
+    private int[] freeSlots;
+    private int freeCount;
+
+    VersionStore() {
+        this.slots = new IntIntMap(INITIAL_CAPACITY);
+        this.variableIds = new int[INITIAL_CAPACITY];
+        this.latestValues = new int[INITIAL_CAPACITY];
+        this.latestTimestamps = new long[INITIAL_CAPACITY];
+        this.historyValues = new int[INITIAL_CAPACITY][];
+        this.historyTimestamps = new long[INITIAL_CAPACITY][];
+        this.historySizes = new int[INITIAL_CAPACITY];
+        this.size = 0;
+        this.freeSlots = new int[INITIAL_CAPACITY];
+        this.freeCount = 0;
+    }
+
+    /**
+     * Registers a variable with a single committed version, dropping any versions it previously had
+     * @return Number of versions dropped
+     */
+    int register(int variableId, int value, long commitTimestamp) {
+        int slot = this.slots.get(variableId, -1);
+        int dropped = 0;
+        if (slot == -1) {
+            if (this.freeCount > 0) {
+                slot = this.freeSlots[--this.freeCount];
+            } else {
+                if (this.size == this.variableIds.length)
+                    this.grow();
+                slot = this.size++;
+            }
+            this.slots.put(variableId, slot);
+            this.variableIds[slot] = variableId;
+        } else {
+            dropped = this.getVersionCount(slot);
+        }
+        this.latestValues[slot] = value;
+        this.latestTimestamps[slot] = commitTimestamp;
+        this.historyValues[slot] = null;
+        this.historyTimestamps[slot] = null;
+        this.historySizes[slot] = 0;
+        return dropped;
+    }
+
+    /**
+     * Removes a variable and all its versions, freeing its slot
+     * @return Number of versions dropped, 0 if the variable isn't stored here
+     */
+    int remove(int variableId) {
+        int slot = this.slots.remove(variableId, -1);
+        if (slot == -1)
+            return 0;
+        int dropped = this.getVersionCount(slot);
+        this.variableIds[slot] = FREE;
+        this.historyValues[slot] = null;
+        this.historyTimestamps[slot] = null;
+        this.historySizes[slot] = 0;
+        if (this.freeCount == this.freeSlots.length)
+            this.freeSlots = Arrays.copyOf(this.freeSlots, this.freeCount << 1);
+        this.freeSlots[this.freeCount++] = slot;
+        return dropped;
+    }
+
+    /**
+     * @return true if the slot currently holds no variable
+     */
+    boolean isFree(int slot) {
+        return this.variableIds[slot] == FREE;
+    }
+
+    /**
+     * @return Number of variables stored
+     */
+    int variableCount() {
+        return this.size - this.freeCount;
+    }
+
+    /**
+     * @return Slot of the variable, -1 if the variable isn't stored here
+     */
+    int slotOf(int variableId) {
+        return this.slots.get(variableId, -1);
+    }
+
+    /**
+     * @return Number of slots in use or free, every slot is in [0, size())
+     */
+    int size() {
+        return this.size;
+    }
+
+    int getVariableId(int slot) {
+        return this.variableIds[slot];
+    }
+
+    int getVersionCount(int slot) {
+        return this.historySizes[slot] + 1;
+    }
+
+    int getLatestValue(int slot) {
+        return this.latestValues[slot];
+    }
+
+    long getLatestTimestamp(int slot) {
+        return this.latestTimestamps[slot];
+    }
+
+    int getValue(int slot, int version) {
+        return version == this.historySizes[slot] ? this.latestValues[slot] : this.historyValues[slot][version];
+    }
+
+    long getTimestamp(int slot, int version) {
+        return version == this.historySizes[slot] ? this.latestTimestamps[slot] : this.historyTimestamps[slot][version];
+    }
+
+    /**
+     * Binary search for the latest version committed at or before the given timestamp
+     * @param slot Slot of the variable
+     * @param timestamp Timestamp of the snapshot
+     * @return Index of the version visible at the timestamp, the oldest retained version if all are newer
+     */
+    int versionAt(int slot, long timestamp) {
+        int historySize = this.historySizes[slot];
+        if (this.latestTimestamps[slot] <= timestamp)
+            return historySize;
+        long[] timestamps = this.historyTimestamps[slot];
+        int lo = 0;
+        int hi = historySize;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (timestamps[mid] <= timestamp)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return Math.max(lo - 1, 0);
+    }
+
+    /**
+     * Appends a new latest version and drops versions that no transaction starting at or after the low watermark can
+     * read, i.e. every version older than the one visible at the watermark
+     * @param slot Slot of the variable
+     * @param value Committed value
+     * @param commitTimestamp Commit timestamp, not older than the current latest version
+     * @param lowWatermark Start timestamp of the oldest active transaction
+     * @return Number of versions reclaimed
+     */
+    int append(int slot, int value, long commitTimestamp, long lowWatermark) {
+        int historySize = this.historySizes[slot];
+        if (this.latestTimestamps[slot] <= lowWatermark && commitTimestamp <= lowWatermark) {
+            // Previous latest version is already hidden by the new one for every reader
+            this.historyValues[slot] = null;
+            this.historyTimestamps[slot] = null;
+            this.historySizes[slot] = 0;
+            this.latestValues[slot] = value;
+            this.latestTimestamps[slot] = commitTimestamp;
+            return historySize + 1;
+        }
+
+        int[] values = this.historyValues[slot];
+        long[] timestamps = this.historyTimestamps[slot];
+        if (values == null) {
+            values = new int[2];
+            timestamps = new long[2];
+        } else if (historySize == values.length) {
+            values = Arrays.copyOf(values, historySize << 1);
+            timestamps = Arrays.copyOf(timestamps, historySize << 1);
+        }
+        values[historySize] = this.latestValues[slot];
+        timestamps[historySize] = this.latestTimestamps[slot];
+        this.historyValues[slot] = values;
+        this.historyTimestamps[slot] = timestamps;
+        this.historySizes[slot] = historySize + 1;
+        this.latestValues[slot] = value;
+        this.latestTimestamps[slot] = commitTimestamp;
+
+        int reclaimed = this.versionAt(slot, lowWatermark);
+        if (reclaimed > 0) {
+            historySize = this.historySizes[slot] - reclaimed;
+            if (historySize == 0) {
+                this.historyValues[slot] = null;
+                this.historyTimestamps[slot] = null;
+            } else {
+                // Remaining history fits in the existing arrays, shift it down instead of reallocating
+                System.arraycopy(values, reclaimed, values, 0, historySize);
+                System.arraycopy(timestamps, reclaimed, timestamps, 0, historySize);
+            }
+            this.historySizes[slot] = historySize;
+        }
+        return reclaimed;
+    }
+
+    private void grow() {
+        int capacity = this.variableIds.length << 1;
+        this.variableIds = Arrays.copyOf(this.variableIds, capacity);
+        this.latestValues = Arrays.copyOf(this.latestValues, capacity);
+        this.latestTimestamps = Arrays.copyOf(this.latestTimestamps, capacity);
+        this.historyValues = Arrays.copyOf(this.historyValues, capacity);
+        this.historyTimestamps = Arrays.copyOf(this.historyTimestamps, capacity);
+        this.historySizes = Arrays.copyOf(this.historySizes, capacity);
+    }
+}
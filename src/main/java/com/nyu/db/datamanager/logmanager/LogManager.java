@@ -2,20 +2,49 @@ package com.nyu.db.datamanager.logmanager;
 
 import com.nyu.db.model.LogEntry;
 
+import java.util.function.Consumer;
+
 /**
- * Code not used currently
  * Manages Log Buffer(in-memory) and Log(stable storage)
  */
 public interface LogManager {
 
-    public void pushToBuffer(LogEntry logEntry);
+    /**
+     * Append a log entry to the in-memory log buffer
+     * @param logEntry Log entry
+     * @return Log sequence number just past the entry, pass to flushUpTo to wait for the entry to be durable
+     */
+    public long pushToBuffer(LogEntry logEntry);
 
+    /**
+     * Write everything in the log buffer to stable storage
+     */
     public void flushBuffer();
 
     /**
-     * Read from log on stable storage and persist to data file
-     * @return
+     * Wait until the log is durable up to the given sequence number. Callers waiting at the same time are served by a
+     * single write and force of the log (group commit).
+     * @param logSequenceNumber Log sequence number returned by pushToBuffer
+     * @return false if the log could not be written, the entries of the failed write are dropped and never replayed
+     */
+    public boolean flushUpTo(long logSequenceNumber);
+
+    /**
+     * Read the log from stable storage and replay every intact entry, in log order. A torn entry at the end of the log
+     * (from a crash during a write) is discarded.
+     * @param redo Callback applying one entry
+     * @return true if the log was read successfully
+     */
+    public boolean recover(Consumer<LogEntry> redo);
+
+    /**
+     * Discard the log on stable storage, once everything in it has been persisted elsewhere
+     */
+    public void truncate();
+
+    /**
+     * Flush the buffer and release the log file
      */
-    public boolean recover();
+    public void close();
 
 }
@@ -0,0 +1,305 @@
+package com.nyu.db.datamanager.logmanager.impl;
+
+import com.nyu.db.datamanager.DurabilityMode;
+import com.nyu.db.datamanager.logmanager.LogManager;
+import com.nyu.db.model.LogEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead log of a site, appended through a FileChannel.
+ * Each entry is stored as [int bodyLength][body][int crc32 of body], where the body holds the transaction id, commit
+ * timestamp, number of writes and the (variable id, value) pairs. Log sequence numbers are logical byte offsets that
+ * keep growing across truncations.
+ * Entries are appended to an in-memory buffer. Whoever flushes first swaps the buffer out and writes and forces
+ * everything buffered so far, while new entries go to the other buffer, so every commit waiting during a force is
+ * covered by the next single force. If a write fails, the entries it held are dropped and the log is cut back to where
+ * they started, since the commits waiting on them are told they failed and must never be replayed.
+ */
+public class LogManagerImpl implements LogManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(LogManagerImpl.class);
+    private static final int INITIAL_BUFFER_BYTES = 64 * 1024;
+    private static final int MIN_BODY_BYTES = 8 + 8 + 4; // Body of an entry with no writes
+
+    private final Path logFile;
+    private final FileChannel channel;
+    private final ReentrantLock flushLock; // Held by the thread writing and forcing the log
+    private ScheduledExecutorService flusher; // Background flusher in ASYNC mode
+
+    // Guarded by this
+    private ByteBuffer buffer;
+    private ByteBuffer spareBuffer;
+    private long bufferStartLsn; // Log sequence number of the first byte in the buffer
+    private long fileBaseLsn; // Log sequence number stored at offset 0 of the log file
+
+    private volatile long durableLsn;
+    private final List<long[]> droppedRanges; // [start, end) log sequence numbers of entries whose write failed
+    private volatile boolean broken; // A failed write could not be cut off the log file
+
+    public LogManagerImpl(Path logFile, DurabilityMode durabilityMode, long flushIntervalMillis) {
+        this(logFile, open(logFile), durabilityMode, flushIntervalMillis);
+    }
+
+    /**
+     * Create a log manager appending through the given channel, e.g. one that injects I/O errors in tests
+     */
+    LogManagerImpl(Path logFile, FileChannel channel, DurabilityMode durabilityMode, long flushIntervalMillis) {
+        this.logFile = logFile;
+        this.channel = channel;
+        try {
+            this.bufferStartLsn = this.channel.size();
+        } catch (IOException e) {
+            logger.error("Unable to open log file {}", logFile);
+            throw new RuntimeException(e);
+        }
+        this.flushLock = new ReentrantLock();
+        this.droppedRanges = new CopyOnWriteArrayList<>();
+        this.buffer = ByteBuffer.allocateDirect(INITIAL_BUFFER_BYTES);
+        this.spareBuffer = ByteBuffer.allocateDirect(INITIAL_BUFFER_BYTES);
+        this.fileBaseLsn = 0;
+        this.durableLsn = this.bufferStartLsn;
+        if (durabilityMode == DurabilityMode.ASYNC) {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "log-flusher-"+logFile.getFileName());
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.flusher.scheduleWithFixedDelay(this::flushBuffer, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static FileChannel open(Path logFile) {
+        try {
+            return FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            logger.error("Unable to open log file {}", logFile);
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public synchronized long pushToBuffer(LogEntry logEntry) {
+        int numWrites = logEntry.getVariableIds().length;
+        int bodyBytes = 8 + 8 + 4 + numWrites * 8;
+        if (this.buffer.remaining() < bodyBytes + 8) {
+            ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(this.buffer.capacity() * 2, this.buffer.position() + bodyBytes + 8));
+            this.buffer.flip();
+            larger.put(this.buffer);
+            this.buffer = larger;
+        }
+        int bodyStart = this.buffer.position() + 4;
+        this.buffer.putInt(bodyBytes);
+        this.buffer.putLong(logEntry.getTransactionId());
+        this.buffer.putLong(logEntry.getCommitTimestamp());
+        this.buffer.putInt(numWrites);
+        for (int i=0; i<numWrites; i++) {
+            this.buffer.putInt(logEntry.getVariableIds()[i]);
+            this.buffer.putInt(logEntry.getValues()[i]);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(this.buffer.duplicate().position(bodyStart).limit(bodyStart + bodyBytes));
+        this.buffer.putInt((int) crc.getValue());
+        return this.bufferStartLsn + this.buffer.position();
+    }
+
+    @Override
+    public void flushBuffer() {
+        long endLsn;
+        synchronized (this) {
+            endLsn = this.bufferStartLsn + this.buffer.position();
+        }
+        this.flushUpTo(endLsn);
+    }
+
+    @Override
+    public boolean flushUpTo(long logSequenceNumber) {
+        if (logSequenceNumber <= this.durableLsn)
+            return !this.isDropped(logSequenceNumber);
+        this.flushLock.lock();
+        try {
+            // Another thread may have forced or dropped our entry while we waited for the lock
+            if (this.isDropped(logSequenceNumber))
+                return false;
+            if (logSequenceNumber <= this.durableLsn)
+                return true;
+            if (this.broken)
+                return false;
+            return this.writeAndForce();
+        } finally {
+            this.flushLock.unlock();
+        }
+    }
+
+    /**
+     * Swap out the buffer and write it to the log file. Must be called holding the flush lock. If the write fails, the
+     * swapped out entries are dropped, see drop.
+     * @return true if the log is durable up to the end of the swapped out buffer
+     */
+    private boolean writeAndForce() {
+        ByteBuffer toWrite;
+        long startLsn;
+        long endLsn;
+        long baseLsn;
+        synchronized (this) {
+            toWrite = this.buffer;
+            this.buffer = this.spareBuffer;
+            this.buffer.clear();
+            startLsn = this.bufferStartLsn;
+            endLsn = startLsn + toWrite.position();
+            this.bufferStartLsn = endLsn;
+            baseLsn = this.fileBaseLsn;
+        }
+        toWrite.flip();
+        boolean written = false;
+        try {
+            long position = startLsn - baseLsn;
+            while (toWrite.hasRemaining())
+                position += this.channel.write(toWrite, position);
+            this.channel.force(false);
+            written = true;
+        } catch (IOException e) {
+            logger.error("Unable to write log file {}: {}", this.logFile, e.getMessage());
+        } finally {
+            synchronized (this) {
+                this.spareBuffer = toWrite;
+                if (!written)
+                    this.drop(startLsn, endLsn);
+            }
+        }
+        if (written)
+            this.durableLsn = endLsn;
+        return written;
+    }
+
+    /**
+     * Drop entries whose write failed. Part of them may have reached the file, so it is cut back to where they started
+     * and the entries buffered since are written in their place. If the file can't be cut back, every later flush fails,
+     * so the site commits nothing more that a restart could replay the dropped entries next to. Must be called holding
+     * the flush lock and this.
+     */
+    private void drop(long startLsn, long endLsn) {
+        this.droppedRanges.add(new long[]{startLsn, endLsn});
+        try {
+            this.channel.truncate(startLsn - this.fileBaseLsn);
+            this.channel.force(true);
+            this.fileBaseLsn += endLsn - startLsn;
+        } catch (IOException e) {
+            logger.error("Unable to cut log file {} back after a failed write, refusing further commits", this.logFile);
+            this.broken = true;
+        }
+    }
+
+    private boolean isDropped(long logSequenceNumber) {
+        for (long[] range: this.droppedRanges) {
+            if (logSequenceNumber > range[0] && logSequenceNumber <= range[1])
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean recover(Consumer<LogEntry> redo) {
+        this.flushLock.lock();
+        try {
+            long validBytes = 0;
+            int numEntries = 0;
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(this.channel.position(0))));
+            try {
+                long fileBytes = this.channel.size();
+                while (true) {
+                    int bodyBytes = in.readInt();
+                    // A torn length prefix ends the valid log, like a checksum mismatch
+                    if (bodyBytes < MIN_BODY_BYTES || bodyBytes > fileBytes - validBytes - 8)
+                        break;
+                    byte[] body = new byte[bodyBytes];
+                    in.readFully(body);
+                    int storedCrc = in.readInt();
+                    CRC32 crc = new CRC32();
+                    crc.update(body);
+                    if ((int) crc.getValue() != storedCrc)
+                        break;
+                    ByteBuffer bodyBuffer = ByteBuffer.wrap(body);
+                    long transactionId = bodyBuffer.getLong();
+                    long commitTimestamp = bodyBuffer.getLong();
+                    int numWrites = bodyBuffer.getInt();
+                    int[] variableIds = new int[numWrites];
+                    int[] values = new int[numWrites];
+                    for (int i=0; i<numWrites; i++) {
+                        variableIds[i] = bodyBuffer.getInt();
+                        values[i] = bodyBuffer.getInt();
+                    }
+                    redo.accept(new LogEntry(transactionId, commitTimestamp, variableIds, values));
+                    validBytes += 4 + bodyBytes + 4;
+                    numEntries++;
+                }
+            } catch (EOFException e) {
+                // Reached the end of the log, possibly in the middle of a torn entry
+            }
+            synchronized (this) {
+                long logBytes = this.bufferStartLsn - this.fileBaseLsn;
+                if (validBytes < logBytes) {
+                    logger.warn("Discarding {} bytes of torn log entries in {}", logBytes - validBytes, this.logFile);
+                    this.channel.truncate(validBytes);
+                    this.bufferStartLsn = this.fileBaseLsn + validBytes;
+                    this.durableLsn = this.bufferStartLsn;
+                }
+            }
+            logger.debug("Replayed {} log entries from {}", numEntries, this.logFile);
+            return true;
+        } catch (IOException e) {
+            logger.error("Unable to read log file {}: {}", this.logFile, e.getMessage());
+            return false;
+        } finally {
+            this.flushLock.unlock();
+        }
+    }
+
+    @Override
+    public void truncate() {
+        this.flushLock.lock();
+        try {
+            synchronized (this) {
+                // Everything before the buffer has been written, buffered entries are written after the truncation
+                this.fileBaseLsn = this.bufferStartLsn;
+                this.channel.truncate(0);
+                this.channel.force(true);
+            }
+        } catch (IOException e) {
+            logger.error("Unable to truncate log file {}", this.logFile);
+            throw new RuntimeException(e);
+        } finally {
+            this.flushLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (this.flusher != null)
+            this.flusher.shutdownNow();
+        this.flushBuffer();
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            logger.error("Unable to close log file {}", this.logFile);
+        }
+    }
+}
@@ -3,19 +3,38 @@ package com.nyu.db.datamanager.persistentstoremanager;
 import com.nyu.db.model.DataEntry;
 
 import java.util.List;
-import java.util.Map;
+import java.util.Optional;
 
 /**
- * Code not used currently
+ * Manages the committed data of a site on stable storage. Holds the checkpointed version of every variable, versions
+ * committed after the checkpoint are only in the write-ahead log.
  */
 public interface PersistentStoreManager {
 
-    public int read(int variableId, long timestamp);
+    /**
+     * Read the persisted version of a variable
+     * @param variableId Variable id
+     * @param timestamp Snapshot timestamp
+     * @return Persisted entry if one was committed at or before the timestamp, Optional.empty() otherwise
+     */
+    public Optional<DataEntry> read(int variableId, long timestamp);
 
     /**
-     * Persist data to stable storage
-     * @return
+     * Persist data to stable storage, replacing the stored version of each variable. Returns once the data is durable.
+     * @param data Entries to persist, at most one per variable
+     * @return true if the data was persisted
      */
     public boolean write(List<DataEntry> data);
 
+    /**
+     * Get every persisted entry
+     * @return One entry per persisted variable
+     */
+    public List<DataEntry> getAllData();
+
+    /**
+     * Release the underlying storage
+     */
+    public void close();
+
 }
@@ -0,0 +1,163 @@
+package com.nyu.db.datamanager.persistentstoremanager.impl;
+
+import com.nyu.db.datamanager.persistentstoremanager.PersistentStoreManager;
+import com.nyu.db.model.DataEntry;
+import com.nyu.db.utils.IntIntMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.CRC32;
+
+/**
+ * Memory-mapped store of fixed size records, one per variable, updated in place.
+ * The file starts with an [int magic][int recordCount] header padded to 16 bytes, followed by 32 byte records of
+ * [int variableId][int value][long commitTimestamp][int crc32 of the preceding fields][padding]. Header and record
+ * sizes divide the page size, so no record straddles two pages. New records are written before the record count
+ * covering them, so a crash in the middle of a write leaves either the old or the new count. A record torn by a crash
+ * fails its checksum and is treated as absent, so recovery takes the variable from the write-ahead log, which is only
+ * truncated once the checkpoint is durable.
+ */
+public class PersistentStoreManagerImpl implements PersistentStoreManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(PersistentStoreManagerImpl.class);
+    private static final int MAGIC = 0x53544f32;
+    private static final int HEADER_BYTES = 16;
+    private static final int RECORD_BYTES = 32;
+    private static final int CHECKSUMMED_BYTES = 16; // Fields of a record covered by its checksum
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Path storeFile;
+    private final FileChannel channel;
+    private MappedByteBuffer mappedStore;
+    private final IntIntMap recordOf; // Variable id to record number
+    private int recordCount;
+    private int capacity; // Number of records the current mapping can hold
+
+    public PersistentStoreManagerImpl(Path storeFile) {
+        boolean initialized; // File existed before, as opposed to being created here
+        this.storeFile = storeFile;
+        this.recordOf = new IntIntMap();
+        try {
+            this.channel = FileChannel.open(storeFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            initialized = this.channel.size() > 0;
+            long fileRecords = Math.max(0, (this.channel.size() - HEADER_BYTES) / RECORD_BYTES);
+            this.map((int) Math.max(INITIAL_CAPACITY, fileRecords));
+        } catch (IOException e) {
+            logger.error("Unable to open store file {}", storeFile);
+            throw new RuntimeException(e);
+        }
+        if (this.mappedStore.getInt(0) == MAGIC) {
+            this.recordCount = this.mappedStore.getInt(4);
+            // Torn records stay unused, their variables get a new record on their next write
+            for (int record=0; record<this.recordCount; record++) {
+                if (this.isIntact(record))
+                    this.recordOf.put(this.mappedStore.getInt(offsetOf(record)), record);
+            }
+        } else if (initialized && this.mappedStore.getInt(0) != 0) {
+            logger.error("Store file {} has an unknown format", storeFile);
+            throw new RuntimeException("Unknown format of store file "+storeFile);
+        } else {
+            this.recordCount = 0;
+            this.mappedStore.putInt(0, MAGIC);
+            this.mappedStore.putInt(4, 0);
+            this.mappedStore.force();
+        }
+    }
+
+    @Override
+    public synchronized Optional<DataEntry> read(int variableId, long timestamp) {
+        int record = this.recordOf.get(variableId, -1);
+        if (record == -1)
+            return Optional.empty();
+        DataEntry dataEntry = this.entryAt(record);
+        return dataEntry.getCommitTimestamp() <= timestamp ? Optional.of(dataEntry) : Optional.empty();
+    }
+
+    @Override
+    public synchronized boolean write(List<DataEntry> data) {
+        try {
+            int newRecordCount = this.recordCount;
+            for (DataEntry dataEntry: data) {
+                int record = this.recordOf.get(dataEntry.getVariableId(), -1);
+                if (record == -1) {
+                    record = newRecordCount++;
+                    if (record == this.capacity)
+                        this.map(this.capacity << 1);
+                    this.recordOf.put(dataEntry.getVariableId(), record);
+                }
+                int offset = offsetOf(record);
+                this.mappedStore.putInt(offset, dataEntry.getVariableId());
+                this.mappedStore.putInt(offset + 4, dataEntry.getValue());
+                this.mappedStore.putLong(offset + 8, dataEntry.getCommitTimestamp());
+                this.mappedStore.putInt(offset + CHECKSUMMED_BYTES, this.checksum(offset));
+            }
+            this.mappedStore.force();
+            if (newRecordCount != this.recordCount) {
+                this.recordCount = newRecordCount;
+                this.mappedStore.putInt(4, newRecordCount);
+                this.mappedStore.force();
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            logger.error("Unable to write store file {}: {}", this.storeFile, e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized List<DataEntry> getAllData() {
+        List<DataEntry> data = new ArrayList<>(this.recordOf.size());
+        for (int record=0; record<this.recordCount; record++) {
+            DataEntry dataEntry = this.entryAt(record);
+            if (this.recordOf.get(dataEntry.getVariableId(), -1) == record)
+                data.add(dataEntry);
+        }
+        return data;
+    }
+
+    @Override
+    public synchronized void close() {
+        this.mappedStore.force();
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            logger.error("Unable to close store file {}", this.storeFile);
+        }
+    }
+
+    private int checksum(int offset) {
+        CRC32 crc = new CRC32();
+        crc.update(this.mappedStore.duplicate().position(offset).limit(offset + CHECKSUMMED_BYTES));
+        return (int) crc.getValue();
+    }
+
+    private boolean isIntact(int record) {
+        int offset = offsetOf(record);
+        return this.mappedStore.getInt(offset + CHECKSUMMED_BYTES) == this.checksum(offset);
+    }
+
+    private DataEntry entryAt(int record) {
+        int offset = offsetOf(record);
+        return new DataEntry(this.mappedStore.getInt(offset), this.mappedStore.getInt(offset + 4), this.mappedStore.getLong(offset + 8));
+    }
+
+    /**
+     * Map the file with room for the given number of records, growing the file if needed
+     */
+    private void map(int capacity) throws IOException {
+        this.mappedStore = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) capacity * RECORD_BYTES);
+        this.capacity = capacity;
+    }
+
+    private static int offsetOf(int record) {
+        return HEADER_BYTES + record * RECORD_BYTES;
+    }
+}
@@ -0,0 +1,23 @@
+package com.nyu.db.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic count, cheap to increment from many threads
+ */
+public class Counter {
+
+    private final LongAdder count = new LongAdder();
+
+    public void increment() {
+        this.count.increment();
+    }
+
+    public void add(long delta) {
+        this.count.add(delta);
+    }
+
+    public long get() {
+        return this.count.sum();
+    }
+}
@@ -0,0 +1,41 @@
+package com.nyu.db.metrics;
+
+import com.nyu.db.utils.LatencyHistogram;
+
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Named counters, histograms and gauges of a database. Names are dot separated, per-site metrics start with
+ * "site.<siteId>.". Implementations decide where the metrics are published.
+ */
+public interface MetricsRegistry {
+
+    /**
+     * Get the counter with the given name, creating it if needed
+     * @param name Metric name
+     * @return Counter registered under the name
+     */
+    public Counter counter(String name);
+
+    /**
+     * Get the histogram with the given name, creating it if needed
+     * @param name Metric name
+     * @return Histogram registered under the name
+     */
+    public LatencyHistogram histogram(String name);
+
+    /**
+     * Register a value that is read whenever the metrics are published, replacing any gauge of the same name
+     * @param name Metric name
+     * @param value Supplier of the current value, must be thread-safe
+     */
+    public void gauge(String name, LongSupplier value);
+
+    /**
+     * Get the current value of every metric. Histograms are flattened into name.count, name.mean, name.p50,
+     * name.p99 and name.max.
+     * @return Metric values ordered by name
+     */
+    public Map<String, Number> snapshot();
+}
@@ -0,0 +1,94 @@
+package com.nyu.db.metrics.impl;
+
+import com.nyu.db.metrics.MetricsRegistry;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+/**
+ * Publishes a metrics registry as a read-only MBean, with one attribute per metric of the registry snapshot. The
+ * attribute list is taken when a JMX client asks for it, so metrics registered later show up as well.
+ */
+public class JmxMetricsExporter implements DynamicMBean {
+
+    private final MetricsRegistry registry;
+
+    public JmxMetricsExporter(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Register the registry with the platform MBean server
+     * @param registry Metrics registry
+     * @param objectName Name of the MBean, e.g. com.nyu.db:type=Metrics
+     * @return Name the MBean was registered under
+     */
+    public static ObjectName register(MetricsRegistry registry, String objectName) {
+        try {
+            ObjectName name = new ObjectName(objectName);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new JmxMetricsExporter(registry), name);
+            return name;
+        } catch (JMException e) {
+            throw new RuntimeException("Unable to register metrics MBean "+objectName, e);
+        }
+    }
+
+    /**
+     * Remove an MBean registered with register
+     * @param name Name returned by register
+     */
+    public static void unregister(ObjectName name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            throw new RuntimeException("Unable to unregister metrics MBean "+name, e);
+        }
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Number value = this.registry.snapshot().get(attribute);
+        if (value == null)
+            throw new AttributeNotFoundException("No metric named "+attribute);
+        return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Number> snapshot = this.registry.snapshot();
+        AttributeList list = new AttributeList();
+        for (String attribute: attributes) {
+            if (snapshot.containsKey(attribute))
+                list.add(new Attribute(attribute, snapshot.get(attribute)));
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metric "+attribute.getName()+" is read-only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws MBeanException {
+        throw new MBeanException(new UnsupportedOperationException("No operations on metrics"));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        Map<String, Number> snapshot = this.registry.snapshot();
+        MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[snapshot.size()];
+        int i = 0;
+        for (Map.Entry<String, Number> metric: snapshot.entrySet()) {
+            attributes[i++] = new MBeanAttributeInfo(metric.getKey(), metric.getValue().getClass().getName(),
+                    metric.getKey(), true, false, false);
+        }
+        return new MBeanInfo(JmxMetricsExporter.class.getName(), "Database metrics", attributes, null, null, null);
+    }
+}
@@ -0,0 +1,64 @@
+package com.nyu.db.metrics.impl;
+
+import com.nyu.db.metrics.Counter;
+import com.nyu.db.metrics.MetricsRegistry;
+import com.nyu.db.utils.LatencyHistogram;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * In-memory metrics registry. Metrics are looked up once when a component registers them, so updates never touch
+ * the registry itself.
+ */
+public class MetricsRegistryImpl implements MetricsRegistry {
+
+    private final Map<String, Object> metrics = new ConcurrentHashMap<>();
+
+    @Override
+    public Counter counter(String name) {
+        return this.getOrCreate(name, Counter.class);
+    }
+
+    @Override
+    public LatencyHistogram histogram(String name) {
+        return this.getOrCreate(name, LatencyHistogram.class);
+    }
+
+    @Override
+    public void gauge(String name, LongSupplier value) {
+        this.metrics.compute(name, (key, existing) -> {
+            if (existing != null && !(existing instanceof LongSupplier))
+                throw new IllegalArgumentException("Metric "+name+" is already registered as a "+existing.getClass().getSimpleName());
+            return value;
+        });
+    }
+
+    @Override
+    public Map<String, Number> snapshot() {
+        Map<String, Number> snapshot = new TreeMap<>();
+        this.metrics.forEach((name, metric) -> {
+            if (metric instanceof Counter counter) {
+                snapshot.put(name, counter.get());
+            } else if (metric instanceof LongSupplier gauge) {
+                snapshot.put(name, gauge.getAsLong());
+            } else if (metric instanceof LatencyHistogram histogram) {
+                snapshot.put(name+".count", histogram.getCount());
+                snapshot.put(name+".mean", histogram.getMean());
+                snapshot.put(name+".p50", histogram.getPercentile(50));
+                snapshot.put(name+".p99", histogram.getPercentile(99));
+                snapshot.put(name+".max", histogram.getMax());
+            }
+        });
+        return snapshot;
+    }
+
+    private <T> T getOrCreate(String name, Class<T> type) {
+        Object metric = this.metrics.computeIfAbsent(name, key -> type == Counter.class ? new Counter() : new LatencyHistogram());
+        if (!type.isInstance(metric))
+            throw new IllegalArgumentException("Metric "+name+" is already registered as a "+metric.getClass().getSimpleName());
+        return type.cast(metric);
+    }
+}
@@ -0,0 +1,8 @@
+package com.nyu.db.model;
+
+public enum AbortReason {
+    UNSERVED_OPERATION, // Some operation of the transaction could not be served by any site
+    FIRST_COMMITTER_WINS, // A concurrent transaction committed a variable written by the transaction
+    SERIALIZATION_CYCLE, // Committing would close a cycle in the serialization graph, or make some transaction a pivot of two RW edges
+    SITE_FAILURE // A site written to by the transaction failed before the transaction committed
+}
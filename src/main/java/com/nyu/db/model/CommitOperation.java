@@ -1,9 +1,13 @@
 package com.nyu.db.model;
 
 import lombok.Getter;
+import lombok.Setter;
 
 @Getter
 public class CommitOperation extends Operation {
+
+    @Setter
+    private CommitResult result; // Set by the transaction manager once the commit has been decided
     public CommitOperation(Transaction transaction, long timestamp) {
         super(transaction, timestamp, OperationType.COMMIT);
     }
@@ -0,0 +1,23 @@
+package com.nyu.db.model;
+
+import lombok.Data;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Outcome of a commit along with the time spent on each site
+ */
+@Data
+public class CommitResult {
+    private boolean committed;
+    private AbortReason abortReason; // null if the transaction committed
+    private final Map<Integer, Long> prepareLatencyNanos; // Time taken by each site to run commit checks
+    private final Map<Integer, Long> commitLatencyNanos; // Time taken by each site to install the writes
+    private long totalLatencyNanos;
+
+    public CommitResult() {
+        this.prepareLatencyNanos = new ConcurrentSkipListMap<>();
+        this.commitLatencyNanos = new ConcurrentSkipListMap<>();
+    }
+}
@@ -1,8 +1,12 @@
 package com.nyu.db.model;
 
+import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 @Data
+@NoArgsConstructor
+@AllArgsConstructor
 public class DataEntry {
     private int variableId;
     private int value;
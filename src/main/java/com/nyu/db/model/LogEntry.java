@@ -1,10 +1,16 @@
 package com.nyu.db.model;
 
+import lombok.AllArgsConstructor;
 import lombok.Data;
-import java.io.Serializable;
-import java.util.Optional;
 
+/**
+ * Redo record of a committed transaction on one site
+ */
 @Data
-public class LogEntry implements Serializable {
-    private Operation operation; // CommitOperation or WriteOperation
+@AllArgsConstructor
+public class LogEntry {
+    private long transactionId;
+    private long commitTimestamp;
+    private int[] variableIds; // Variables written by the transaction on the site
+    private int[] values; // Committed value of each variable, same order as variableIds
 }
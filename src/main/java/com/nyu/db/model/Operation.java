@@ -1,17 +1,27 @@
 package com.nyu.db.model;
 
+import lombok.AccessLevel;
 import lombok.Getter;
-import lombok.Setter;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 @Getter
 public class Operation {
     private static final long NOT_EXECUTED = Integer.MIN_VALUE;
+    private static final AtomicReferenceFieldUpdater<Operation, Runnable> LISTENER =
+            AtomicReferenceFieldUpdater.newUpdater(Operation.class, Runnable.class, "executionListener");
+    private static final AtomicLongFieldUpdater<Operation> EXECUTED_TIMESTAMP =
+            AtomicLongFieldUpdater.newUpdater(Operation.class, "executedTimestamp");
 
     private final Transaction transaction;
     private final long createdTimestamp;
-    @Setter
-    private long executedTimestamp;
+    private volatile long executedTimestamp;
     private final OperationType operationType;
+    @Getter(AccessLevel.NONE)
+    private volatile Runnable executionListener;
+    @Getter(AccessLevel.NONE)
+    private volatile boolean pending; // Counted among the pending operations of its transaction
 
     public Operation(Transaction transaction, long timestamp, OperationType operationType) {
         this.transaction = transaction;
@@ -24,4 +34,37 @@ public class Operation {
         return this.executedTimestamp != NOT_EXECUTED;
     }
 
+    public void setExecutedTimestamp(long executedTimestamp) {
+        long previous = EXECUTED_TIMESTAMP.getAndSet(this, executedTimestamp);
+        if (executedTimestamp != NOT_EXECUTED) {
+            if (previous == NOT_EXECUTED && this.pending)
+                this.transaction.operationExecuted();
+            Runnable listener = LISTENER.getAndSet(this, null);
+            if (listener != null)
+                listener.run();
+        }
+    }
+
+    /**
+     * Register a callback to run once the operation gets executed, e.g. when a waiting operation is replayed on
+     * recovery of a site. Runs immediately if the operation has already executed.
+     * @param listener Callback, must not block since it may run while the transaction manager holds locks
+     */
+    public void onExecuted(Runnable listener) {
+        this.executionListener = listener;
+        if (this.isExecuted() && LISTENER.compareAndSet(this, listener, null))
+            listener.run();
+    }
+
+    /**
+     * Count the operation among the pending operations of its transaction until it executes
+     * @return false if it has already executed
+     */
+    boolean markPending() {
+        if (this.isExecuted())
+            return false;
+        this.pending = true;
+        return true;
+    }
+
 }
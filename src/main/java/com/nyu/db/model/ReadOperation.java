@@ -1,15 +1,34 @@
 package com.nyu.db.model;
 
+import lombok.AccessLevel;
 import lombok.Getter;
+import lombok.Setter;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 @Getter
 
 public class ReadOperation extends SymbolOperation {
+    private static final AtomicIntegerFieldUpdater<ReadOperation> SERVED =
+            AtomicIntegerFieldUpdater.newUpdater(ReadOperation.class, "served");
+
+    @Setter
+    private volatile int value; // Value read, valid once the operation has executed
+    @Getter(AccessLevel.NONE)
+    private volatile int served; // 1 once a replica served the read
 
     public ReadOperation(Transaction transaction, int variableId, long timestamp) {
         super(transaction, variableId, timestamp, OperationType.READ);
     }
 
+    /**
+     * Claim the read for the replica serving it. A hedged read goes to two replicas, only the first to serve it counts.
+     * @return false if another replica already served the read
+     */
+    public boolean markServed() {
+        return SERVED.compareAndSet(this, 0, 1);
+    }
+
     @Override
     public String toString() {
         return String.format("R(T%d, x%d)", this.getTransaction().getTransactionId(), this.getVariableId());
@@ -1,10 +1,16 @@
 package com.nyu.db.model;
 
+import com.nyu.db.utils.IntIntMap;
 import com.nyu.db.utils.TimeManager;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.ToString;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Data
 public class Transaction {
@@ -12,12 +18,119 @@ public class Transaction {
     private final long startTimestamp;
     private long commitTimestamp;
     private final List<SymbolOperation> operations;
+    private volatile TransactionStatus status;
+    private AbortReason abortReason;
+    private final List<Runnable> abortListeners;
+    private boolean readOnly; // Declared read-only at begin, its writes are refused
+    private boolean safeSnapshot; // No read-write transaction was active at begin, so it can't close a cycle as a reader
+    // Indexes over operations, kept up to date as operations are added so lookups don't scan the operations. The
+    // operations and their indexes are guarded by the transaction's monitor since the client adds operations while
+    // the transaction manager's threads look them up.
+    @Getter(AccessLevel.NONE) @ToString.Exclude
+    private final IntIntMap latestWrites; // Variable id to position of the latest write to it in operations
+    @Getter(AccessLevel.NONE) @ToString.Exclude
+    private final IntIntMap reads; // Variable id to number of reads of it
+    @Getter(AccessLevel.NONE) @ToString.Exclude
+    private final AtomicInteger pendingOperations; // Operations added but not yet executed
 
     public Transaction(long transactionId) {
+        this(transactionId, TimeManager.getTime());
+    }
+
+    /**
+     * Create a transaction that started at the given time, e.g. the copy of a transaction received from another node
+     */
+    public Transaction(long transactionId, long startTimestamp) {
         this.transactionId = transactionId;
-        this.startTimestamp = TimeManager.getTime();
+        this.startTimestamp = startTimestamp;
         this.commitTimestamp = -1;
         this.operations = new ArrayList<>();
+        this.status = TransactionStatus.ACTIVE;
+        this.abortListeners = new CopyOnWriteArrayList<>();
+        this.latestWrites = new IntIntMap();
+        this.reads = new IntIntMap();
+        this.pendingOperations = new AtomicInteger();
+    }
+
+    /**
+     * @return Copy of the operations in the order they were added
+     */
+    public synchronized List<SymbolOperation> getOperations() {
+        return List.copyOf(this.operations);
+    }
+
+    /**
+     * Append an operation to the transaction. Operations are added before being submitted for execution.
+     * @param op Read or write of this transaction
+     * @throws IllegalStateException if the operation is a write and the transaction is read-only
+     */
+    public synchronized void addOperation(SymbolOperation op) {
+        if (op.getOperationType() == OperationType.WRITE && this.readOnly)
+            throw new IllegalStateException("T"+this.transactionId+" is read-only, can't run "+op);
+        this.operations.add(op);
+        if (op.getOperationType() == OperationType.WRITE)
+            this.latestWrites.put(op.getVariableId(), this.operations.size() - 1);
+        else
+            this.reads.put(op.getVariableId(), this.reads.get(op.getVariableId(), 0) + 1);
+        if (op.markPending())
+            this.pendingOperations.incrementAndGet();
+    }
+
+    /**
+     * @param variableId Variable
+     * @return Latest write to the variable by this transaction, null if it never wrote it
+     */
+    public synchronized SymbolOperation getLatestWrite(int variableId) {
+        int position = this.latestWrites.get(variableId, -1);
+        return position == -1 ? null : this.operations.get(position);
+    }
+
+    /**
+     * @return Ids of the variables read, in no particular order
+     */
+    public synchronized int[] getReadSet() {
+        return this.reads.keys();
+    }
+
+    /**
+     * @return Ids of the variables written, in no particular order
+     */
+    public synchronized int[] getWriteSet() {
+        return this.latestWrites.keys();
+    }
+
+    /**
+     * @return Number of operations added that are yet to execute
+     */
+    public int getPendingOperations() {
+        return this.pendingOperations.get();
+    }
+
+    void operationExecuted() {
+        this.pendingOperations.decrementAndGet();
+    }
+
+    /**
+     * Register a callback to run once the transaction aborts. Runs immediately if it already has.
+     * @param listener Callback, must not block
+     */
+    public void onAbort(Runnable listener) {
+        this.abortListeners.add(listener);
+        if (this.status == TransactionStatus.ABORTED && this.abortListeners.remove(listener))
+            listener.run();
+    }
+
+    /**
+     * Marks the transaction aborted and notifies abort listeners
+     * @param abortReason Why the transaction aborted
+     */
+    public void markAborted(AbortReason abortReason) {
+        this.abortReason = abortReason;
+        this.status = TransactionStatus.ABORTED;
+        for (Runnable listener: this.abortListeners) {
+            if (this.abortListeners.remove(listener))
+                listener.run();
+        }
     }
 
     @Override
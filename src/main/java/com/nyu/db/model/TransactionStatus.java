@@ -0,0 +1,7 @@
+package com.nyu.db.model;
+
+public enum TransactionStatus {
+    ACTIVE,
+    COMMITTED,
+    ABORTED
+}
@@ -0,0 +1,33 @@
+package com.nyu.db.placement;
+
+import com.nyu.db.datamanager.DataManager;
+
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Decides which sites hold a copy of each variable
+ */
+public interface PlacementPolicy {
+
+    /**
+     * Get the sites holding a copy of a variable
+     * @param variableId Variable id
+     * @return Site ids in ascending order, never empty
+     */
+    public int[] getSites(int variableId);
+
+    /**
+     * Register variables 1 to numVariables on the sites chosen by the policy
+     * @param dataManagers Data managers of sites 1 to n, in site order
+     * @param numVariables Number of variables
+     * @param initialValue Initial value of each variable id
+     */
+    public default void registerVariables(List<DataManager> dataManagers, int numVariables, IntUnaryOperator initialValue) {
+        for (int variableId=1; variableId<=numVariables; variableId++) {
+            int value = initialValue.applyAsInt(variableId);
+            for (int siteId: this.getSites(variableId))
+                dataManagers.get(siteId-1).registerVariable(variableId, value);
+        }
+    }
+}
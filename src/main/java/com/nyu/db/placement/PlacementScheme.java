@@ -0,0 +1,28 @@
+package com.nyu.db.placement;
+
+import com.nyu.db.placement.impl.HashPlacementPolicy;
+import com.nyu.db.placement.impl.LegacyPlacementPolicy;
+import com.nyu.db.placement.impl.RangePlacementPolicy;
+
+public enum PlacementScheme {
+    LEGACY, // Odd variables on a single site, even variables on every site, as in the simulation
+    HASH, // Variables spread over the sites by hash, each copied to a fixed number of consecutive sites
+    RANGE; // Variables split into contiguous ranges, one per site, each copied to a fixed number of consecutive sites
+
+    /**
+     * Create a placement policy of this scheme
+     * @param numSites Number of sites
+     * @param numVariables Number of variables, only used to size the ranges of RANGE
+     * @param replicationFactor Number of copies of each variable, ignored by LEGACY
+     */
+    public PlacementPolicy create(int numSites, int numVariables, int replicationFactor) {
+        switch (this) {
+            case HASH:
+                return new HashPlacementPolicy(numSites, replicationFactor);
+            case RANGE:
+                return new RangePlacementPolicy(numSites, numVariables, replicationFactor);
+            default:
+                return new LegacyPlacementPolicy(numSites);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.nyu.db.placement.impl;
+
+import com.nyu.db.placement.PlacementPolicy;
+
+/**
+ * Hash partitioning. The primary copy of a variable goes to the site its hash picks, the other copies to the sites
+ * that follow it (wrapping around), so every site holds about replicationFactor / numSites of the variables.
+ */
+public class HashPlacementPolicy implements PlacementPolicy {
+
+    private final int numSites;
+    private final int replicationFactor;
+
+    public HashPlacementPolicy(int numSites, int replicationFactor) {
+        if (replicationFactor < 1 || replicationFactor > numSites)
+            throw new IllegalArgumentException("Replication factor "+replicationFactor+" must be between 1 and the number of sites "+numSites);
+        this.numSites = numSites;
+        this.replicationFactor = replicationFactor;
+    }
+
+    @Override
+    public int[] getSites(int variableId) {
+        int h = variableId * 0x9E3779B9;
+        return consecutiveSites(Math.floorMod(h ^ (h >>> 16), this.numSites), this.replicationFactor, this.numSites);
+    }
+
+    /**
+     * @param primary Zero based index of the first site
+     * @return Ids of replicationFactor sites starting at the primary and wrapping around, in ascending order
+     */
+    static int[] consecutiveSites(int primary, int replicationFactor, int numSites) {
+        int[] sites = new int[replicationFactor];
+        // Sites past the end wrap around to the lowest ids, which come first
+        int wrapped = Math.max(0, primary + replicationFactor - numSites);
+        for (int i=0; i<wrapped; i++)
+            sites[i] = 1 + i;
+        for (int i=wrapped; i<replicationFactor; i++)
+            sites[i] = 1 + primary + i - wrapped;
+        return sites;
+    }
+}
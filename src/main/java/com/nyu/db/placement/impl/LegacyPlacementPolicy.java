@@ -0,0 +1,29 @@
+package com.nyu.db.placement.impl;
+
+import com.nyu.db.placement.PlacementPolicy;
+
+import java.util.stream.IntStream;
+
+/**
+ * Placement of the simulation: odd variables are available only at site 1 + variableId % numSites, even variables
+ * are replicated on every site
+ */
+public class LegacyPlacementPolicy implements PlacementPolicy {
+
+    private final int numSites;
+    private final int[] allSites;
+
+    public LegacyPlacementPolicy(int numSites) {
+        if (numSites < 1)
+            throw new IllegalArgumentException("Need at least one site, got "+numSites);
+        this.numSites = numSites;
+        this.allSites = IntStream.rangeClosed(1, numSites).toArray();
+    }
+
+    @Override
+    public int[] getSites(int variableId) {
+        if (variableId % 2 == 0)
+            return this.allSites.clone();
+        return new int[]{1 + Math.floorMod(variableId, this.numSites)};
+    }
+}
@@ -0,0 +1,32 @@
+package com.nyu.db.placement.impl;
+
+import com.nyu.db.placement.PlacementPolicy;
+
+/**
+ * Range partitioning. Variables 1 to numVariables are split into numSites contiguous ranges of about equal size, the
+ * primary copy of a range goes to its site and the other copies to the sites that follow it (wrapping around).
+ * Variables outside 1 to numVariables belong to the first or last range.
+ */
+public class RangePlacementPolicy implements PlacementPolicy {
+
+    private final int numSites;
+    private final int numVariables;
+    private final int replicationFactor;
+
+    public RangePlacementPolicy(int numSites, int numVariables, int replicationFactor) {
+        if (replicationFactor < 1 || replicationFactor > numSites)
+            throw new IllegalArgumentException("Replication factor "+replicationFactor+" must be between 1 and the number of sites "+numSites);
+        if (numVariables < 1)
+            throw new IllegalArgumentException("Need at least one variable, got "+numVariables);
+        this.numSites = numSites;
+        this.numVariables = numVariables;
+        this.replicationFactor = replicationFactor;
+    }
+
+    @Override
+    public int[] getSites(int variableId) {
+        int index = Math.min(Math.max(variableId, 1), this.numVariables) - 1;
+        int primary = (int) ((long) index * this.numSites / this.numVariables);
+        return HashPlacementPolicy.consecutiveSites(primary, this.replicationFactor, this.numSites);
+    }
+}
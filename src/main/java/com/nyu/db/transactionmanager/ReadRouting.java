@@ -0,0 +1,7 @@
+package com.nyu.db.transactionmanager;
+
+public enum ReadRouting {
+    FIXED_ORDER, // Replicas are tried in the order they were configured, so the first replica takes every read
+    ROUND_ROBIN, // Each read starts at the next replica in turn
+    LEAST_OUTSTANDING // Each read starts at the replica with the fewest reads in flight, which steers reads away from slow sites
+}
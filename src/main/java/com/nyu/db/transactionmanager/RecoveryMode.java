@@ -0,0 +1,6 @@
+package com.nyu.db.transactionmanager;
+
+public enum RecoveryMode {
+    AVAILABLE_COPIES, // Replicated copies of a recovered site stay unreadable until a new commit refreshes them
+    CATCH_UP // A recovering site pulls the commits it missed from up-to-date peers and serves reads right away
+}
@@ -0,0 +1,6 @@
+package com.nyu.db.transactionmanager;
+
+public enum ReplicationMode {
+    AVAILABLE_COPIES, // Writes go to every replica that is up, reads to the first replica that can serve them consistently
+    QUORUM // Writes go to a write quorum of replicas, reads take the latest version from a read quorum that overlaps it
+}
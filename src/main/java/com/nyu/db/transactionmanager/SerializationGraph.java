@@ -2,22 +2,30 @@ package com.nyu.db.transactionmanager;
 
 import com.nyu.db.model.*;
 import com.nyu.db.utils.TimeManager;
+import com.nyu.db.utils.TraceLoggers;
 import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import java.util.*;
 
 /**
- * Serialisation graph for implementing Serializable snapshot isolation
+ * Serialisation graph for implementing Serializable snapshot isolation. Public methods are synchronized so that
+ * concurrent commits are validated one at a time.
  */
-public class SerializationGraph {
+public class SerializationGraph implements SsiValidator {
 
-    private static final Logger logger = LoggerFactory.getLogger(SerializationGraph.class);
+    private static final Logger trace = TraceLoggers.get(SerializationGraph.class);
 
-    private Map<Transaction, Set<Transaction>> graph;  // Adjacency list representation of graph
+    // Adjacency list representation of graph, iteration order is the order in which transactions were committed
+    private Map<Transaction, Set<Transaction>> graph;
+    private Map<Transaction, Set<Transaction>> reverseGraph; // Incoming edges of every transaction
+    private Map<Integer, Set<Transaction>> variableReaders; // Transactions in the graph that read each variable
+    private Map<Integer, Set<Transaction>> variableWriters; // Transactions in the graph that wrote each variable
 
     public SerializationGraph() {
-        this.graph = new HashMap<>();
+        this.graph = new LinkedHashMap<>();
+        this.reverseGraph = new HashMap<>();
+        this.variableReaders = new HashMap<>();
+        this.variableWriters = new HashMap<>();
     }
 
     /**
@@ -25,54 +33,116 @@ public class SerializationGraph {
      * @param transaction Transaction
      * @return true if no cycle was detected and transaction was added to serialization graph, false otherwise
      */
-    public boolean addTransactionAndRunChecks(Transaction transaction) {
+    @Override
+    public synchronized boolean addTransactionAndRunChecks(Transaction transaction) {
         this.addTransaction(transaction);
 
-        boolean cycleExists = this.checkCycle();
+        boolean cycleExists = this.checkCycle(transaction);
         if (cycleExists) {
-            logger.info("Detected cycle with 2 consecutive RW edges upon adding T"+transaction.getTransactionId()+" to serialization graph.");
+            trace.info("Detected cycle with 2 consecutive RW edges upon adding T{} to serialization graph.", transaction.getTransactionId());
             this.removeTransaction(transaction);
         }
         return !cycleExists;
     }
 
     /**
-     * Add transaction to serialization graph
+     * Removes committed transactions that can no longer be part of a cycle. A transaction that committed at or before
+     * the low watermark can only receive edges from transactions already in the graph, so once none of the
+     * transactions that committed after the watermark can reach it, no future commit can close a cycle through it.
+     * @param lowWatermark Start timestamp of the oldest active transaction (or current time if none are active)
+     */
+    @Override
+    public synchronized void pruneTransactions(long lowWatermark) {
+        List<Transaction> candidates = new ArrayList<>();
+        for (Transaction transaction: this.graph.keySet()) {
+            if (transaction.getCommitTimestamp() > lowWatermark)
+                break;
+            candidates.add(transaction);
+        }
+        if (candidates.isEmpty())
+            return;
+
+        // Mark candidates reachable from a transaction that committed after the watermark
+        Set<Transaction> reachable = new HashSet<>();
+        Deque<Transaction> stack = new ArrayDeque<>();
+        for (Transaction candidate: candidates) {
+            for (Transaction parent: this.reverseGraph.get(candidate)) {
+                if (parent.getCommitTimestamp() > lowWatermark) {
+                    reachable.add(candidate);
+                    stack.push(candidate);
+                    break;
+                }
+            }
+        }
+        while (!stack.isEmpty()) {
+            for (Transaction child: this.graph.get(stack.pop())) {
+                if (child.getCommitTimestamp() <= lowWatermark && reachable.add(child))
+                    stack.push(child);
+            }
+        }
+
+        for (Transaction candidate: candidates) {
+            if (!reachable.contains(candidate))
+                this.removeTransaction(candidate);
+        }
+    }
+
+    /**
+     * Get number of transactions currently held in the serialization graph
+     * @return Number of transactions
+     */
+    @Override
+    public synchronized int size() {
+        return this.graph.size();
+    }
+
+    /**
+     * Add transaction to serialization graph. Only transactions that touched the same variables as t1 are compared.
      * @param t1 Transaction
      */
     private void addTransaction(Transaction t1) {
         this.graph.put(t1, new HashSet<>());
+        this.reverseGraph.put(t1, new HashSet<>());
+
+        int[] readVariables = t1.getReadSet();
+        int[] writeVariables = t1.getWriteSet();
 
-        for (Transaction t2: this.graph.keySet()) {
-            if (t1.equals(t2))
-                continue;
-            for (SymbolOperation o2: t2.getOperations()) {
-                for (SymbolOperation o1: t1.getOperations()) {
-                    if (o1.getVariableId()==o2.getVariableId()) {
-                        if (o1 instanceof WriteOperation && o2 instanceof WriteOperation) {
-                            // WW edge from t2 to t1
-                            this.graph.get(t2).add(t1);
-                        } else if (o1 instanceof WriteOperation && o2 instanceof ReadOperation) {
-                            if (t2.getStartTimestamp() <= TimeManager.getTime()) {
-                                // RW edge from t2 to t1
-                                this.graph.get(t2).add(t1);
-                            } else {
-                                // WR edge from t1 to t2
-                                this.graph.get(t1).add(t2);
-                            }
-                        } else if (o1 instanceof ReadOperation && o2 instanceof WriteOperation) {
-                            if (t2.getCommitTimestamp() <= t1.getStartTimestamp()) {
-                                // WR edge from t2 to t1
-                                this.graph.get(t2).add(t1);
-                            } else {
-                                // RW edge from t1 to t2
-                                this.graph.get(t1).add(t2);
-                            }
-                        }
-                    }
+        for (int variableId: writeVariables) {
+            for (Transaction t2: this.variableWriters.getOrDefault(variableId, Collections.emptySet())) {
+                // WW edge from t2 to t1
+                this.addEdge(t2, t1);
+            }
+            for (Transaction t2: this.variableReaders.getOrDefault(variableId, Collections.emptySet())) {
+                if (t2.getStartTimestamp() <= TimeManager.getTime()) {
+                    // RW edge from t2 to t1
+                    this.addEdge(t2, t1);
+                } else {
+                    // WR edge from t1 to t2
+                    this.addEdge(t1, t2);
                 }
             }
         }
+        for (int variableId: readVariables) {
+            for (Transaction t2: this.variableWriters.getOrDefault(variableId, Collections.emptySet())) {
+                if (t2.getCommitTimestamp() <= t1.getStartTimestamp()) {
+                    // WR edge from t2 to t1
+                    this.addEdge(t2, t1);
+                } else {
+                    // RW edge from t1 to t2
+                    this.addEdge(t1, t2);
+                }
+            }
+        }
+
+        for (int variableId: readVariables)
+            this.variableReaders.computeIfAbsent(variableId, k -> new HashSet<>()).add(t1);
+        for (int variableId: writeVariables)
+            this.variableWriters.computeIfAbsent(variableId, k -> new HashSet<>()).add(t1);
+    }
+
+    private void addEdge(Transaction from, Transaction to) {
+        this.graph.get(from).add(to);
+        this.reverseGraph.get(to).add(from);
     }
 
     /**
@@ -80,41 +150,44 @@ public class SerializationGraph {
      * @param transaction Transaction
      */
     private void removeTransaction(Transaction transaction) {
-        this.graph.forEach((t, m) -> m.remove(transaction));
-        this.graph.remove(transaction);
+        for (Transaction parent: this.reverseGraph.remove(transaction))
+            this.graph.get(parent).remove(transaction);
+        for (Transaction child: this.graph.remove(transaction))
+            this.reverseGraph.get(child).remove(transaction);
+
+        removeFromIndex(this.variableReaders, transaction.getReadSet(), transaction);
+        removeFromIndex(this.variableWriters, transaction.getWriteSet(), transaction);
+    }
+
+    private static void removeFromIndex(Map<Integer, Set<Transaction>> index, int[] variableIds, Transaction transaction) {
+        for (int variableId: variableIds) {
+            Set<Transaction> transactions = index.get(variableId);
+            if (transactions != null) {
+                transactions.remove(transaction);
+                if (transactions.isEmpty())
+                    index.remove(variableId);
+            }
+        }
     }
 
     /**
+     * The graph is acyclic before a transaction is added, so any new cycle has to pass through the new transaction.
      * Sufficient to check any cycle. Since, if cycle exists it will contain two RW edges in a row.
+     * @param transaction Newly added transaction
      * @return true if a cycle is found
      */
-    private boolean checkCycle() {
+    private boolean checkCycle(Transaction transaction) {
         Set<Transaction> visited = new HashSet<>();
-        Set<Transaction> recStack = new HashSet<>();
-        for (Transaction transaction: this.graph.keySet())
-            if (this.dfs(transaction, recStack, visited))
-                return true;
-
-        return false;
-    }
-
-    /**
-     * Depth-First-Search to detect cycle in the graph
-     * @return true if cycle detected, false otherwise
-     */
-    private boolean dfs(Transaction transaction, Set<Transaction> recStack, Set<Transaction> visited) {
-        if (recStack.contains(transaction))
-            return true;
-        if (visited.contains(transaction))
-            return false;
-
-        visited.add(transaction);
-        recStack.add(transaction);
-        for (Transaction child: this.graph.get(transaction))
-            if (this.dfs(child, recStack, visited))
-                return true;
-
-        recStack.remove(transaction);
+        Deque<Transaction> stack = new ArrayDeque<>();
+        stack.push(transaction);
+        while (!stack.isEmpty()) {
+            for (Transaction child: this.graph.get(stack.pop())) {
+                if (child.equals(transaction))
+                    return true;
+                if (visited.add(child))
+                    stack.push(child);
+            }
+        }
         return false;
     }
-}
\ No newline at end of file
+}
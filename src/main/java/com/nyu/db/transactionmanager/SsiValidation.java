@@ -0,0 +1,20 @@
+package com.nyu.db.transactionmanager;
+
+import com.nyu.db.transactionmanager.impl.RwConflictValidator;
+
+public enum SsiValidation {
+    SERIALIZATION_GRAPH, // Exact, aborts only transactions that close a cycle with two consecutive RW edges
+    RW_CONFLICT_FLAGS; // Conservative, aborts any transaction that would make some transaction a pivot of two RW edges
+
+    /**
+     * Create a validator of this kind
+     */
+    public SsiValidator create() {
+        switch (this) {
+            case RW_CONFLICT_FLAGS:
+                return new RwConflictValidator();
+            default:
+                return new SerializationGraph();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.nyu.db.transactionmanager;
+
+import com.nyu.db.model.Transaction;
+
+/**
+ * Commit-time check that keeps snapshot isolation serializable. Implementations are thread-safe, concurrent commits
+ * are validated one at a time.
+ */
+public interface SsiValidator {
+
+    /**
+     * Validate a committing transaction against the transactions validated before it and record it if it passes
+     * @param transaction Transaction with its commit timestamp set
+     * @return true if the transaction can commit, false if it has to abort
+     */
+    public boolean addTransactionAndRunChecks(Transaction transaction);
+
+    /**
+     * Check a read of an active transaction against the transactions validated so far
+     * @param transaction Active transaction
+     * @param variableId Variable read
+     * @return false if the transaction is bound to be refused at commit once it read the variable
+     */
+    public default boolean canRead(Transaction transaction, int variableId) {
+        return true;
+    }
+
+    /**
+     * Forget committed transactions that no active transaction can conflict with any more
+     * @param lowWatermark Start timestamp of the oldest active transaction (or current time if none are active)
+     */
+    public void pruneTransactions(long lowWatermark);
+
+    /**
+     * Get number of committed transactions currently held
+     * @return Number of transactions
+     */
+    public int size();
+}
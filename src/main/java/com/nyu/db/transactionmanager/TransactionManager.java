@@ -1,13 +1,15 @@
 package com.nyu.db.transactionmanager;
 
 import com.nyu.db.datamanager.DataManager;
+import com.nyu.db.metrics.MetricsRegistry;
 import com.nyu.db.model.CommitOperation;
 import com.nyu.db.model.ReadOperation;
+import com.nyu.db.model.SymbolOperation;
 import com.nyu.db.model.Transaction;
 import com.nyu.db.model.WriteOperation;
 
 import java.util.List;
-import java.util.Optional;
+import java.util.OptionalInt;
 
 /**
  * Transaction Manager, routes operations to the appropriate data manager, maintains SSI graph
@@ -20,6 +22,14 @@ public interface TransactionManager {
      */
     public Transaction createTransaction(long transactionId);
 
+    /**
+     * Create a new transaction that only reads. It reads the snapshot at its start, and commits without validation
+     * when no read-write transaction was active at its start.
+     * @param transactionId ID of the new transaction
+     * @return Transaction object
+     */
+    public Transaction createReadOnlyTransaction(long transactionId);
+
     /**
      * Configure the transaction manager to manage the provided data managers
      * @param dataManagers List of data managers
@@ -29,9 +39,9 @@ public interface TransactionManager {
     /**
      * Read a variable's value
      * @param op Read operation with details of transaction and which variable to read
-     * @return Optional value of variable, Optional.empty() if site cannot serve the read
+     * @return Optional value of variable, OptionalInt.empty() if site cannot serve the read
      */
-    public Optional<Integer> read(ReadOperation op);
+    public OptionalInt read(ReadOperation op);
 
     /**
      * Write to a variable
@@ -40,6 +50,16 @@ public interface TransactionManager {
      */
     public boolean write(WriteOperation op);
 
+    /**
+     * Submit reads and writes of one or more transactions at once, so that each site is called once for its share
+     * of the batch instead of once per operation. Operations that can't be served right away wait, as with read and
+     * write. An operation never overtakes an earlier operation of the batch.
+     * @param ops Read and write operations, already added to their transactions
+     * @return One result per operation, in submission order: the value read, or the value written if some site
+     * applied the write. OptionalInt.empty() if the operation was put to wait or its transaction is not active.
+     */
+    public List<OptionalInt> submitBatch(List<? extends SymbolOperation> ops);
+
     /**
      * Method to manually fail a site. This is only for simulation purposes
      */
@@ -62,10 +82,21 @@ public interface TransactionManager {
      */
     public void printCommittedState();
 
+    /**
+     * Get the registry holding the metrics of the transaction manager and its sites
+     * @return Metrics registry
+     */
+    public MetricsRegistry getMetricsRegistry();
+
     /**
      * Get transaction object from transaction ID
      * @param transactionId ID of transaction to fetch
      * @return Transaction object
      */
     public Transaction getTransaction(long transactionId);
+
+    /**
+     * Stop the threads of the transaction manager. Data managers are left open.
+     */
+    public void close();
 }
@@ -0,0 +1,96 @@
+package com.nyu.db.transactionmanager;
+
+import com.nyu.db.metrics.MetricsRegistry;
+import com.nyu.db.metrics.impl.MetricsRegistryImpl;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Tunables of the transaction manager. Defaults reproduce the behaviour expected by the simulation.
+ */
+@Getter
+@Builder
+public class TransactionManagerConfig {
+
+    /**
+     * When false, time only moves when the driver calls TimeManager.incrementTime() (one tick per simulation step).
+     * When true, the transaction manager draws a fresh commit timestamp from the TimeManager on every commit so that
+     * clients can run transactions from many threads without an external clock driver.
+     */
+    @Builder.Default
+    private final boolean concurrent = false;
+
+    /**
+     * Number of lock stripes guarding per-variable state, rounded up to a power of two
+     */
+    @Builder.Default
+    private final int lockStripes = 64;
+
+    /**
+     * Number of threads used to send the prepare and commit phases of a commit to the sites written to. Sites are
+     * called one after another on the committing thread when this is 1.
+     */
+    @Builder.Default
+    private final int commitParallelism = 1;
+
+    /**
+     * How a failed site rejoins. In CATCH_UP mode, writes of active transactions that skipped a down site are also
+     * applied to it when it recovers, so their commit reaches the site.
+     */
+    @Builder.Default
+    private final RecoveryMode recoveryMode = RecoveryMode.AVAILABLE_COPIES;
+
+    /**
+     * How replicated variables are read and written. Non-replicated variables behave the same in both modes.
+     */
+    @Builder.Default
+    private final ReplicationMode replicationMode = ReplicationMode.AVAILABLE_COPIES;
+
+    /**
+     * Number of replicas a write has to reach in QUORUM mode, 0 for a majority. Raised to a majority of the
+     * variable's replicas, so that concurrent writers always meet on some site for the first committer wins check,
+     * and capped at the number of replicas. Reads then ask N - W + 1 replicas, so every read overlaps every write.
+     */
+    @Builder.Default
+    private final int writeQuorum = 0;
+
+    /**
+     * Which replica of a replicated variable a read goes to first in AVAILABLE_COPIES mode. The other replicas are
+     * tried in turn if it can't serve the read.
+     */
+    @Builder.Default
+    private final ReadRouting readRouting = ReadRouting.FIXED_ORDER;
+
+    /**
+     * How long a read of a replicated variable waits for its first replica before the same read is also sent to a
+     * second replica, 0 to never hedge. The first of the two to serve the read wins.
+     */
+    @Builder.Default
+    private final long hedgeAfterMicros = 0;
+
+    /**
+     * How commits are checked for serializability. RW_CONFLICT_FLAGS validates in time proportional to the
+     * conflicting transactions instead of walking the graph, at the cost of some unnecessary aborts.
+     */
+    @Builder.Default
+    private final SsiValidation ssiValidation = SsiValidation.SERIALIZATION_GRAPH;
+
+    /**
+     * Abort a transaction at the operation that dooms it instead of at commit: a write to a variable committed to
+     * since the transaction began, or a read the SSI validator already knows it will refuse. Commit still runs
+     * every check.
+     */
+    @Builder.Default
+    private final boolean eagerAbort = false;
+
+    /**
+     * Registry the transaction manager and its sites publish their metrics to. Wrap it with JmxMetricsExporter to
+     * expose it over JMX.
+     */
+    @Builder.Default
+    private final MetricsRegistry metricsRegistry = new MetricsRegistryImpl();
+
+    public static TransactionManagerConfig defaults() {
+        return TransactionManagerConfig.builder().build();
+    }
+}
@@ -0,0 +1,54 @@
+package com.nyu.db.transactionmanager.impl;
+
+import com.nyu.db.datamanager.DataManager;
+import com.nyu.db.utils.IntIntMap;
+
+import java.util.*;
+
+/**
+ * Replicas of every variable. Variables share their replica list with every other variable placed on the same sites,
+ * so the map costs a primitive entry per variable plus one list per distinct set of sites, which stays small under
+ * hash or range placement even with millions of variables. Populated while data managers are configured, before
+ * operations are served, and only read afterwards.
+ */
+class ReplicaMap {
+
+    private static final int NONE = -1;
+
+    private final IntIntMap replicaSetOf; // Variable id to index in replicaSets
+    private final List<List<DataManager>> replicaSets;
+    private final Map<List<Integer>, Integer> replicaSetIndex; // Site ids of each replica set, in order, to its index
+
+    ReplicaMap() {
+        this.replicaSetOf = new IntIntMap();
+        this.replicaSets = new ArrayList<>();
+        this.replicaSetIndex = new HashMap<>();
+    }
+
+    /**
+     * Add a replica of a variable, after the replicas it already has
+     */
+    synchronized void add(int variableId, DataManager dm) {
+        int current = this.replicaSetOf.get(variableId, NONE);
+        List<DataManager> replicas = new ArrayList<>(current == NONE ? Collections.emptyList() : this.replicaSets.get(current));
+        replicas.add(dm);
+        List<Integer> siteIds = new ArrayList<>(replicas.size());
+        for (DataManager replica: replicas)
+            siteIds.add(replica.getSiteId());
+        Integer index = this.replicaSetIndex.get(siteIds);
+        if (index == null) {
+            index = this.replicaSets.size();
+            this.replicaSets.add(Collections.unmodifiableList(replicas));
+            this.replicaSetIndex.put(siteIds, index);
+        }
+        this.replicaSetOf.put(variableId, index);
+    }
+
+    /**
+     * @return Replicas of the variable in the order they were added, empty if the variable is unknown
+     */
+    List<DataManager> get(int variableId) {
+        int index = this.replicaSetOf.get(variableId, NONE);
+        return index == NONE ? Collections.emptyList() : this.replicaSets.get(index);
+    }
+}
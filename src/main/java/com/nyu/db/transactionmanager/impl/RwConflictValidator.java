@@ -0,0 +1,139 @@
+package com.nyu.db.transactionmanager.impl;
+
+import com.nyu.db.model.Transaction;
+import com.nyu.db.transactionmanager.SsiValidator;
+import com.nyu.db.utils.TraceLoggers;
+import org.slf4j.Logger;
+
+import java.util.*;
+
+/**
+ * SSI validation by dangerous structures instead of cycles. Every cycle in the serialization graph of snapshot
+ * isolation contains a pivot, a transaction with an RW edge in from one concurrent transaction and an RW edge out to
+ * another. So each committed transaction only keeps two flags, whether it has an RW edge in and whether it has one
+ * out, and a commit is refused if it would make any transaction a pivot. Validation looks up the readers and writers
+ * of the committing transaction's variables and touches only the concurrent ones it conflicts with, no graph is
+ * walked. Some commits the graph would let through are refused, since a pivot doesn't always close a cycle.
+ */
+public class RwConflictValidator implements SsiValidator {
+
+    private static final Logger trace = TraceLoggers.get(RwConflictValidator.class);
+
+    private static class Entry {
+        private final Transaction transaction;
+        private boolean inConflict; // A concurrent transaction read a version this one overwrote
+        private boolean outConflict; // This one read a version a concurrent transaction overwrote
+
+        private Entry(Transaction transaction) {
+            this.transaction = transaction;
+        }
+    }
+
+    private final Map<Transaction, Entry> committed; // Iteration order is the order in which transactions were validated
+    private final Map<Integer, Set<Entry>> variableReaders; // Committed transactions that read each variable
+    private final Map<Integer, Set<Entry>> variableWriters; // Committed transactions that wrote each variable
+
+    public RwConflictValidator() {
+        this.committed = new LinkedHashMap<>();
+        this.variableReaders = new HashMap<>();
+        this.variableWriters = new HashMap<>();
+    }
+
+    @Override
+    public synchronized boolean addTransactionAndRunChecks(Transaction transaction) {
+        long startTimestamp = transaction.getStartTimestamp();
+        int[] readVariables = transaction.getReadSet();
+        int[] writeVariables = transaction.getWriteSet();
+
+        // RW edges out, to writers that committed after this transaction's snapshot was taken
+        List<Entry> overwriters = new ArrayList<>();
+        for (int variableId: readVariables) {
+            for (Entry writer: this.variableWriters.getOrDefault(variableId, Collections.emptySet())) {
+                if (writer.transaction.getCommitTimestamp() > startTimestamp) {
+                    if (writer.outConflict)
+                        return this.refuse(transaction, writer.transaction);
+                    overwriters.add(writer);
+                }
+            }
+        }
+        // RW edges in, from readers that were still running when this transaction began, so they read older versions
+        List<Entry> staleReaders = new ArrayList<>();
+        for (int variableId: writeVariables) {
+            for (Entry reader: this.variableReaders.getOrDefault(variableId, Collections.emptySet())) {
+                if (reader.transaction.getCommitTimestamp() > startTimestamp) {
+                    if (reader.inConflict)
+                        return this.refuse(transaction, reader.transaction);
+                    staleReaders.add(reader);
+                }
+            }
+        }
+        if (!overwriters.isEmpty() && !staleReaders.isEmpty())
+            return this.refuse(transaction, transaction);
+
+        Entry entry = new Entry(transaction);
+        entry.outConflict = !overwriters.isEmpty();
+        entry.inConflict = !staleReaders.isEmpty();
+        for (Entry writer: overwriters)
+            writer.inConflict = true;
+        for (Entry reader: staleReaders)
+            reader.outConflict = true;
+        this.committed.put(transaction, entry);
+        for (int variableId: readVariables)
+            this.variableReaders.computeIfAbsent(variableId, k -> new HashSet<>()).add(entry);
+        for (int variableId: writeVariables)
+            this.variableWriters.computeIfAbsent(variableId, k -> new HashSet<>()).add(entry);
+        return true;
+    }
+
+    /**
+     * Reading a variable gives an RW edge out to every concurrent transaction that committed a write to it. If one of
+     * those already has an RW edge out, it would become a pivot, so the reader is refused at commit.
+     */
+    @Override
+    public synchronized boolean canRead(Transaction transaction, int variableId) {
+        for (Entry writer: this.variableWriters.getOrDefault(variableId, Collections.emptySet())) {
+            if (writer.outConflict && writer.transaction.getCommitTimestamp() > transaction.getStartTimestamp())
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * A transaction that committed at or before the low watermark is not concurrent with any active transaction, so
+     * no later commit can add an RW edge to it
+     */
+    @Override
+    public synchronized void pruneTransactions(long lowWatermark) {
+        Iterator<Entry> it = this.committed.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.transaction.getCommitTimestamp() > lowWatermark)
+                break;
+            it.remove();
+            removeFromIndex(this.variableReaders, entry.transaction.getReadSet(), entry);
+            removeFromIndex(this.variableWriters, entry.transaction.getWriteSet(), entry);
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return this.committed.size();
+    }
+
+    private boolean refuse(Transaction transaction, Transaction pivot) {
+        trace.info("Detected T{} as pivot of two RW edges upon validating T{}.", pivot.getTransactionId(),
+                transaction.getTransactionId());
+        return false;
+    }
+
+    private static void removeFromIndex(Map<Integer, Set<Entry>> index, int[] variableIds, Entry entry) {
+        for (int variableId: variableIds) {
+            Set<Entry> entries = index.get(variableId);
+            if (entries != null) {
+                entries.remove(entry);
+                if (entries.isEmpty())
+                    index.remove(variableId);
+            }
+        }
+    }
+}
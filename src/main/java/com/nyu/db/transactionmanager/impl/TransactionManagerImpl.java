@@ -1,70 +1,187 @@
 package com.nyu.db.transactionmanager.impl;
 
 import com.nyu.db.datamanager.DataManager;
+import com.nyu.db.datamanager.StorageException;
+import com.nyu.db.metrics.Counter;
+import com.nyu.db.metrics.MetricsRegistry;
 import com.nyu.db.model.*;
-import com.nyu.db.transactionmanager.SerializationGraph;
+import com.nyu.db.transactionmanager.RecoveryMode;
+import com.nyu.db.transactionmanager.ReadRouting;
+import com.nyu.db.transactionmanager.ReplicationMode;
+import com.nyu.db.transactionmanager.SsiValidator;
 import com.nyu.db.transactionmanager.TransactionManager;
+import com.nyu.db.transactionmanager.TransactionManagerConfig;
+import com.nyu.db.utils.LatencyHistogram;
+import com.nyu.db.utils.StripedLock;
 import com.nyu.db.utils.TimeManager;
+import com.nyu.db.utils.TraceLoggers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
 
+/**
+ * Thread-safe transaction manager. Lock order is variable stripes, then sites (ascending site id), then the
+ * serialization graph and the begin lock, so commits that touch disjoint variables only meet briefly in the graph.
+ */
 public class TransactionManagerImpl implements TransactionManager {
 
     private static final Logger logger = LoggerFactory.getLogger(TransactionManagerImpl.class);
+    private static final Logger trace = TraceLoggers.get(TransactionManagerImpl.class);
     private Map<Integer, DataManager> siteToDataManagerMap;
-    private Map<Integer, List<DataManager>> variableToDataManagerMap;
+    private ReplicaMap variableToDataManagerMap;
     private Map<Long, Transaction> transactionStore; // transactionId to transaction object
     private Map<Integer, Boolean> siteActiveStatus;
-    private Map<Integer, Queue<Operation>> waitingOperations; // Waiting operations on each site
+    private WaiterRegistry waiters; // Operations waiting for down sites
+    private Map<Integer, Queue<WriteOperation>> missedWrites; // Executed writes that skipped each down site (CATCH_UP mode)
+    private Set<Integer> staleSites; // Sites that recovered without catching up, their replicated copies may lag
 
     // Store all active transactions that have had write on each site
     private Map<Integer, Set<Long>> siteToActiveWriteTransactions;
-    private Set<Long> activeTransactions;
-    private SerializationGraph serializationGraph;
+    private Set<Transaction> activeTransactions; // Ordered by start time, so the oldest active transaction comes first
+    private SsiValidator ssiValidator; // Serialization graph unless configured otherwise
+    private volatile long lowWatermark; // Start time of the oldest active transaction, as last published to the data managers
 
-    private void init() {
-        this.siteToDataManagerMap = new HashMap<>();
-        this.variableToDataManagerMap = new HashMap<>();
-        this.siteActiveStatus = new HashMap<>();
-        this.waitingOperations = new HashMap<>();
-        this.siteToActiveWriteTransactions = new HashMap<>();
-        this.transactionStore = new HashMap<>();
-        this.activeTransactions = new HashSet<>();
-        this.serializationGraph = new SerializationGraph();
+    private TransactionManagerConfig config;
+    private StripedLock variableLocks; // Guards committed versions of each variable across all its replicas
+    private Map<Integer, ReadWriteLock> siteLocks; // Operations hold the read lock, fail and recover the write lock
+    private final Object beginLock = new Object(); // Orders transaction begin against low watermark computation
+    private AtomicInteger activeReadWriteTransactions; // Active transactions not declared read-only
+    private ExecutorService commitExecutor; // Fans commit phases out to sites in parallel, null to call sites in turn
+    private ExecutorService readExecutor; // Runs hedged reads, null unless hedging is configured
+    private Map<Integer, AtomicInteger> outstandingReads; // Reads in flight on each site
+    private AtomicInteger readCursor; // Replica the next ROUND_ROBIN read starts at, modulo the number of replicas
+    private MetricsRegistry metricsRegistry;
+    private Counter committedTransactions;
+    private Counter[] abortedTransactions; // Indexed by AbortReason ordinal
+    private LatencyHistogram commitLatency; // Nanoseconds taken by each commit, whatever its outcome
+    private LatencyHistogram graphValidationLatency; // Nanoseconds taken to add a transaction to the graph and check for cycles
+    private Counter hedgedReads;
+    private Counter readOnlyCommits; // Commits that skipped validation since the transaction read a safe snapshot
+    private Map<Integer, Long> latestCommitTimestamps; // Latest commit timestamp of each variable, null unless aborting eagerly
+    private Counter earlyAborts;
+
+    private void init(TransactionManagerConfig config) {
+        this.config = config;
+        this.siteToDataManagerMap = new ConcurrentSkipListMap<>();
+        this.variableToDataManagerMap = new ReplicaMap();
+        this.siteActiveStatus = new ConcurrentHashMap<>();
+        this.waiters = new WaiterRegistry();
+        this.missedWrites = new ConcurrentHashMap<>();
+        this.staleSites = ConcurrentHashMap.newKeySet();
+        this.siteToActiveWriteTransactions = new ConcurrentSkipListMap<>();
+        this.transactionStore = new ConcurrentHashMap<>();
+        this.activeTransactions = new ConcurrentSkipListSet<>(Comparator.comparingLong(Transaction::getStartTimestamp)
+                .thenComparingLong(Transaction::getTransactionId));
+        this.ssiValidator = config.getSsiValidation().create();
+        this.activeReadWriteTransactions = new AtomicInteger();
+        this.lowWatermark = 0;
+        this.variableLocks = new StripedLock(config.getLockStripes());
+        this.siteLocks = new ConcurrentHashMap<>();
+        this.outstandingReads = new ConcurrentHashMap<>();
+        this.readCursor = new AtomicInteger();
+        this.metricsRegistry = config.getMetricsRegistry();
+        this.committedTransactions = this.metricsRegistry.counter("transactions.committed");
+        this.abortedTransactions = new Counter[AbortReason.values().length];
+        for (AbortReason abortReason: AbortReason.values())
+            this.abortedTransactions[abortReason.ordinal()] = this.metricsRegistry.counter("transactions.aborted."+abortReason);
+        this.commitLatency = this.metricsRegistry.histogram("commit.latencyNanos");
+        this.graphValidationLatency = this.metricsRegistry.histogram("serializationGraph.validationNanos");
+        this.hedgedReads = this.metricsRegistry.counter("reads.hedged");
+        this.readOnlyCommits = this.metricsRegistry.counter("transactions.committed.readOnly");
+        this.earlyAborts = this.metricsRegistry.counter("transactions.abortedEarly");
+        if (config.isEagerAbort())
+            this.latestCommitTimestamps = new ConcurrentHashMap<>();
+        this.metricsRegistry.gauge("serializationGraph.size", this.ssiValidator::size);
+        this.metricsRegistry.gauge("transactions.active", this.activeTransactions::size);
+        if (config.getCommitParallelism() > 1) {
+            this.commitExecutor = Executors.newFixedThreadPool(config.getCommitParallelism(), runnable -> {
+                Thread thread = new Thread(runnable, "commit-fanout");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        if (config.getHedgeAfterMicros() > 0) {
+            this.readExecutor = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "hedged-read");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
     }
 
     public TransactionManagerImpl() {
-        init();
+        init(TransactionManagerConfig.defaults());
     }
 
     public TransactionManagerImpl(List<DataManager> dataManagers) {
-        init();
+        this(dataManagers, TransactionManagerConfig.defaults());
+    }
+
+    public TransactionManagerImpl(List<DataManager> dataManagers, TransactionManagerConfig config) {
+        init(config);
         this.configureDataManagers(dataManagers);
     }
 
     @Override
     public Transaction createTransaction(long transactionId) {
-        Transaction t = new Transaction(transactionId);
-        this.transactionStore.put(transactionId, t);
-        this.activeTransactions.add(transactionId);
-        return t;
+        return this.createTransaction(transactionId, false);
+    }
+
+    @Override
+    public Transaction createReadOnlyTransaction(long transactionId) {
+        return this.createTransaction(transactionId, true);
+    }
+
+    private Transaction createTransaction(long transactionId, boolean readOnly) {
+        synchronized (this.beginLock) {
+            Transaction t = new Transaction(transactionId);
+            t.setReadOnly(readOnly);
+            // Every other transaction either committed before this one started or starts after it, so none that
+            // commits later can have a path back to a transaction this one read from
+            t.setSafeSnapshot(this.activeReadWriteTransactions.get() == 0);
+            if (!readOnly)
+                this.activeReadWriteTransactions.incrementAndGet();
+            this.transactionStore.put(transactionId, t);
+            this.activeTransactions.add(t);
+            return t;
+        }
     }
 
     @Override
     public void configureDataManagers(List<DataManager> dataManagers) {
         for (DataManager dm: dataManagers) {
             this.siteToDataManagerMap.put(dm.getSiteId(), dm);
-            this.siteToActiveWriteTransactions.put(dm.getSiteId(), new HashSet<>());
-            for (Integer variableId: dm.getManagedVariableIds()) {
-                if (!this.variableToDataManagerMap.containsKey(variableId)) {
-                    this.variableToDataManagerMap.put(variableId, new ArrayList<>());
-                }
-                this.variableToDataManagerMap.get(variableId).add(dm);
+            this.siteToActiveWriteTransactions.put(dm.getSiteId(), ConcurrentHashMap.newKeySet());
+            for (int variableId: dm.getManagedVariableIds()) {
+                this.variableToDataManagerMap.add(variableId, dm);
             }
             this.siteActiveStatus.put(dm.getSiteId(), true);
-            this.waitingOperations.put(dm.getSiteId(), new LinkedList<>());
+            Queue<WriteOperation> missed = new ConcurrentLinkedQueue<>();
+            this.missedWrites.put(dm.getSiteId(), missed);
+            this.siteLocks.put(dm.getSiteId(), new ReentrantReadWriteLock());
+            AtomicInteger outstanding = new AtomicInteger();
+            this.outstandingReads.put(dm.getSiteId(), outstanding);
+            int siteId = dm.getSiteId();
+            this.metricsRegistry.gauge("site."+siteId+".waitingOperations", () -> this.waiters.size(siteId));
+            this.metricsRegistry.gauge("site."+dm.getSiteId()+".outstandingReads", outstanding::get);
+            this.metricsRegistry.gauge("site."+dm.getSiteId()+".missedWrites", missed::size);
+            dm.registerMetrics(this.metricsRegistry);
         }
     }
 
@@ -75,65 +192,313 @@ public class TransactionManagerImpl implements TransactionManager {
      * @return Integer value read from database, None if operation put to wait
      */
     @Override
-    public Optional<Integer> read(ReadOperation op) {
-        if (!this.checkTransactionActive(op)) {
-            return Optional.empty();
+    public OptionalInt read(ReadOperation op) {
+        if (!this.checkTransactionActive(op) || this.abortedEarly(op)) {
+            return OptionalInt.empty();
         }
         List<DataManager> dataManagers = this.variableToDataManagerMap.get(op.getVariableId());
         if (dataManagers.isEmpty()) {
             throw new RuntimeException("No data node available to serve request: "+op);
         }
 
-        Optional<Integer> val = Optional.empty();
+        // Committers hold the write lock of the stripe until their versions are installed on every replica
+        Lock variableLock = this.variableLocks.get(op.getVariableId()).readLock();
+        variableLock.lock();
+        try {
+            if (this.isQuorumReplicated(dataManagers))
+                return this.readFromQuorum(op, dataManagers);
+            return this.readFromReplicas(op, dataManagers);
+        } finally {
+            variableLock.unlock();
+        }
+    }
+
+    private boolean isQuorumReplicated(List<DataManager> dataManagers) {
+        return this.config.getReplicationMode() == ReplicationMode.QUORUM && dataManagers.size() > 1;
+    }
+
+    /**
+     * Number of replicas a write has to reach in QUORUM mode, at least a majority so that write quorums overlap
+     * @param replicas Number of replicas of the variable
+     */
+    private int writeQuorumSize(int replicas) {
+        return Math.min(replicas, Math.max(replicas / 2 + 1, this.config.getWriteQuorum()));
+    }
+
+    /**
+     * Read the versions visible to the transaction from a read quorum and return the one committed last. Every
+     * committed version reached a write quorum, which overlaps any read quorum, so the latest version visible at the
+     * snapshot is always among those read, even if some replicas missed commits while they were down.
+     * Must be called holding the read lock of the variable's stripe.
+     */
+    private OptionalInt readFromQuorum(ReadOperation op, List<DataManager> dataManagers) {
+        int readQuorum = dataManagers.size() - this.writeQuorumSize(dataManagers.size()) + 1;
+        VariableSnapshot latest = null;
+        int responses = 0;
+        List<DataManager> downReplicas = new ArrayList<>();
+        for (DataManager dm: dataManagers) {
+            if (responses == readQuorum)
+                break;
+            Lock siteLock = this.siteLocks.get(dm.getSiteId()).readLock();
+            siteLock.lock();
+            try {
+                if (!this.siteActiveStatus.get(dm.getSiteId())) {
+                    downReplicas.add(dm);
+                    continue;
+                }
+                Optional<VariableSnapshot> version = dm.readVersion(op);
+                if (version.isPresent()) {
+                    responses++;
+                    if (latest == null || version.get().getCommitTimestamp() > latest.getCommitTimestamp())
+                        latest = version.get();
+                }
+            } finally {
+                siteLock.unlock();
+            }
+        }
+        if (responses == readQuorum) {
+            op.setValue(latest.getValue());
+            op.setExecutedTimestamp(TimeManager.getTime());
+            trace.info("x{}: {} (T{}, quorum of {} sites)", op.getVariableId(), latest.getValue(),
+                    op.getTransaction().getTransactionId(), readQuorum);
+            return OptionalInt.of(latest.getValue());
+        }
+        if (downReplicas.isEmpty()) {
+            trace.info("All sites are up but no read quorum can serve {}", op);
+            abortTransaction(op.getTransaction().getTransactionId(), AbortReason.UNSERVED_OPERATION);
+            return OptionalInt.empty();
+        }
+
+        boolean recovered = false;
+        for (DataManager dm: downReplicas) {
+            Lock siteLock = this.siteLocks.get(dm.getSiteId()).readLock();
+            siteLock.lock();
+            try {
+                if (this.siteActiveStatus.get(dm.getSiteId()))
+                    recovered = true;
+                else
+                    this.waiters.park(op, dm.getSiteId());
+            } finally {
+                siteLock.unlock();
+            }
+        }
+        if (recovered) {
+            // A replica came back after it was skipped above and its waiting operations are already drained
+            return this.readFromQuorum(op, dataManagers);
+        }
+        trace.info("{} put on wait", op);
+        return OptionalInt.empty();
+    }
+
+    private OptionalInt readFromReplicas(ReadOperation op, List<DataManager> dataManagers) {
+        OptionalInt val = OptionalInt.empty();
         if (dataManagers.size()>1) {
             // Replicated Variable
-            boolean allSitesUp = true;
-            for (DataManager dm: dataManagers) {
-                if (this.siteActiveStatus.get(dm.getSiteId())) {
-                    val = dm.read(op);
-                    if (val.isPresent()) {
-                        op.setExecutedTimestamp(TimeManager.getTime());
-                        return val;
-                    }
-                } else {
-                    allSitesUp = false;
+            List<DataManager> routed = this.routeRead(dataManagers);
+            if (this.readExecutor != null) {
+                val = this.hedgedRead(op, routed);
+                if (val.isPresent()) {
+                    op.setValue(val.getAsInt());
+                    op.setExecutedTimestamp(TimeManager.getTime());
+                    return val;
                 }
             }
-            if (!val.isPresent()) {
-                if (allSitesUp) {
-                    logger.info("All sites are up but none can serve the read "+op);
-                    abortTransaction(op.getTransaction().getTransactionId());
-                    return Optional.empty();
+            List<DataManager> downReplicas = new ArrayList<>();
+            for (DataManager dm: routed) {
+                Lock siteLock = this.siteLocks.get(dm.getSiteId()).readLock();
+                siteLock.lock();
+                try {
+                    if (this.siteActiveStatus.get(dm.getSiteId())) {
+                        val = this.readOnReplica(op, dm);
+                        if (val.isPresent()) {
+                            op.setValue(val.getAsInt());
+                            op.setExecutedTimestamp(TimeManager.getTime());
+                            return val;
+                        }
+                    } else {
+                        downReplicas.add(dm);
+                    }
+                } finally {
+                    siteLock.unlock();
                 }
-                for (DataManager dm : dataManagers) {
+            }
+            if (downReplicas.isEmpty()) {
+                trace.info("All sites are up but none can serve the read {}", op);
+                abortTransaction(op.getTransaction().getTransactionId(), AbortReason.UNSERVED_OPERATION);
+                return OptionalInt.empty();
+            }
+            for (DataManager dm : downReplicas) {
+                Lock siteLock = this.siteLocks.get(dm.getSiteId()).readLock();
+                siteLock.lock();
+                try {
                     if (!this.siteActiveStatus.get(dm.getSiteId())) {
-                        this.waitingOperations.get(dm.getSiteId()).add(op);
+                        this.waiters.park(op, dm.getSiteId());
+                    } else {
+                        // Site recovered after it was skipped above, its waiting operations are already drained
+                        val = this.readOnReplica(op, dm);
+                        if (val.isPresent()) {
+                            op.setValue(val.getAsInt());
+                            op.setExecutedTimestamp(TimeManager.getTime());
+                            return val;
+                        }
                     }
+                } finally {
+                    siteLock.unlock();
                 }
             }
         } else {
             // UnReplicated variable
             DataManager dm = dataManagers.get(0);
-
-            if (this.siteActiveStatus.get(dm.getSiteId())) {
-                val = dm.read(op, false);
-                if (val.isPresent()) {
-                    op.setExecutedTimestamp(TimeManager.getTime());
+            Lock siteLock = this.siteLocks.get(dm.getSiteId()).readLock();
+            siteLock.lock();
+            try {
+                if (this.siteActiveStatus.get(dm.getSiteId())) {
+                    try {
+                        val = dm.read(op, false);
+                    } catch (StorageException e) {
+                        // Wait for the site to come back from the failure
+                        this.failOnStorageError(dm, e);
+                        this.waiters.park(op, dm.getSiteId());
+                    }
+                    if (val.isPresent()) {
+                        op.setValue(val.getAsInt());
+                        op.setExecutedTimestamp(TimeManager.getTime());
+                    }
+                } else {
+                    // Wait for site to become available
+                    this.waiters.park(op, dm.getSiteId());
                 }
-            } else {
-                // Wait for site to become available
-                this.waitingOperations.get(dm.getSiteId()).add(op);
+            } finally {
+                siteLock.unlock();
             }
         }
         if (!val.isPresent())
-            logger.info(String.format(op + " put on wait"));
+            trace.info("{} put on wait", op);
 
         return val;
     }
 
+    private OptionalInt readOnReplica(ReadOperation op, DataManager dm) {
+        AtomicInteger outstanding = this.outstandingReads.get(dm.getSiteId());
+        outstanding.incrementAndGet();
+        try {
+            return dm.read(op);
+        } catch (StorageException e) {
+            this.failOnStorageError(dm, e);
+            return OptionalInt.empty();
+        } finally {
+            outstanding.decrementAndGet();
+        }
+    }
+
+    /**
+     * Fail a site that can't reach its stable storage. Callers hold the site's read lock, so the site is failed on
+     * another thread once they release it.
+     */
+    private void failOnStorageError(DataManager dm, StorageException e) {
+        logger.error("Site {} can't reach its storage, failing it: {}", dm.getSiteId(), e.getMessage());
+        CompletableFuture.runAsync(() -> this.fail(dm.getSiteId()));
+    }
+
+    /**
+     * Order in which the replicas of a variable are tried by a read, as set by the read routing
+     * @param dataManagers Replicas of the variable
+     */
+    private List<DataManager> routeRead(List<DataManager> dataManagers) {
+        ReadRouting routing = this.config.getReadRouting();
+        if (routing == ReadRouting.FIXED_ORDER)
+            return dataManagers;
+        int n = dataManagers.size();
+        int start = Math.floorMod(this.readCursor.getAndIncrement(), n);
+        List<DataManager> routed = new ArrayList<>(n);
+        for (int i=0; i<n; i++)
+            routed.add(dataManagers.get((start + i) % n));
+        if (routing == ReadRouting.LEAST_OUTSTANDING) {
+            // Counts keep changing, sort on a snapshot. Ties keep the rotated order, so idle replicas share the load.
+            int[] outstanding = new int[n];
+            for (int i=0; i<n; i++)
+                outstanding[i] = this.outstandingReads.get(routed.get(i).getSiteId()).get();
+            for (int i=1; i<n; i++) {
+                DataManager dm = routed.get(i);
+                int count = outstanding[i];
+                int j = i - 1;
+                for (; j>=0 && outstanding[j]>count; j--) {
+                    routed.set(j + 1, routed.get(j));
+                    outstanding[j + 1] = outstanding[j];
+                }
+                routed.set(j + 1, dm);
+                outstanding[j + 1] = count;
+            }
+        }
+        return routed;
+    }
+
+    /**
+     * Read from the first replica that is up, and from the next one as well if the first hasn't answered within the
+     * hedge delay. Must be called holding the read lock of the variable's stripe.
+     * @param routed Replicas in routing order
+     * @return Value of whichever replica served the read first, empty if none did or fewer than two replicas are up
+     */
+    private OptionalInt hedgedRead(ReadOperation op, List<DataManager> routed) {
+        DataManager first = null;
+        DataManager second = null;
+        for (DataManager dm: routed) {
+            if (!this.siteActiveStatus.get(dm.getSiteId()))
+                continue;
+            if (first == null) {
+                first = dm;
+            } else {
+                second = dm;
+                break;
+            }
+        }
+        if (second == null)
+            return OptionalInt.empty();
+
+        CompletableFuture<OptionalInt> primary = this.readAsync(op, first);
+        try {
+            return primary.get(this.config.getHedgeAfterMicros(), TimeUnit.MICROSECONDS);
+        } catch (TimeoutException e) {
+            this.hedgedReads.increment();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return OptionalInt.empty();
+        } catch (ExecutionException e) {
+            return OptionalInt.empty();
+        }
+        CompletableFuture<OptionalInt> backup = this.readAsync(op, second);
+        CompletableFuture<OptionalInt> served = new CompletableFuture<>();
+        primary.thenAccept(val -> {
+            if (val.isPresent())
+                served.complete(val);
+        });
+        backup.thenAccept(val -> {
+            if (val.isPresent())
+                served.complete(val);
+        });
+        CompletableFuture.allOf(primary, backup).thenRun(() -> served.complete(OptionalInt.empty()));
+        return served.join();
+    }
+
+    private CompletableFuture<OptionalInt> readAsync(ReadOperation op, DataManager dm) {
+        return CompletableFuture.supplyAsync(() -> {
+            Lock siteLock = this.siteLocks.get(dm.getSiteId()).readLock();
+            siteLock.lock();
+            try {
+                return this.siteActiveStatus.get(dm.getSiteId()) ? this.readOnReplica(op, dm) : OptionalInt.empty();
+            } finally {
+                siteLock.unlock();
+            }
+        }, this.readExecutor).exceptionally(e -> {
+            logger.error("Site {} failed to serve {}: {}", dm.getSiteId(), op, e.getMessage());
+            return OptionalInt.empty();
+        });
+    }
+
     @Override
     public boolean write(WriteOperation op) {
-        if (!this.checkTransactionActive(op)) {
+        this.checkTransactionWritable(op);
+        if (!this.checkTransactionActive(op) || this.abortedEarly(op)) {
             return false;
         }
         List<DataManager> dataManagers = this.variableToDataManagerMap.get(op.getVariableId());
@@ -141,71 +506,474 @@ public class TransactionManagerImpl implements TransactionManager {
             throw new RuntimeException("No data node available to serve request: "+op);
         }
 
+        if (this.isQuorumReplicated(dataManagers))
+            return this.writeToQuorum(op, dataManagers);
+
         boolean writeStatus = false;
-        boolean currentWriteStatus;
+        List<Integer> skippedSites = new ArrayList<>();
         for (DataManager dm: dataManagers) {
-            if (!this.siteActiveStatus.get(dm.getSiteId()))
-                continue;
-            currentWriteStatus = dm.write(op);
-            if (currentWriteStatus) {
-                Set<Long> activeTransactions = this.siteToActiveWriteTransactions.get(dm.getSiteId());
-                activeTransactions.add(op.getTransaction().getTransactionId());
+            Lock siteLock = this.siteLocks.get(dm.getSiteId()).readLock();
+            siteLock.lock();
+            try {
+                if (!this.siteActiveStatus.get(dm.getSiteId())) {
+                    if (this.config.getRecoveryMode() == RecoveryMode.CATCH_UP)
+                        this.missedWrites.get(dm.getSiteId()).add(op);
+                    skippedSites.add(dm.getSiteId());
+                    continue;
+                }
+                boolean currentWriteStatus = dm.write(op);
+                if (currentWriteStatus) {
+                    Set<Long> activeTransactions = this.siteToActiveWriteTransactions.get(dm.getSiteId());
+                    activeTransactions.add(op.getTransaction().getTransactionId());
+                }
+                writeStatus = writeStatus || currentWriteStatus;
+            } finally {
+                siteLock.unlock();
             }
-            writeStatus = writeStatus || currentWriteStatus;
         }
 
         if (!writeStatus) {
-            // Wait for site to become available
-            for (DataManager dm: dataManagers) {
-                this.waitingOperations.get(dm.getSiteId()).add(op);
-            }
-            logger.info(String.format(op + " put on wait"));
+            this.waitForReplicas(op, dataManagers, skippedSites);
         } else {
             op.setExecutedTimestamp(TimeManager.getTime());
         }
         return writeStatus;
     }
 
+    /**
+     * Write to the first replicas that are up until a write quorum has the write. Replicas already holding writes of
+     * the transaction get the write as well, so that a replica that has an earlier write of the transaction to the
+     * same variable can't commit a stale value. If fewer replicas than a write quorum are up, the write waits for
+     * the replicas that are down.
+     */
+    private boolean writeToQuorum(WriteOperation op, List<DataManager> dataManagers) {
+        long transactionId = op.getTransaction().getTransactionId();
+        int writeQuorum = this.writeQuorumSize(dataManagers.size());
+        int acknowledged = 0;
+        List<DataManager> downReplicas = new ArrayList<>();
+        for (DataManager dm: dataManagers) {
+            Set<Long> activeTransactions = this.siteToActiveWriteTransactions.get(dm.getSiteId());
+            if (acknowledged >= writeQuorum && !activeTransactions.contains(transactionId))
+                continue;
+            Lock siteLock = this.siteLocks.get(dm.getSiteId()).readLock();
+            siteLock.lock();
+            try {
+                if (!this.siteActiveStatus.get(dm.getSiteId())) {
+                    downReplicas.add(dm);
+                    continue;
+                }
+                if (dm.write(op)) {
+                    activeTransactions.add(transactionId);
+                    acknowledged++;
+                }
+            } finally {
+                siteLock.unlock();
+            }
+        }
+
+        if (acknowledged < writeQuorum) {
+            for (DataManager dm: downReplicas) {
+                Lock siteLock = this.siteLocks.get(dm.getSiteId()).readLock();
+                siteLock.lock();
+                try {
+                    this.waiters.park(op, dm.getSiteId());
+                } finally {
+                    siteLock.unlock();
+                }
+            }
+            trace.info("{} put on wait, {} of the {} replicas needed are up", op, acknowledged, writeQuorum);
+            return false;
+        }
+        op.setExecutedTimestamp(TimeManager.getTime());
+        return true;
+    }
+
+    /**
+     * Park a write that no replica applied until one of the replicas recovers
+     * @param op Write operation
+     * @param dataManagers Replicas of the variable written
+     * @param skippedSites Sites that were down when the write was attempted
+     */
+    private void waitForReplicas(WriteOperation op, List<DataManager> dataManagers, List<Integer> skippedSites) {
+        for (int siteId: skippedSites)
+            this.missedWrites.get(siteId).remove(op);
+        // Wait for site to become available
+        for (DataManager dm: dataManagers) {
+            Lock siteLock = this.siteLocks.get(dm.getSiteId()).readLock();
+            siteLock.lock();
+            try {
+                this.waiters.park(op, dm.getSiteId());
+            } finally {
+                siteLock.unlock();
+            }
+        }
+        trace.info("{} put on wait", op);
+    }
+
+    /**
+     * Submit reads and writes in batches. Consecutive reads are grouped by the first replica that is up and
+     * consecutive writes by replica, so every site is called once per run of reads or writes. Runs are dispatched in
+     * submission order, so an operation never overtakes an earlier operation of the other kind.
+     */
     @Override
-    public void fail(int siteId) {
-        if (!this.siteActiveStatus.get(siteId)) {
-            return;
+    public List<OptionalInt> submitBatch(List<? extends SymbolOperation> ops) {
+        for (SymbolOperation op: ops) {
+            if (op instanceof WriteOperation)
+                this.checkTransactionWritable(op);
+        }
+        OptionalInt[] results = new OptionalInt[ops.size()];
+        Arrays.fill(results, OptionalInt.empty());
+        if (this.config.getReplicationMode() == ReplicationMode.QUORUM) {
+            // Quorum reads and writes pick their replicas one operation at a time
+            for (int i=0; i<ops.size(); i++) {
+                SymbolOperation op = ops.get(i);
+                if (op instanceof ReadOperation)
+                    results[i] = this.read((ReadOperation) op);
+                else if (op instanceof WriteOperation && this.write((WriteOperation) op))
+                    results[i] = OptionalInt.of(((WriteOperation) op).getValue());
+                else if (!(op instanceof WriteOperation))
+                    throw new IllegalArgumentException("Only reads and writes can be batched, got "+op);
+            }
+            return Arrays.asList(results);
+        }
+        int start = 0;
+        while (start < ops.size()) {
+            OperationType operationType = ops.get(start).getOperationType();
+            int end = start + 1;
+            while (end < ops.size() && ops.get(end).getOperationType() == operationType)
+                end++;
+            if (operationType == OperationType.READ)
+                this.readBatch(ops.subList(start, end), results, start);
+            else if (operationType == OperationType.WRITE)
+                this.writeBatch(ops.subList(start, end), results, start);
+            else
+                throw new IllegalArgumentException("Only reads and writes can be batched, got "+ops.get(start));
+            start = end;
+        }
+        return Arrays.asList(results);
+    }
+
+    private void readBatch(List<? extends SymbolOperation> ops, OptionalInt[] results, int offset) {
+        int[] stripes = this.variableLocks.readLockAll(ops.stream().mapToInt(SymbolOperation::getVariableId).toArray());
+        try {
+            // Positions of the reads sent to each site, each read goes to the first replica that is up
+            Map<Integer, List<Integer>> siteBatches = new TreeMap<>();
+            boolean[] active = new boolean[ops.size()];
+            for (int i=0; i<ops.size(); i++) {
+                active[i] = this.checkTransactionActive(ops.get(i)) && !this.abortedEarly(ops.get(i));
+                if (!active[i])
+                    continue;
+                for (DataManager dm: this.routeRead(this.variableToDataManagerMap.get(ops.get(i).getVariableId()))) {
+                    if (this.siteActiveStatus.get(dm.getSiteId())) {
+                        siteBatches.computeIfAbsent(dm.getSiteId(), k -> new ArrayList<>()).add(i);
+                        break;
+                    }
+                }
+            }
+
+            for (Map.Entry<Integer, List<Integer>> siteBatch: siteBatches.entrySet()) {
+                int siteId = siteBatch.getKey();
+                List<Integer> positions = siteBatch.getValue();
+                List<ReadOperation> siteOps = new ArrayList<>(positions.size());
+                boolean[] runConsistencyChecks = new boolean[positions.size()];
+                for (int j=0; j<positions.size(); j++) {
+                    ReadOperation op = (ReadOperation) ops.get(positions.get(j));
+                    siteOps.add(op);
+                    // Non-replicated variables are read without the consistency checks, as in readFromReplicas
+                    runConsistencyChecks[j] = this.variableToDataManagerMap.get(op.getVariableId()).size() > 1;
+                }
+                Lock siteLock = this.siteLocks.get(siteId).readLock();
+                siteLock.lock();
+                try {
+                    if (!this.siteActiveStatus.get(siteId))
+                        continue;
+                    List<OptionalInt> values = this.siteToDataManagerMap.get(siteId).read(siteOps, runConsistencyChecks);
+                    for (int j=0; j<positions.size(); j++) {
+                        OptionalInt val = values.get(j);
+                        if (val.isPresent()) {
+                            siteOps.get(j).setValue(val.getAsInt());
+                            siteOps.get(j).setExecutedTimestamp(TimeManager.getTime());
+                            results[offset + positions.get(j)] = val;
+                        }
+                    }
+                } finally {
+                    siteLock.unlock();
+                }
+            }
+
+            // Reads the first replica refused, or whose site went down meanwhile, fall back to the other replicas
+            for (int i=0; i<ops.size(); i++) {
+                ReadOperation op = (ReadOperation) ops.get(i);
+                if (active[i] && !op.isExecuted() && op.getTransaction().getStatus() == TransactionStatus.ACTIVE)
+                    results[offset + i] = this.readFromReplicas(op, this.variableToDataManagerMap.get(op.getVariableId()));
+            }
+        } finally {
+            this.variableLocks.readUnlockAll(stripes);
+        }
+    }
+
+    private void writeBatch(List<? extends SymbolOperation> ops, OptionalInt[] results, int offset) {
+        // Writes sent to each site, every write goes to all replicas of its variable
+        Map<Integer, List<WriteOperation>> siteBatches = new TreeMap<>();
+        boolean[] active = new boolean[ops.size()];
+        for (int i=0; i<ops.size(); i++) {
+            active[i] = this.checkTransactionActive(ops.get(i)) && !this.abortedEarly(ops.get(i));
+            if (!active[i])
+                continue;
+            for (DataManager dm: this.variableToDataManagerMap.get(ops.get(i).getVariableId()))
+                siteBatches.computeIfAbsent(dm.getSiteId(), k -> new ArrayList<>()).add((WriteOperation) ops.get(i));
+        }
+
+        Set<WriteOperation> applied = Collections.newSetFromMap(new IdentityHashMap<>());
+        Map<WriteOperation, List<Integer>> skippedSites = new IdentityHashMap<>();
+        for (Map.Entry<Integer, List<WriteOperation>> siteBatch: siteBatches.entrySet()) {
+            int siteId = siteBatch.getKey();
+            Lock siteLock = this.siteLocks.get(siteId).readLock();
+            siteLock.lock();
+            try {
+                if (!this.siteActiveStatus.get(siteId)) {
+                    for (WriteOperation op: siteBatch.getValue()) {
+                        if (this.config.getRecoveryMode() == RecoveryMode.CATCH_UP)
+                            this.missedWrites.get(siteId).add(op);
+                        skippedSites.computeIfAbsent(op, k -> new ArrayList<>()).add(siteId);
+                    }
+                    continue;
+                }
+                if (this.siteToDataManagerMap.get(siteId).write(siteBatch.getValue())) {
+                    Set<Long> activeTransactions = this.siteToActiveWriteTransactions.get(siteId);
+                    for (WriteOperation op: siteBatch.getValue()) {
+                        activeTransactions.add(op.getTransaction().getTransactionId());
+                        applied.add(op);
+                    }
+                }
+            } finally {
+                siteLock.unlock();
+            }
         }
-        logger.info("Failing site "+siteId);
-        this.siteActiveStatus.put(siteId, false);
-        this.siteToDataManagerMap.get(siteId).fail();
-        for (long transactionId: this.siteToActiveWriteTransactions.get(siteId)) {
-            logger.info(String.format("Aborting T%d since it wrote to site %d that went down before T%d committed",
-                    transactionId, siteId, transactionId));
-            this.abortTransaction(transactionId);
+
+        for (int i=0; i<ops.size(); i++) {
+            WriteOperation op = (WriteOperation) ops.get(i);
+            if (!active[i])
+                continue;
+            if (applied.contains(op)) {
+                op.setExecutedTimestamp(TimeManager.getTime());
+                results[offset + i] = OptionalInt.of(op.getValue());
+            } else {
+                this.waitForReplicas(op, this.variableToDataManagerMap.get(op.getVariableId()),
+                        skippedSites.getOrDefault(op, Collections.emptyList()));
+            }
         }
     }
 
     @Override
-    public void recover(int siteId) {
-        if (this.siteActiveStatus.get(siteId)) {
-            return;
+    public void fail(int siteId) {
+        Lock siteLock = this.siteLocks.get(siteId).writeLock();
+        siteLock.lock();
+        try {
+            if (!this.siteActiveStatus.get(siteId)) {
+                return;
+            }
+            trace.info("Failing site {}", siteId);
+            this.siteActiveStatus.put(siteId, false);
+            try {
+                this.siteToDataManagerMap.get(siteId).fail();
+            } catch (RuntimeException e) {
+                // The site is down as far as transactions are concerned, whether or not it heard about it
+                logger.warn("Site {} did not acknowledge its failure: {}", siteId, e.getMessage());
+            }
+            for (long transactionId: new ArrayList<>(this.siteToActiveWriteTransactions.get(siteId))) {
+                trace.info("Aborting T{} since it wrote to site {} that went down before T{} committed",
+                        transactionId, siteId, transactionId);
+                this.abortTransaction(transactionId, AbortReason.SITE_FAILURE);
+            }
+        } finally {
+            siteLock.unlock();
         }
+    }
+
+    @Override
+    public void recover(int siteId) {
         DataManager dm = siteToDataManagerMap.get(siteId);
-        logger.info("Recovering site "+siteId);
-        this.siteActiveStatus.put(siteId, true);
-        dm.recover();
-        for (Operation pendingOperation : this.waitingOperations.get(siteId)) {
+        List<SymbolOperation> pendingOperations;
+        ReadWriteLock siteLock = this.siteLocks.get(siteId);
+        // Catching up reads the replicated variables on the peers, keep commits off them until the site is current
+        int[] stripes = this.config.getRecoveryMode() == RecoveryMode.CATCH_UP ?
+                this.variableLocks.lockAll(this.getReplicatedVariableIds(dm)) : new int[0];
+        try {
+            siteLock.writeLock().lock();
+            try {
+                if (this.siteActiveStatus.get(siteId)) {
+                    return;
+                }
+                trace.info("Recovering site {}", siteId);
+                this.siteActiveStatus.put(siteId, true);
+                if (this.config.getRecoveryMode() == RecoveryMode.CATCH_UP)
+                    this.recoverWithCatchUp(dm);
+                else
+                    dm.recover();
+                pendingOperations = this.waiters.wake(siteId);
+            } finally {
+                siteLock.writeLock().unlock();
+            }
+        } finally {
+            this.variableLocks.unlockAll(stripes);
+        }
+
+        // Replay outside the site's write lock, reads take the variable stripe before the site lock
+        for (SymbolOperation pendingOperation : pendingOperations) {
             if (pendingOperation.getOperationType().equals(OperationType.READ)) {
                 ReadOperation pendingReadOperation = ((ReadOperation) pendingOperation);
-                if (pendingReadOperation.isExecuted()) {
+                Lock variableLock = this.variableLocks.get(pendingReadOperation.getVariableId()).readLock();
+                variableLock.lock();
+                List<DataManager> replicas = this.variableToDataManagerMap.get(pendingReadOperation.getVariableId());
+                if (this.isQuorumReplicated(replicas)) {
+                    // Retry the whole quorum, it takes the site locks itself
+                    try {
+                        if (!pendingReadOperation.isExecuted() && pendingReadOperation.getTransaction().getStatus() == TransactionStatus.ACTIVE)
+                            this.readFromQuorum(pendingReadOperation, replicas);
+                    } finally {
+                        variableLock.unlock();
+                    }
                     continue;
                 }
-                Optional<Integer> val = dm.read(pendingReadOperation);
-                if (val.isPresent()) {
-                    pendingReadOperation.setExecutedTimestamp(TimeManager.getTime());
+                boolean unserved = false;
+                siteLock.readLock().lock();
+                try {
+                    if (pendingReadOperation.isExecuted()) {
+                        continue;
+                    }
+                    if (!this.siteActiveStatus.get(siteId)) {
+                        // Site failed again while replaying
+                        this.waiters.park(pendingReadOperation, siteId);
+                        continue;
+                    }
+                    // Non-replicated variables are available for reads as soon as their site recovers
+                    boolean replicated = replicas.size() > 1;
+                    OptionalInt val = dm.read(pendingReadOperation, replicated);
+                    if (val.isPresent()) {
+                        pendingReadOperation.setValue(val.getAsInt());
+                        pendingReadOperation.setExecutedTimestamp(TimeManager.getTime());
+                        // Served, stop waiting on the other replicas
+                        this.waiters.remove(pendingReadOperation);
+                    } else {
+                        // Refused, and no other replica is left to wait for
+                        unserved = !this.waiters.isWaiting(pendingReadOperation);
+                    }
+                } finally {
+                    siteLock.readLock().unlock();
+                    variableLock.unlock();
+                }
+                if (unserved && pendingReadOperation.getTransaction().getStatus() == TransactionStatus.ACTIVE) {
+                    trace.info("No site left to serve the read {}", pendingReadOperation);
+                    abortTransaction(pendingReadOperation.getTransaction().getTransactionId(), AbortReason.UNSERVED_OPERATION);
                 }
             } else if (pendingOperation.getOperationType().equals(OperationType.WRITE)) {
                 WriteOperation pendingWriteOperation = ((WriteOperation) pendingOperation);
-                dm.write(pendingWriteOperation);
+                List<DataManager> replicas = this.variableToDataManagerMap.get(pendingWriteOperation.getVariableId());
+                if (this.isQuorumReplicated(replicas)) {
+                    // Retry the whole quorum, it waits again on the replicas still down if too few are up
+                    if (!pendingWriteOperation.isExecuted()
+                            && pendingWriteOperation.getTransaction().getStatus() == TransactionStatus.ACTIVE) {
+                        this.waiters.remove(pendingWriteOperation);
+                        this.writeToQuorum(pendingWriteOperation, replicas);
+                    }
+                    continue;
+                }
+                siteLock.readLock().lock();
+                try {
+                    if (!this.siteActiveStatus.get(siteId))
+                        this.waiters.park(pendingWriteOperation, siteId);
+                    else
+                        this.replayWrite(dm, pendingWriteOperation);
+                } finally {
+                    siteLock.readLock().unlock();
+                }
             }
         }
-        this.waitingOperations.get(siteId).clear();
+    }
+
+    /**
+     * Apply a write that waited for the site to recover. As for a write served right away, the site takes part in the
+     * transaction's commit and the operation completes, which is what a client waiting on the write listens for. The
+     * write keeps waiting on its other replicas, each one takes it as it recovers. Must be called holding the site's
+     * read lock.
+     */
+    private void replayWrite(DataManager dm, WriteOperation op) {
+        if (!dm.write(op))
+            return;
+        long transactionId = op.getTransaction().getTransactionId();
+        Set<Long> activeTransactions = this.siteToActiveWriteTransactions.get(dm.getSiteId());
+        activeTransactions.add(transactionId);
+        if (op.getTransaction().getStatus() != TransactionStatus.ACTIVE) {
+            // Aborted concurrently, its cleanup may have missed this site
+            activeTransactions.remove(transactionId);
+            dm.abortTransaction(transactionId);
+        } else if (!op.isExecuted()) {
+            op.setExecutedTimestamp(TimeManager.getTime());
+        }
+    }
+
+    /**
+     * Recover a site from peers that are up and current, falling back to available copies if some replicated variable
+     * of the site has no such peer. Must be called holding the site's write lock and the stripes of its replicated
+     * variables.
+     */
+    private void recoverWithCatchUp(DataManager dm) {
+        int siteId = dm.getSiteId();
+        Set<Integer> uncoveredVariableIds = new HashSet<>();
+        for (int variableId: this.getReplicatedVariableIds(dm))
+            uncoveredVariableIds.add(variableId);
+        List<DataManager> peers = new ArrayList<>();
+        List<Lock> lockedPeers = new ArrayList<>();
+        try {
+            for (DataManager peer: this.siteToDataManagerMap.values()) {
+                if (uncoveredVariableIds.isEmpty())
+                    break;
+                if (peer.getSiteId() == siteId || this.staleSites.contains(peer.getSiteId()))
+                    continue;
+                Lock peerLock = this.siteLocks.get(peer.getSiteId()).readLock();
+                peerLock.lock();
+                if (this.siteActiveStatus.get(peer.getSiteId()) && uncoveredVariableIds.removeAll(peer.getManagedVariableIds())) {
+                    lockedPeers.add(peerLock);
+                    peers.add(peer);
+                } else {
+                    peerLock.unlock();
+                }
+            }
+            Queue<WriteOperation> missed = this.missedWrites.get(siteId);
+            if (!uncoveredVariableIds.isEmpty()) {
+                logger.info("Site {} has replicated variables without an up-to-date peer, recovering with available copies", siteId);
+                missed.clear();
+                this.staleSites.add(siteId);
+                dm.recover();
+                return;
+            }
+            dm.recover(peers);
+            this.staleSites.remove(siteId);
+        } finally {
+            for (Lock peerLock: lockedPeers)
+                peerLock.unlock();
+        }
+
+        // Apply writes of still active transactions that skipped the site, so that their commit reaches it
+        for (WriteOperation op = this.missedWrites.get(siteId).poll(); op != null; op = this.missedWrites.get(siteId).poll()) {
+            long transactionId = op.getTransaction().getTransactionId();
+            if (op.getTransaction().getStatus() != TransactionStatus.ACTIVE)
+                continue;
+            dm.write(op);
+            this.siteToActiveWriteTransactions.get(siteId).add(transactionId);
+            if (op.getTransaction().getStatus() != TransactionStatus.ACTIVE) {
+                // Aborted concurrently, its cleanup may have missed this site
+                this.siteToActiveWriteTransactions.get(siteId).remove(transactionId);
+                dm.abortTransaction(transactionId);
+            }
+        }
+    }
+
+    private int[] getReplicatedVariableIds(DataManager dm) {
+        return dm.getManagedVariableIds().stream()
+                .filter(variableId -> this.variableToDataManagerMap.get(variableId).size() > 1)
+                .mapToInt(Integer::intValue).toArray();
     }
 
     @Override
@@ -213,54 +981,197 @@ public class TransactionManagerImpl implements TransactionManager {
         if (!this.checkTransactionActive(op)) {
             return false;
         }
-        long transactionId = op.getTransaction().getTransactionId();
+        long startNanos = System.nanoTime();
+        CommitResult result = new CommitResult();
+        op.setResult(result);
+        try {
+            return this.commitTransaction(op, result);
+        } finally {
+            result.setTotalLatencyNanos(System.nanoTime() - startNanos);
+            this.commitLatency.record(result.getTotalLatencyNanos());
+        }
+    }
+
+    private boolean commitTransaction(CommitOperation op, CommitResult result) {
+        Transaction transaction = op.getTransaction();
+        long transactionId = transaction.getTransactionId();
         //check if any of the transaction's operations are not executed. If so, abort
-        for (Operation transactionOp : op.getTransaction().getOperations()) {
-            if (!transactionOp.equals(op) && !transactionOp.isExecuted()) {
-                logger.info(String.format("Aborting T%d since no site was able to serve %s", transactionId, transactionOp));
-                abortTransaction(transactionId);
-                return false;
+        if (transaction.getPendingOperations() > 0) {
+            for (Operation transactionOp : transaction.getOperations()) {
+                if (!transactionOp.isExecuted()) {
+                    trace.info("Aborting T{} since no site was able to serve {}", transactionId, transactionOp);
+                    break;
+                }
             }
+            abortTransaction(transactionId, AbortReason.UNSERVED_OPERATION);
+            result.setAbortReason(AbortReason.UNSERVED_OPERATION);
+            return false;
         }
-        boolean precommitStatus = true;
-        for (int site: this.siteToActiveWriteTransactions.keySet()) {
-            if (this.siteToActiveWriteTransactions.get(site).contains(transactionId)) {
-                // Commit conditions have to succeed on every site, else abort
-                precommitStatus = precommitStatus && this.siteToDataManagerMap.get(site).precommitTransaction(op);
-                if (!precommitStatus) {
-                    break;
+
+        int[] writeSet = transaction.getWriteSet();
+        if (writeSet.length == 0 && transaction.isSafeSnapshot())
+            return this.commitReadOnly(transaction, result);
+
+        // Lock every variable written, then every site written to. Commits on disjoint variables proceed in parallel.
+        int[] stripes = this.variableLocks.lockAll(writeSet);
+        List<Lock> lockedSites = new ArrayList<>();
+        List<Integer> unconfirmedSites = new ArrayList<>();
+        try {
+            List<DataManager> writeSites = new ArrayList<>();
+            for (int site: this.siteToActiveWriteTransactions.keySet()) {
+                if (this.siteToActiveWriteTransactions.get(site).contains(transactionId)) {
+                    Lock siteLock = this.siteLocks.get(site).readLock();
+                    siteLock.lock();
+                    lockedSites.add(siteLock);
+                    writeSites.add(this.siteToDataManagerMap.get(site));
                 }
             }
+            // A site may have failed and aborted the transaction before the locks were taken
+            if (!this.checkTransactionActive(op)) {
+                result.setAbortReason(transaction.getAbortReason());
+                return false;
+            }
+            return this.commitLocked(op, writeSites, result, unconfirmedSites);
+        } finally {
+            for (Lock siteLock: lockedSites)
+                siteLock.unlock();
+            // Fail the sites that missed the commit before the variables are unlocked, so no read sees their stale copies
+            for (int siteId: unconfirmedSites)
+                this.fail(siteId);
+            this.variableLocks.unlockAll(stripes);
         }
-        precommitStatus = precommitStatus && this.serializationGraph.addTransactionAndRunChecks(op.getTransaction());
+    }
+
+    /**
+     * Commit a transaction that wrote nothing and read a safe snapshot. It can't be part of a cycle, so it stays out of
+     * the serialization graph and no site is involved.
+     */
+    private boolean commitReadOnly(Transaction transaction, CommitResult result) {
+        long transactionId = transaction.getTransactionId();
+        transaction.setCommitTimestamp(TimeManager.getTime());
+        trace.info("T{} commits", transactionId);
+        cleanupTransaction(transactionId);
+        result.setCommitted(true);
+        transaction.setStatus(TransactionStatus.COMMITTED);
+        this.committedTransactions.increment();
+        this.readOnlyCommits.increment();
+        return true;
+    }
+
+    /**
+     * Validate and commit a transaction holding the locks of its variables and sites. Once validation passes the
+     * transaction is committed, a site that then fails to install the writes can't undo that and is left to be failed.
+     * @param unconfirmedSites Filled with the sites that did not confirm the commit
+     */
+    private boolean commitLocked(CommitOperation op, List<DataManager> writeSites, CommitResult result,
+                                 List<Integer> unconfirmedSites) {
+        Transaction transaction = op.getTransaction();
+        long transactionId = transaction.getTransactionId();
+        // Commit conditions have to succeed on every site, else abort
+        boolean precommitStatus = this.runOnSites(writeSites, dm -> dm.precommitTransaction(op), true, result.getPrepareLatencyNanos()).isEmpty();
         if (!precommitStatus) {
-            abortTransaction(transactionId);
+            abortTransaction(transactionId, AbortReason.FIRST_COMMITTER_WINS);
+            result.setAbortReason(AbortReason.FIRST_COMMITTER_WINS);
+            return false;
+        }
+        // Commit timestamp is drawn under the variable locks, so versions of a variable are installed in timestamp order
+        transaction.setCommitTimestamp(this.config.isConcurrent() ? TimeManager.incrementTime() : TimeManager.getTime());
+        long validationStartNanos = System.nanoTime();
+        boolean acyclic = this.ssiValidator.addTransactionAndRunChecks(transaction);
+        this.graphValidationLatency.record(System.nanoTime() - validationStartNanos);
+        if (!acyclic) {
+            transaction.setCommitTimestamp(-1);
+            abortTransaction(transactionId, AbortReason.SERIALIZATION_CYCLE);
+            result.setAbortReason(AbortReason.SERIALIZATION_CYCLE);
             return false;
         }
 
-        boolean commitStatus = true;
-        for (int site: this.siteToActiveWriteTransactions.keySet()) {
-            if (this.siteToActiveWriteTransactions.get(site).contains(transactionId)) {
-                commitStatus = commitStatus && this.siteToDataManagerMap.get(site).commitTransaction(op);
-                if (!commitStatus) {
-                    break;
+        unconfirmedSites.addAll(this.runOnSites(writeSites, dm -> dm.commitTransaction(op), false, result.getCommitLatencyNanos()));
+        for (int siteId: unconfirmedSites)
+            logger.error("Site {} did not confirm the commit of T{}, failing it", siteId, transactionId);
+
+        trace.info("T{} commits", transactionId);
+        if (this.latestCommitTimestamps != null) {
+            for (int variableId: transaction.getWriteSet())
+                this.latestCommitTimestamps.merge(variableId, transaction.getCommitTimestamp(), Math::max);
+        }
+        cleanupTransaction(transactionId);
+        result.setCommitted(true);
+        transaction.setStatus(TransactionStatus.COMMITTED);
+        this.committedTransactions.increment();
+        return true;
+    }
+
+    /**
+     * Runs one phase of the commit on every site written to by the transaction. Sites are called one after another
+     * unless a commit executor is configured, in which case they are called in parallel. A site that fails to respond,
+     * e.g. a remote site that timed out, counts as a no.
+     * @param sites Sites to run the phase on
+     * @param phase Phase to run on each site
+     * @param stopOnFirstFailure Whether to decide as soon as one site votes no instead of waiting for every site
+     * @param latencyNanos Time taken by each site, filled in as sites respond
+     * @return Sites that voted no, empty if every site succeeded
+     */
+    private List<Integer> runOnSites(List<DataManager> sites, Predicate<DataManager> phase, boolean stopOnFirstFailure,
+                                     Map<Integer, Long> latencyNanos) {
+        if (this.commitExecutor == null || sites.size() < 2) {
+            List<Integer> failedSites = new ArrayList<>();
+            for (DataManager dm: sites) {
+                long startNanos = System.nanoTime();
+                boolean status;
+                try {
+                    status = phase.test(dm);
+                } catch (RuntimeException e) {
+                    logger.error("Site {} failed to respond during commit: {}", dm.getSiteId(), e.getMessage());
+                    status = false;
+                }
+                latencyNanos.put(dm.getSiteId(), System.nanoTime() - startNanos);
+                if (!status) {
+                    failedSites.add(dm.getSiteId());
+                    if (stopOnFirstFailure)
+                        break;
                 }
             }
+            return failedSites;
         }
 
-        logger.info("T"+transactionId+(commitStatus?" commits":" aborts"));
-        op.getTransaction().setCommitTimestamp(TimeManager.getTime());
-        cleanupTransaction(transactionId);
-        return commitStatus;
+        CompletableFuture<Void> decision = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(sites.size());
+        Queue<Integer> failedSites = new ConcurrentLinkedQueue<>();
+        for (DataManager dm: sites) {
+            CompletableFuture.supplyAsync(() -> {
+                long startNanos = System.nanoTime();
+                boolean status = phase.test(dm);
+                latencyNanos.put(dm.getSiteId(), System.nanoTime() - startNanos);
+                return status;
+            }, this.commitExecutor).exceptionally(e -> {
+                logger.error("Site {} failed to respond during commit: {}", dm.getSiteId(), e.getMessage());
+                return false;
+            }).thenAccept(status -> {
+                if (!status) {
+                    failedSites.add(dm.getSiteId());
+                    if (stopOnFirstFailure)
+                        decision.complete(null);
+                }
+                if (pending.decrementAndGet() == 0)
+                    decision.complete(null);
+            });
+        }
+        decision.join();
+        return new ArrayList<>(failedSites);
     }
 
-    private void abortTransaction(long transactionId) {
-        logger.info("T"+transactionId+" aborts");
+    private void abortTransaction(long transactionId, AbortReason abortReason) {
+        trace.info("T{} aborts", transactionId);
         this.cleanupTransaction(transactionId);
+        this.abortedTransactions[abortReason.ordinal()].increment();
+        this.transactionStore.get(transactionId).markAborted(abortReason);
     }
 
     private void cleanupTransaction(long transactionId) {
-        this.activeTransactions.remove(transactionId);
+        Transaction transaction = this.transactionStore.get(transactionId);
+        if (this.activeTransactions.remove(transaction) && !transaction.isReadOnly())
+            this.activeReadWriteTransactions.decrementAndGet();
         for (int siteId: this.siteToActiveWriteTransactions.keySet()) {
             Set<Long> activeTransactions = this.siteToActiveWriteTransactions.get(siteId);
             if (activeTransactions.contains(transactionId)) {
@@ -268,11 +1179,79 @@ public class TransactionManagerImpl implements TransactionManager {
                 activeTransactions.remove(transactionId);
             }
         }
+        // Writes of finished transactions have nothing left to deliver, even to a site that never comes back
+        if (this.config.getRecoveryMode() == RecoveryMode.CATCH_UP) {
+            for (Queue<WriteOperation> missed: this.missedWrites.values())
+                missed.removeIf(op -> op.getTransaction() == transaction
+                        || op.getTransaction().getStatus() != TransactionStatus.ACTIVE);
+        }
+        long lowWatermark = this.getLowWatermark();
+        this.ssiValidator.pruneTransactions(lowWatermark);
+        if (lowWatermark > this.lowWatermark) {
+            this.lowWatermark = lowWatermark;
+            // Active transactions began at or after the low watermark, so no write check can trip on older commits
+            if (this.latestCommitTimestamps != null)
+                this.latestCommitTimestamps.values().removeIf(commitTimestamp -> commitTimestamp <= lowWatermark);
+            for (DataManager dm: this.siteToDataManagerMap.values())
+                dm.advanceLowWatermark(lowWatermark);
+        }
+    }
+
+    /**
+     * Start timestamp of the oldest active transaction. Transactions that begin later can't start before the current
+     * time, so the current time is used when no transaction is active.
+     * @return Low watermark timestamp
+     */
+    private long getLowWatermark() {
+        synchronized (this.beginLock) {
+            Iterator<Transaction> it = this.activeTransactions.iterator();
+            if (!it.hasNext())
+                return TimeManager.getTime();
+            return it.next().getStartTimestamp();
+        }
+    }
+
+    /**
+     * With eager aborts, abort the transaction of an operation as soon as the operation shows the transaction can't
+     * commit: a write to a variable committed to since the transaction began, or a read the SSI validator would refuse
+     * unless the reader is read-only on a safe snapshot
+     * @return true if the transaction was aborted
+     */
+    private boolean abortedEarly(SymbolOperation op) {
+        if (this.latestCommitTimestamps == null)
+            return false;
+        Transaction transaction = op.getTransaction();
+        long transactionId = transaction.getTransactionId();
+        AbortReason abortReason = null;
+        if (op instanceof WriteOperation) {
+            Long commitTimestamp = this.latestCommitTimestamps.get(op.getVariableId());
+            if (commitTimestamp != null && commitTimestamp > transaction.getStartTimestamp()) {
+                trace.info("Aborting T{} early since x{} has been committed to by some other transaction since T{} began",
+                        transactionId, op.getVariableId(), transactionId);
+                abortReason = AbortReason.FIRST_COMMITTER_WINS;
+            }
+        } else if (!(transaction.isReadOnly() && transaction.isSafeSnapshot())
+                && !this.ssiValidator.canRead(transaction, op.getVariableId())) {
+            // A read-only transaction on a safe snapshot commits without validation, so only other readers are checked
+            trace.info("Aborting T{} early since reading x{} would make a transaction a pivot of two RW edges",
+                    transactionId, op.getVariableId());
+            abortReason = AbortReason.SERIALIZATION_CYCLE;
+        }
+        if (abortReason == null)
+            return false;
+        this.earlyAborts.increment();
+        this.abortTransaction(transactionId, abortReason);
+        return true;
+    }
+
+    private void checkTransactionWritable(Operation op) {
+        if (op.getTransaction().isReadOnly())
+            throw new IllegalStateException("T"+op.getTransaction().getTransactionId()+" is read-only, can't run "+op);
     }
 
     private boolean checkTransactionActive(Operation op) {
-        if (!this.activeTransactions.contains(op.getTransaction().getTransactionId())) {
-            logger.warn(op + " received operation on transaction that has either already aborted or committed");
+        if (!this.activeTransactions.contains(op.getTransaction())) {
+            trace.warn("{} received operation on transaction that has either already aborted or committed", op);
             return false;
         }
         return true;
@@ -288,7 +1267,20 @@ public class TransactionManagerImpl implements TransactionManager {
         }
     }
 
+    @Override
+    public MetricsRegistry getMetricsRegistry() {
+        return this.metricsRegistry;
+    }
+
     public Transaction getTransaction(long transactionId) {
         return this.transactionStore.get(transactionId);
     }
+
+    @Override
+    public void close() {
+        if (this.commitExecutor != null)
+            this.commitExecutor.shutdown();
+        if (this.readExecutor != null)
+            this.readExecutor.shutdown();
+    }
 }
@@ -0,0 +1,115 @@
+package com.nyu.db.transactionmanager.impl;
+
+import com.nyu.db.model.Operation;
+import com.nyu.db.model.SymbolOperation;
+
+import java.util.*;
+
+/**
+ * Operations waiting for a down site, indexed by site and variable. An operation waiting on several replicas is held
+ * once and listed under each of them. Waking a site hands out only the operations listed under it, in the order they
+ * started waiting, so recovery costs time in the number of operations woken rather than in the whole backlog.
+ * Operations leave the registry once served or once their transaction aborts.
+ */
+class WaiterRegistry {
+
+    private static class Waiter {
+        private final SymbolOperation op;
+        private final long sequence; // Order in which operations started waiting
+        private final Set<Integer> siteIds = new HashSet<>(2);
+
+        private Waiter(SymbolOperation op, long sequence) {
+            this.op = op;
+            this.sequence = sequence;
+        }
+    }
+
+    private final Map<Operation, Waiter> waiters; // Identity of the operation to its waiter
+    private final Map<Integer, Map<Integer, Set<Waiter>>> index; // Site id to variable id to the waiters listed there
+    private final Map<Integer, Integer> sizes; // Number of waiters listed under each site
+    private long nextSequence;
+
+    WaiterRegistry() {
+        this.waiters = new IdentityHashMap<>();
+        this.index = new HashMap<>();
+        this.sizes = new HashMap<>();
+        this.nextSequence = 0;
+    }
+
+    /**
+     * Make an operation wait for a site. Waiting again on a site it already waits for has no effect. The operation is
+     * dropped from every site if its transaction aborts.
+     */
+    void park(SymbolOperation op, int siteId) {
+        boolean added;
+        synchronized (this) {
+            Waiter waiter = this.waiters.get(op);
+            added = waiter == null;
+            if (added) {
+                waiter = new Waiter(op, this.nextSequence++);
+                this.waiters.put(op, waiter);
+            }
+            if (waiter.siteIds.add(siteId)) {
+                this.index.computeIfAbsent(siteId, k -> new HashMap<>())
+                        .computeIfAbsent(op.getVariableId(), k -> new HashSet<>()).add(waiter);
+                this.sizes.merge(siteId, 1, Integer::sum);
+            }
+        }
+        if (added)
+            op.getTransaction().onAbort(() -> this.remove(op));
+    }
+
+    /**
+     * Take every operation waiting for a site off that site. They keep waiting for their other sites.
+     * @return Operations that waited for the site, in the order they started waiting
+     */
+    synchronized List<SymbolOperation> wake(int siteId) {
+        Map<Integer, Set<Waiter>> byVariable = this.index.remove(siteId);
+        this.sizes.remove(siteId);
+        if (byVariable == null)
+            return Collections.emptyList();
+        List<Waiter> woken = new ArrayList<>();
+        for (Set<Waiter> variableWaiters: byVariable.values())
+            woken.addAll(variableWaiters);
+        woken.sort(Comparator.comparingLong(waiter -> waiter.sequence));
+        List<SymbolOperation> ops = new ArrayList<>(woken.size());
+        for (Waiter waiter: woken) {
+            waiter.siteIds.remove(siteId);
+            if (waiter.siteIds.isEmpty())
+                this.waiters.remove(waiter.op);
+            ops.add(waiter.op);
+        }
+        return ops;
+    }
+
+    /**
+     * Stop an operation from waiting on any site, e.g. once it has been served
+     */
+    synchronized void remove(Operation op) {
+        Waiter waiter = this.waiters.remove(op);
+        if (waiter == null)
+            return;
+        for (int siteId: waiter.siteIds) {
+            Map<Integer, Set<Waiter>> byVariable = this.index.get(siteId);
+            Set<Waiter> variableWaiters = byVariable.get(waiter.op.getVariableId());
+            variableWaiters.remove(waiter);
+            if (variableWaiters.isEmpty())
+                byVariable.remove(waiter.op.getVariableId());
+            this.sizes.merge(siteId, -1, Integer::sum);
+        }
+    }
+
+    /**
+     * @return Whether the operation still waits for some site
+     */
+    synchronized boolean isWaiting(Operation op) {
+        return this.waiters.containsKey(op);
+    }
+
+    /**
+     * @return Number of operations waiting for the site
+     */
+    synchronized int size(int siteId) {
+        return this.sizes.getOrDefault(siteId, 0);
+    }
+}
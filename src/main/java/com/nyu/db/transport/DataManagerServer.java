@@ -0,0 +1,385 @@
+package com.nyu.db.transport;
+
+import com.nyu.db.datamanager.DataManager;
+import com.nyu.db.datamanager.DataManagerConfig;
+import com.nyu.db.datamanager.DurabilityMode;
+import com.nyu.db.datamanager.impl.DataManagerImpl;
+import com.nyu.db.metrics.MetricsRegistry;
+import com.nyu.db.metrics.impl.JmxMetricsExporter;
+import com.nyu.db.metrics.impl.MetricsRegistryImpl;
+import com.nyu.db.model.*;
+import com.nyu.db.utils.TimeManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves a data manager over TCP. A single selector thread reads request frames from every connection and hands them
+ * to a worker pool, so requests pipelined on one connection run concurrently and their responses go back as soon as
+ * they are ready, in any order.
+ */
+public class DataManagerServer implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(DataManagerServer.class);
+
+    private final DataManager dataManager;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final ExecutorService workers;
+    private final Thread selectorThread;
+    private final Queue<Connection> pendingWrites; // Connections with responses queued by workers
+    private volatile boolean running;
+
+    /**
+     * Per-connection state, only touched by the selector thread apart from the outbound queue
+     */
+    private static class Connection {
+        private final SocketChannel channel;
+        private final ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        private ByteBuffer frameBuffer;
+        private final Queue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * Start serving a data manager
+     * @param dataManager Data manager to serve
+     * @param port Port to listen on, 0 to pick a free one
+     */
+    public DataManagerServer(DataManager dataManager, int port) throws IOException {
+        this.dataManager = dataManager;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(new InetSocketAddress(port));
+        this.serverChannel.configureBlocking(false);
+        this.serverChannel.register(this.selector, SelectionKey.OP_ACCEPT);
+        this.workers = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "dm-server-worker-site-"+dataManager.getSiteId());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.pendingWrites = new ConcurrentLinkedQueue<>();
+        this.running = true;
+        this.selectorThread = new Thread(this::serve, "dm-server-site-"+dataManager.getSiteId());
+        this.selectorThread.setDaemon(true);
+        this.selectorThread.start();
+        logger.info("Serving site {} on port {}", dataManager.getSiteId(), this.getPort());
+    }
+
+    public int getPort() {
+        return this.serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Stops accepting requests and drops every connection. The data manager itself is left open.
+     */
+    @Override
+    public void close() {
+        this.running = false;
+        this.selector.wakeup();
+        try {
+            this.selectorThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.workers.shutdownNow();
+    }
+
+    private void serve() {
+        try {
+            while (this.running) {
+                this.selector.select();
+                Connection connection;
+                while ((connection = this.pendingWrites.poll()) != null) {
+                    SelectionKey key = connection.channel.keyFor(this.selector);
+                    if (key != null && key.isValid())
+                        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                }
+                Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (key.isAcceptable())
+                            this.accept();
+                        if (key.isValid() && key.isReadable())
+                            this.read(key);
+                        if (key.isValid() && key.isWritable())
+                            this.write(key);
+                    } catch (EOFException e) {
+                        key.cancel();
+                        key.channel().close();
+                    } catch (IOException e) {
+                        logger.warn("Dropping connection to site {}: {}", this.dataManager.getSiteId(), e.getMessage());
+                        key.cancel();
+                        key.channel().close();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Server of site {} stopped", this.dataManager.getSiteId(), e);
+        } finally {
+            try {
+                for (SelectionKey key: this.selector.keys())
+                    key.channel().close();
+                this.selector.close();
+            } catch (IOException e) {
+                logger.warn("Unable to release server socket of site {}", this.dataManager.getSiteId());
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = this.serverChannel.accept();
+        if (channel == null)
+            return;
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.register(this.selector, SelectionKey.OP_READ, new Connection(channel));
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        while (true) {
+            if (connection.frameBuffer == null) {
+                if (connection.channel.read(connection.lengthBuffer) == -1)
+                    throw new EOFException();
+                if (connection.lengthBuffer.hasRemaining())
+                    return;
+                int frameLength = connection.lengthBuffer.flip().getInt();
+                connection.lengthBuffer.clear();
+                if (frameLength < MessageCodec.REQUEST_HEADER_BYTES || frameLength > MessageCodec.MAX_FRAME_BYTES)
+                    throw new IOException("Invalid frame length "+frameLength);
+                connection.frameBuffer = ByteBuffer.allocate(frameLength);
+            }
+            if (connection.channel.read(connection.frameBuffer) == -1)
+                throw new EOFException();
+            if (connection.frameBuffer.hasRemaining())
+                return;
+            byte[] frame = connection.frameBuffer.array();
+            connection.frameBuffer = null;
+            this.workers.execute(() -> this.respond(connection, frame));
+        }
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        ByteBuffer response;
+        while ((response = connection.outbound.peek()) != null) {
+            connection.channel.write(response);
+            if (response.hasRemaining())
+                return;
+            connection.outbound.poll();
+        }
+        key.interestOps(SelectionKey.OP_READ);
+        // A worker may have queued a response after the queue was found empty
+        if (!connection.outbound.isEmpty())
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+    private void respond(Connection connection, byte[] frame) {
+        ByteBuffer wrapped = ByteBuffer.wrap(frame);
+        int requestId = wrapped.getInt();
+        ByteBuffer response;
+        try {
+            MessageType messageType = MessageType.of(wrapped.get());
+            TimeManager.advanceTo(wrapped.getLong());
+            DataInputStream in = MessageCodec.payload(frame, MessageCodec.REQUEST_HEADER_BYTES);
+            response = this.handle(requestId, messageType, in);
+        } catch (Exception e) {
+            logger.warn("Request {} to site {} failed", requestId, this.dataManager.getSiteId(), e);
+            String message = e.getMessage() == null ? e.getClass().getName() : e.getMessage();
+            try {
+                response = MessageCodec.encodeResponse(requestId, MessageCodec.STATUS_ERROR, TimeManager.getTime(),
+                        out -> out.writeUTF(message));
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+        connection.outbound.add(response);
+        this.pendingWrites.add(connection);
+        this.selector.wakeup();
+    }
+
+    private ByteBuffer handle(int requestId, MessageType messageType, DataInputStream in) throws IOException {
+        MessageCodec.PayloadWriter payload;
+        switch (messageType) {
+            case GET_SITE_ID: {
+                int siteId = this.dataManager.getSiteId();
+                payload = out -> out.writeInt(siteId);
+                break;
+            }
+            case REGISTER_VARIABLE:
+                this.dataManager.registerVariable(in.readInt(), in.readInt());
+                payload = out -> {};
+                break;
+            case GET_MANAGED_VARIABLES: {
+                Set<Integer> variableIds = this.dataManager.getManagedVariableIds();
+                payload = out -> {
+                    out.writeInt(variableIds.size());
+                    for (int variableId: variableIds)
+                        out.writeInt(variableId);
+                };
+                break;
+            }
+            case READ: {
+                ReadOperation op = MessageCodec.readRead(in);
+                OptionalInt value = this.dataManager.read(op, in.readBoolean());
+                payload = out -> MessageCodec.writeOptionalInt(out, value);
+                break;
+            }
+            case READ_BATCH: {
+                int size = in.readInt();
+                List<ReadOperation> ops = new ArrayList<>(size);
+                boolean[] runConsistencyChecks = new boolean[size];
+                for (int i=0; i<size; i++) {
+                    ops.add(MessageCodec.readRead(in));
+                    runConsistencyChecks[i] = in.readBoolean();
+                }
+                List<OptionalInt> values = this.dataManager.read(ops, runConsistencyChecks);
+                payload = out -> {
+                    for (OptionalInt value: values)
+                        MessageCodec.writeOptionalInt(out, value);
+                };
+                break;
+            }
+            case READ_VERSION: {
+                Optional<VariableSnapshot> version = this.dataManager.readVersion(MessageCodec.readRead(in));
+                payload = out -> {
+                    out.writeBoolean(version.isPresent());
+                    if (version.isPresent()) {
+                        out.writeInt(version.get().getValue());
+                        out.writeLong(version.get().getCommitTimestamp());
+                    }
+                };
+                break;
+            }
+            case WRITE: {
+                boolean written = this.dataManager.write(MessageCodec.readWrite(in));
+                payload = out -> out.writeBoolean(written);
+                break;
+            }
+            case WRITE_BATCH: {
+                int size = in.readInt();
+                List<WriteOperation> ops = new ArrayList<>(size);
+                for (int i=0; i<size; i++)
+                    ops.add(MessageCodec.readWrite(in));
+                boolean written = this.dataManager.write(ops);
+                payload = out -> out.writeBoolean(written);
+                break;
+            }
+            case ABORT:
+                this.dataManager.abortTransaction(in.readLong());
+                payload = out -> {};
+                break;
+            case PRECOMMIT: {
+                boolean canCommit = this.dataManager.precommitTransaction(MessageCodec.readCommit(in));
+                payload = out -> out.writeBoolean(canCommit);
+                break;
+            }
+            case COMMIT: {
+                boolean committed = this.dataManager.commitTransaction(MessageCodec.readCommit(in));
+                payload = out -> out.writeBoolean(committed);
+                break;
+            }
+            case RESTORE: {
+                boolean restored = this.dataManager.restoreCommittedState();
+                payload = out -> out.writeBoolean(restored);
+                break;
+            }
+            case CHECKPOINT:
+                this.dataManager.checkpoint();
+                payload = out -> {};
+                break;
+            case CLOSE:
+                this.dataManager.close();
+                payload = out -> {};
+                break;
+            case ADVANCE_LOW_WATERMARK:
+                this.dataManager.advanceLowWatermark(in.readLong());
+                payload = out -> {};
+                break;
+            case GET_RETAINED_VERSIONS: {
+                long count = this.dataManager.getRetainedVersionCount();
+                payload = out -> out.writeLong(count);
+                break;
+            }
+            case GET_RECLAIMED_VERSIONS: {
+                long count = this.dataManager.getReclaimedVersionCount();
+                payload = out -> out.writeLong(count);
+                break;
+            }
+            case FAIL:
+                this.dataManager.fail();
+                payload = out -> {};
+                break;
+            case RECOVER:
+                this.dataManager.recover();
+                payload = out -> {};
+                break;
+            case RECOVER_FROM_PEERS: {
+                int size = in.readInt();
+                List<RemoteDataManager> peers = new ArrayList<>(size);
+                try {
+                    for (int i=0; i<size; i++)
+                        peers.add(new RemoteDataManager(in.readInt(), in.readUTF(), in.readInt()));
+                    this.dataManager.recover(new ArrayList<>(peers));
+                } finally {
+                    for (RemoteDataManager peer: peers)
+                        peer.disconnect();
+                }
+                payload = out -> {};
+                break;
+            }
+            case STREAM_VERSIONS: {
+                int size = in.readInt();
+                Map<Integer, Long> sinceTimestamps = new HashMap<>();
+                for (int i=0; i<size; i++)
+                    sinceTimestamps.put(in.readInt(), in.readLong());
+                List<DataEntry> versions = new ArrayList<>();
+                this.dataManager.streamCommittedVersions(sinceTimestamps, versions::addAll);
+                payload = out -> MessageCodec.writeDataEntries(out, versions);
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unsupported message type "+messageType);
+        }
+        return MessageCodec.encodeResponse(requestId, MessageCodec.STATUS_OK, TimeManager.getTime(), payload);
+    }
+
+    /**
+     * Runs a single site as its own process
+     * @param args Site id, port and optionally a data directory to make the site durable
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            logger.error("Arguments expected: <siteId> <port> [dataDirectory]");
+            System.exit(1);
+        }
+        int siteId = Integer.parseInt(args[0]);
+        DataManagerConfig config = args.length > 2 ?
+                DataManagerConfig.builder().durabilityMode(DurabilityMode.GROUP_COMMIT).dataDirectory(Path.of(args[2])).build() :
+                DataManagerConfig.defaults();
+        DataManager dataManager = new DataManagerImpl(siteId, config);
+        MetricsRegistry registry = new MetricsRegistryImpl();
+        dataManager.registerMetrics(registry);
+        JmxMetricsExporter.register(registry, "com.nyu.db:type=Metrics,site="+siteId);
+        DataManagerServer server = new DataManagerServer(dataManager, Integer.parseInt(args[1]));
+        server.selectorThread.join();
+    }
+}
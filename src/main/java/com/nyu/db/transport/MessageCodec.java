@@ -0,0 +1,164 @@
+package com.nyu.db.transport;
+
+import com.nyu.db.model.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalInt;
+
+/**
+ * Binary encoding of the messages exchanged with a data manager server, big endian throughout.
+ * A request frame is [int frameLength][int requestId][byte messageType][long senderClock][payload] and a response frame
+ * is [int frameLength][int requestId][byte status][long senderClock][payload], where frameLength counts the bytes after
+ * it and a failed request carries its error message as the payload. Both sides move their clock past the sender's on
+ * every frame, so timestamps handed out by either side stay ordered. Request ids let many requests share one connection
+ * and be answered out of order. Only the parts of a transaction a site looks at travel with an operation: its id, start
+ * timestamp and, for reads, its latest write to the variable read.
+ */
+final class MessageCodec {
+
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_ERROR = 1;
+    static final int REQUEST_HEADER_BYTES = 4 + 1 + 8; // After the frame length
+    static final int RESPONSE_HEADER_BYTES = 4 + 1 + 8;
+    static final int MAX_FRAME_BYTES = 64 * 1024 * 1024;
+
+    private static final byte NO_WRITE = 0;
+    private static final byte PENDING_WRITE = 1;
+    private static final byte EXECUTED_WRITE = 2;
+
+    private MessageCodec() {
+    }
+
+    /**
+     * Writes the body of a message
+     */
+    interface PayloadWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    static ByteBuffer encodeRequest(int requestId, MessageType messageType, long senderClock, PayloadWriter payload) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeInt(requestId);
+        out.writeByte(messageType.ordinal());
+        out.writeLong(senderClock);
+        payload.write(out);
+        return frame(bytes);
+    }
+
+    static ByteBuffer encodeResponse(int requestId, byte status, long senderClock, PayloadWriter payload) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeInt(requestId);
+        out.writeByte(status);
+        out.writeLong(senderClock);
+        payload.write(out);
+        return frame(bytes);
+    }
+
+    private static ByteBuffer frame(ByteArrayOutputStream bytes) {
+        ByteBuffer frame = ByteBuffer.wrap(bytes.toByteArray());
+        frame.putInt(0, frame.capacity() - 4);
+        return frame;
+    }
+
+    /**
+     * @param frame Frame without its length prefix
+     * @param headerBytes Header size, REQUEST_HEADER_BYTES or RESPONSE_HEADER_BYTES
+     * @return Stream over the payload of the frame
+     */
+    static DataInputStream payload(byte[] frame, int headerBytes) {
+        return new DataInputStream(new ByteArrayInputStream(frame, headerBytes, frame.length - headerBytes));
+    }
+
+    static void writeTransaction(DataOutputStream out, Transaction transaction) throws IOException {
+        out.writeLong(transaction.getTransactionId());
+        out.writeLong(transaction.getStartTimestamp());
+    }
+
+    static Transaction readTransaction(DataInputStream in) throws IOException {
+        return new Transaction(in.readLong(), in.readLong());
+    }
+
+    static void writeRead(DataOutputStream out, ReadOperation op) throws IOException {
+        writeTransaction(out, op.getTransaction());
+        out.writeInt(op.getVariableId());
+        // The site refuses reads of a variable whose latest write by the transaction happened while it was down
+        SymbolOperation latestWrite = op.getTransaction().getLatestWrite(op.getVariableId());
+        if (latestWrite == null) {
+            out.writeByte(NO_WRITE);
+        } else if (latestWrite.isExecuted()) {
+            out.writeByte(EXECUTED_WRITE);
+            out.writeLong(latestWrite.getExecutedTimestamp());
+        } else {
+            out.writeByte(PENDING_WRITE);
+        }
+    }
+
+    static ReadOperation readRead(DataInputStream in) throws IOException {
+        Transaction transaction = readTransaction(in);
+        int variableId = in.readInt();
+        byte latestWrite = in.readByte();
+        if (latestWrite != NO_WRITE) {
+            WriteOperation write = new WriteOperation(transaction, variableId, 0, transaction.getStartTimestamp());
+            if (latestWrite == EXECUTED_WRITE)
+                write.setExecutedTimestamp(in.readLong());
+            transaction.addOperation(write);
+        }
+        return new ReadOperation(transaction, variableId, transaction.getStartTimestamp());
+    }
+
+    static void writeWrite(DataOutputStream out, WriteOperation op) throws IOException {
+        writeTransaction(out, op.getTransaction());
+        out.writeInt(op.getVariableId());
+        out.writeInt(op.getValue());
+    }
+
+    static WriteOperation readWrite(DataInputStream in) throws IOException {
+        Transaction transaction = readTransaction(in);
+        return new WriteOperation(transaction, in.readInt(), in.readInt(), transaction.getStartTimestamp());
+    }
+
+    static void writeCommit(DataOutputStream out, CommitOperation op) throws IOException {
+        writeTransaction(out, op.getTransaction());
+        out.writeLong(op.getTransaction().getCommitTimestamp());
+    }
+
+    static CommitOperation readCommit(DataInputStream in) throws IOException {
+        Transaction transaction = readTransaction(in);
+        transaction.setCommitTimestamp(in.readLong());
+        return new CommitOperation(transaction, transaction.getStartTimestamp());
+    }
+
+    static void writeOptionalInt(DataOutputStream out, OptionalInt value) throws IOException {
+        out.writeBoolean(value.isPresent());
+        if (value.isPresent())
+            out.writeInt(value.getAsInt());
+    }
+
+    static OptionalInt readOptionalInt(DataInputStream in) throws IOException {
+        return in.readBoolean() ? OptionalInt.of(in.readInt()) : OptionalInt.empty();
+    }
+
+    static void writeDataEntries(DataOutputStream out, List<DataEntry> entries) throws IOException {
+        out.writeInt(entries.size());
+        for (DataEntry entry: entries) {
+            out.writeInt(entry.getVariableId());
+            out.writeInt(entry.getValue());
+            out.writeLong(entry.getCommitTimestamp());
+        }
+    }
+
+    static List<DataEntry> readDataEntries(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        List<DataEntry> entries = new ArrayList<>(size);
+        for (int i=0; i<size; i++)
+            entries.add(new DataEntry(in.readInt(), in.readInt(), in.readLong()));
+        return entries;
+    }
+}
@@ -0,0 +1,37 @@
+package com.nyu.db.transport;
+
+/**
+ * Requests understood by a data manager server, one per DataManager method. Encoded as the ordinal byte, so new
+ * types are only ever appended.
+ */
+enum MessageType {
+    GET_SITE_ID,
+    REGISTER_VARIABLE,
+    GET_MANAGED_VARIABLES,
+    READ,
+    READ_BATCH,
+    WRITE,
+    WRITE_BATCH,
+    ABORT,
+    PRECOMMIT,
+    COMMIT,
+    RESTORE,
+    CHECKPOINT,
+    CLOSE,
+    ADVANCE_LOW_WATERMARK,
+    GET_RETAINED_VERSIONS,
+    GET_RECLAIMED_VERSIONS,
+    FAIL,
+    RECOVER,
+    RECOVER_FROM_PEERS,
+    STREAM_VERSIONS,
+    READ_VERSION;
+
+    private static final MessageType[] VALUES = values();
+
+    static MessageType of(byte code) {
+        if (code < 0 || code >= VALUES.length)
+            throw new IllegalArgumentException("Unknown message type "+code);
+        return VALUES[code];
+    }
+}
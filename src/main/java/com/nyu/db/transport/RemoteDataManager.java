@@ -0,0 +1,438 @@
+package com.nyu.db.transport;
+
+import com.nyu.db.datamanager.DataManager;
+import com.nyu.db.metrics.MetricsRegistry;
+import com.nyu.db.model.*;
+import com.nyu.db.utils.TimeManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Data manager running in another process, reached through a DataManagerServer. Every call is sent over a single
+ * connection without waiting for earlier calls to finish, so concurrent callers (e.g. parallel commit fan-out) share
+ * the connection and are answered in whatever order the site completes them. Calls block the caller until their
+ * response arrives and fail with a RuntimeException if the site reports an error, the connection is lost or no
+ * response arrives within the response timeout. The call may still run on the site, so a timed out prepare counts as a
+ * no vote while a timed out commit leaves the decision standing and gets the site failed, to be brought back in line by
+ * recovery.
+ */
+public class RemoteDataManager implements DataManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(RemoteDataManager.class);
+    private static final int STREAM_CHUNK_SIZE = 1024;
+    public static final long DEFAULT_RESPONSE_TIMEOUT_MILLIS = 30_000;
+
+    private final int siteId;
+    private final String host;
+    private final int port;
+    private final long responseTimeoutMillis; // 0 to wait indefinitely
+    private final Socket socket;
+    private final DataOutputStream out; // Guarded by itself
+    private final Map<Integer, CompletableFuture<byte[]>> inFlight;
+    private final AtomicInteger nextRequestId;
+    private final LongAdder requestsSent;
+    private volatile boolean closed;
+
+    /**
+     * Connect to a site
+     * @param siteId Id of the site served at the address, checked against the server
+     * @param host Host of the server
+     * @param port Port of the server
+     */
+    public RemoteDataManager(int siteId, String host, int port) {
+        this(siteId, host, port, DEFAULT_RESPONSE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Connect to a site
+     * @param siteId Id of the site served at the address, checked against the server
+     * @param host Host of the server
+     * @param port Port of the server
+     * @param responseTimeoutMillis Time to wait for the response to each call before failing it, 0 to wait indefinitely
+     */
+    public RemoteDataManager(int siteId, String host, int port, long responseTimeoutMillis) {
+        if (responseTimeoutMillis < 0)
+            throw new IllegalArgumentException("Response timeout can't be negative: "+responseTimeoutMillis);
+        this.siteId = siteId;
+        this.host = host;
+        this.port = port;
+        this.responseTimeoutMillis = responseTimeoutMillis;
+        this.inFlight = new ConcurrentHashMap<>();
+        this.nextRequestId = new AtomicInteger();
+        this.requestsSent = new LongAdder();
+        try {
+            this.socket = new Socket();
+            this.socket.setTcpNoDelay(true);
+            this.socket.connect(new InetSocketAddress(host, port));
+            this.out = new DataOutputStream(new BufferedOutputStream(this.socket.getOutputStream()));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(this.socket.getInputStream()));
+            Thread reader = new Thread(() -> this.readResponses(in), "dm-client-site-"+siteId);
+            reader.setDaemon(true);
+            reader.start();
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to connect to site "+siteId+" at "+host+":"+port, e);
+        }
+        int remoteSiteId;
+        try {
+            DataInputStream response = this.call(MessageType.GET_SITE_ID, out -> {});
+            remoteSiteId = decode(response::readInt);
+        } catch (RuntimeException e) {
+            this.disconnect();
+            throw e;
+        }
+        if (remoteSiteId != siteId) {
+            this.disconnect();
+            throw new IllegalArgumentException("Expected site "+siteId+" at "+host+":"+port+", found site "+remoteSiteId);
+        }
+    }
+
+    public String getHost() {
+        return this.host;
+    }
+
+    public int getPort() {
+        return this.port;
+    }
+
+    /**
+     * Closes the connection without closing the remote site
+     */
+    public void disconnect() {
+        this.closed = true;
+        try {
+            this.socket.close();
+        } catch (IOException e) {
+            logger.warn("Unable to close connection to site {}", this.siteId);
+        }
+    }
+
+    /**
+     * Sends a request and waits for its response
+     * @return Payload of the response
+     */
+    private DataInputStream call(MessageType messageType, MessageCodec.PayloadWriter payload) {
+        if (this.closed)
+            throw new RuntimeException("Connection to site "+this.siteId+" is closed");
+        int requestId = this.nextRequestId.incrementAndGet();
+        CompletableFuture<byte[]> response = new CompletableFuture<>();
+        this.inFlight.put(requestId, response);
+        if (this.closed) {
+            // Connection was lost after the check above, the reader may already have failed every pending call
+            this.inFlight.remove(requestId);
+            throw new RuntimeException("Connection to site "+this.siteId+" is closed");
+        }
+        try {
+            ByteBuffer frame = MessageCodec.encodeRequest(requestId, messageType, TimeManager.getTime(), payload);
+            synchronized (this.out) {
+                this.out.write(frame.array(), 0, frame.limit());
+                this.out.flush();
+            }
+            this.requestsSent.increment();
+        } catch (IOException e) {
+            this.inFlight.remove(requestId);
+            throw new RuntimeException("Unable to send "+messageType+" to site "+this.siteId, e);
+        }
+
+        byte[] frame;
+        try {
+            frame = this.responseTimeoutMillis > 0 ?
+                    response.get(this.responseTimeoutMillis, TimeUnit.MILLISECONDS) : response.get();
+        } catch (TimeoutException e) {
+            // A late response finds no pending call and is dropped by the reader
+            this.inFlight.remove(requestId);
+            throw new RuntimeException("No response to "+messageType+" from site "+this.siteId+" within "
+                    +this.responseTimeoutMillis+" ms", e);
+        } catch (InterruptedException e) {
+            this.inFlight.remove(requestId);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for site "+this.siteId, e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(messageType+" to site "+this.siteId+" failed", e.getCause());
+        }
+        ByteBuffer header = ByteBuffer.wrap(frame);
+        header.getInt(); // Request id
+        byte status = header.get();
+        TimeManager.advanceTo(header.getLong());
+        DataInputStream in = MessageCodec.payload(frame, MessageCodec.RESPONSE_HEADER_BYTES);
+        if (status != MessageCodec.STATUS_OK) {
+            try {
+                throw new RuntimeException(messageType+" to site "+this.siteId+" failed: "+in.readUTF());
+            } catch (IOException e) {
+                throw new RuntimeException(messageType+" to site "+this.siteId+" failed", e);
+            }
+        }
+        return in;
+    }
+
+    private void readResponses(DataInputStream in) {
+        try {
+            while (true) {
+                int frameLength = in.readInt();
+                if (frameLength < MessageCodec.RESPONSE_HEADER_BYTES || frameLength > MessageCodec.MAX_FRAME_BYTES)
+                    throw new IOException("Invalid frame length "+frameLength);
+                byte[] frame = new byte[frameLength];
+                in.readFully(frame);
+                int requestId = ByteBuffer.wrap(frame).getInt();
+                CompletableFuture<byte[]> response = this.inFlight.remove(requestId);
+                if (response != null)
+                    response.complete(frame);
+                else
+                    logger.warn("Dropping response to request {} from site {}, its call timed out", requestId, this.siteId);
+            }
+        } catch (IOException e) {
+            if (!this.closed)
+                logger.error("Lost connection to site {}", this.siteId, e);
+            this.closed = true;
+            IOException cause = new EOFException("Connection to site "+this.siteId+" closed");
+            for (Integer requestId: this.inFlight.keySet()) {
+                CompletableFuture<byte[]> response = this.inFlight.remove(requestId);
+                if (response != null)
+                    response.completeExceptionally(cause);
+            }
+        }
+    }
+
+    private static <T> T decode(IOCall<T> decoder) {
+        try {
+            return decoder.call();
+        } catch (IOException e) {
+            throw new RuntimeException("Malformed response", e);
+        }
+    }
+
+    private interface IOCall<T> {
+        T call() throws IOException;
+    }
+
+    @Override
+    public void registerVariable(int variableId, int initValue) {
+        this.call(MessageType.REGISTER_VARIABLE, out -> {
+            out.writeInt(variableId);
+            out.writeInt(initValue);
+        });
+    }
+
+    @Override
+    public int getSiteId() {
+        return this.siteId;
+    }
+
+    @Override
+    public Set<Integer> getManagedVariableIds() {
+        DataInputStream in = this.call(MessageType.GET_MANAGED_VARIABLES, out -> {});
+        return decode(() -> {
+            int size = in.readInt();
+            Set<Integer> variableIds = new HashSet<>();
+            for (int i=0; i<size; i++)
+                variableIds.add(in.readInt());
+            return variableIds;
+        });
+    }
+
+    @Override
+    public OptionalInt read(ReadOperation op) {
+        return this.read(op, true);
+    }
+
+    @Override
+    public OptionalInt read(ReadOperation op, boolean runConsistencyChecks) {
+        DataInputStream in = this.call(MessageType.READ, out -> {
+            MessageCodec.writeRead(out, op);
+            out.writeBoolean(runConsistencyChecks);
+        });
+        return decode(() -> MessageCodec.readOptionalInt(in));
+    }
+
+    @Override
+    public Optional<VariableSnapshot> readVersion(ReadOperation op) {
+        DataInputStream in = this.call(MessageType.READ_VERSION, out -> MessageCodec.writeRead(out, op));
+        return decode(() -> in.readBoolean() ?
+                Optional.of(new VariableSnapshot(op.getVariableId(), in.readInt(), in.readLong())) : Optional.empty());
+    }
+
+    @Override
+    public boolean write(WriteOperation op) {
+        DataInputStream in = this.call(MessageType.WRITE, out -> MessageCodec.writeWrite(out, op));
+        return decode(in::readBoolean);
+    }
+
+    @Override
+    public List<OptionalInt> read(List<ReadOperation> ops, boolean[] runConsistencyChecks) {
+        DataInputStream in = this.call(MessageType.READ_BATCH, out -> {
+            out.writeInt(ops.size());
+            for (int i=0; i<ops.size(); i++) {
+                MessageCodec.writeRead(out, ops.get(i));
+                out.writeBoolean(runConsistencyChecks[i]);
+            }
+        });
+        return decode(() -> {
+            List<OptionalInt> values = new ArrayList<>(ops.size());
+            for (int i=0; i<ops.size(); i++)
+                values.add(MessageCodec.readOptionalInt(in));
+            return values;
+        });
+    }
+
+    @Override
+    public boolean write(List<WriteOperation> ops) {
+        DataInputStream in = this.call(MessageType.WRITE_BATCH, out -> {
+            out.writeInt(ops.size());
+            for (WriteOperation op: ops)
+                MessageCodec.writeWrite(out, op);
+        });
+        return decode(in::readBoolean);
+    }
+
+    @Override
+    public void abortTransaction(long transactionId) {
+        this.call(MessageType.ABORT, out -> out.writeLong(transactionId));
+    }
+
+    @Override
+    public boolean precommitTransaction(CommitOperation op) {
+        DataInputStream in = this.call(MessageType.PRECOMMIT, out -> MessageCodec.writeCommit(out, op));
+        return decode(in::readBoolean);
+    }
+
+    @Override
+    public boolean commitTransaction(CommitOperation op) {
+        DataInputStream in = this.call(MessageType.COMMIT, out -> MessageCodec.writeCommit(out, op));
+        boolean committed = decode(in::readBoolean);
+        if (committed)
+            op.setExecutedTimestamp(op.getTransaction().getCommitTimestamp());
+        return committed;
+    }
+
+    @Override
+    public boolean restoreCommittedState() {
+        DataInputStream in = this.call(MessageType.RESTORE, out -> {});
+        return decode(in::readBoolean);
+    }
+
+    @Override
+    public void checkpoint() {
+        this.call(MessageType.CHECKPOINT, out -> {});
+    }
+
+    /**
+     * Closes the remote site, then the connection
+     */
+    @Override
+    public void close() {
+        try {
+            this.call(MessageType.CLOSE, out -> {});
+        } finally {
+            this.disconnect();
+        }
+    }
+
+    @Override
+    public void advanceLowWatermark(long lowWatermark) {
+        this.call(MessageType.ADVANCE_LOW_WATERMARK, out -> out.writeLong(lowWatermark));
+    }
+
+    @Override
+    public long getRetainedVersionCount() {
+        DataInputStream in = this.call(MessageType.GET_RETAINED_VERSIONS, out -> {});
+        return decode(in::readLong);
+    }
+
+    @Override
+    public long getReclaimedVersionCount() {
+        DataInputStream in = this.call(MessageType.GET_RECLAIMED_VERSIONS, out -> {});
+        return decode(in::readLong);
+    }
+
+    /**
+     * Publishes the state of the connection. Site metrics stay with the server process, which exports its own.
+     */
+    @Override
+    public void registerMetrics(MetricsRegistry registry) {
+        String prefix = "site."+this.siteId+".";
+        registry.gauge(prefix+"rpc.requests", this.requestsSent::sum);
+        registry.gauge(prefix+"rpc.inflight", () -> this.inFlight.size());
+    }
+
+    @Override
+    public void fail() {
+        this.call(MessageType.FAIL, out -> {});
+    }
+
+    @Override
+    public void recover() {
+        this.call(MessageType.RECOVER, out -> {});
+    }
+
+    /**
+     * Recovers the remote site from its peers. The site connects to the peers itself, so every peer has to be a
+     * remote data manager as well.
+     */
+    @Override
+    public void recover(List<DataManager> peers) {
+        for (DataManager peer: peers) {
+            if (!(peer instanceof RemoteDataManager))
+                throw new UnsupportedOperationException("Site "+this.siteId+" can only catch up from remote peers, site "+peer.getSiteId()+" is local");
+        }
+        this.call(MessageType.RECOVER_FROM_PEERS, out -> {
+            out.writeInt(peers.size());
+            for (DataManager peer: peers) {
+                RemoteDataManager remotePeer = (RemoteDataManager) peer;
+                out.writeInt(remotePeer.getSiteId());
+                out.writeUTF(remotePeer.getHost());
+                out.writeInt(remotePeer.getPort());
+            }
+        });
+    }
+
+    @Override
+    public void streamCommittedVersions(Map<Integer, Long> sinceTimestamps, Consumer<List<DataEntry>> consumer) {
+        DataInputStream in = this.call(MessageType.STREAM_VERSIONS, out -> {
+            out.writeInt(sinceTimestamps.size());
+            for (Map.Entry<Integer, Long> since: sinceTimestamps.entrySet()) {
+                out.writeInt(since.getKey());
+                out.writeLong(since.getValue());
+            }
+        });
+        List<DataEntry> versions = decode(() -> MessageCodec.readDataEntries(in));
+        for (int from=0; from<versions.size(); from+=STREAM_CHUNK_SIZE)
+            consumer.accept(versions.subList(from, Math.min(from + STREAM_CHUNK_SIZE, versions.size())));
+    }
+
+    /**
+     * Prints the latest committed values of the remote site, in the same format as a local site
+     */
+    @Override
+    public void printCommittedState() {
+        Map<Integer, Long> sinceTimestamps = new HashMap<>();
+        for (int variableId: this.getManagedVariableIds())
+            sinceTimestamps.put(variableId, -1L);
+        // Versions come oldest first, so the last one seen for a variable is its latest
+        Map<Integer, Integer> latestValues = new TreeMap<>();
+        this.streamCommittedVersions(sinceTimestamps, chunk -> {
+            for (DataEntry version: chunk)
+                latestValues.put(version.getVariableId(), version.getValue());
+        });
+        int v = 0;
+        for (Map.Entry<Integer, Integer> latest: latestValues.entrySet()) {
+            if (++v == latestValues.size())
+                System.out.printf("x%d: %d", latest.getKey(), latest.getValue());
+            else
+                System.out.printf("x%d: %d, ", latest.getKey(), latest.getValue());
+        }
+        System.out.println();
+    }
+}
@@ -0,0 +1,158 @@
+package com.nyu.db.utils;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from primitive int keys to primitive int values, avoids boxing on hot paths
+ */
+public class IntIntMap {
+
+    private static final int EMPTY = Integer.MIN_VALUE; // Reserved key marking a free slot
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+
+    /**
+     * Functional interface to visit each entry of the map
+     */
+    public interface IntIntConsumer {
+        void accept(int key, int value);
+    }
+
+    public IntIntMap() {
+        this(8);
+    }
+
+    public IntIntMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        this.keys = new int[capacity];
+        this.values = new int[capacity];
+        Arrays.fill(this.keys, EMPTY);
+        this.size = 0;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public boolean containsKey(int key) {
+        return this.keys[this.indexOf(key)] != EMPTY;
+    }
+
+    /**
+     * Get value stored against a key
+     * @param key Key, must not be Integer.MIN_VALUE
+     * @param defaultValue Value returned if the key is absent
+     * @return Value for the key, defaultValue if absent
+     */
+    public int get(int key, int defaultValue) {
+        int index = this.indexOf(key);
+        return this.keys[index] == EMPTY ? defaultValue : this.values[index];
+    }
+
+    /**
+     * Store a value against a key, replacing any existing value
+     * @param key Key, must not be Integer.MIN_VALUE
+     * @param value Value
+     */
+    public void put(int key, int value) {
+        if (key == EMPTY)
+            throw new IllegalArgumentException("Key "+key+" is reserved");
+        int index = this.indexOf(key);
+        if (this.keys[index] == EMPTY) {
+            if (this.size + 1 > this.keys.length * LOAD_FACTOR) {
+                this.resize();
+                index = this.indexOf(key);
+            }
+            this.keys[index] = key;
+            this.size++;
+        }
+        this.values[index] = value;
+    }
+
+    /**
+     * Remove a key, shifting back the entries that follow it in its probe sequence
+     * @param key Key
+     * @param defaultValue Value returned if the key is absent
+     * @return Value that was stored against the key, defaultValue if absent
+     */
+    public int remove(int key, int defaultValue) {
+        int mask = this.keys.length - 1;
+        int gap = this.indexOf(key);
+        if (this.keys[gap] == EMPTY)
+            return defaultValue;
+        int removed = this.values[gap];
+        for (int next = (gap + 1) & mask; this.keys[next] != EMPTY; next = (next + 1) & mask) {
+            int home = mix(this.keys[next]) & mask;
+            // The entry can fill the gap unless its home lies between the gap and its current position
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                this.keys[gap] = this.keys[next];
+                this.values[gap] = this.values[next];
+                gap = next;
+            }
+        }
+        this.keys[gap] = EMPTY;
+        this.size--;
+        return removed;
+    }
+
+    public void clear() {
+        Arrays.fill(this.keys, EMPTY);
+        this.size = 0;
+    }
+
+    public void forEach(IntIntConsumer consumer) {
+        for (int i=0; i<this.keys.length; i++) {
+            if (this.keys[i] != EMPTY)
+                consumer.accept(this.keys[i], this.values[i]);
+        }
+    }
+
+    /**
+     * Get all keys of the map
+     * @return Array of keys in no particular order
+     */
+    public int[] keys() {
+        int[] result = new int[this.size];
+        int j = 0;
+        for (int key: this.keys) {
+            if (key != EMPTY)
+                result[j++] = key;
+        }
+        return result;
+    }
+
+    private int indexOf(int key) {
+        int mask = this.keys.length - 1;
+        int index = mix(key) & mask;
+        while (this.keys[index] != EMPTY && this.keys[index] != key)
+            index = (index + 1) & mask;
+        return index;
+    }
+
+    private void resize() {
+        int[] oldKeys = this.keys;
+        int[] oldValues = this.values;
+        this.keys = new int[oldKeys.length << 1];
+        this.values = new int[oldValues.length << 1];
+        Arrays.fill(this.keys, EMPTY);
+        for (int i=0; i<oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int index = this.indexOf(oldKeys[i]);
+                this.keys[index] = oldKeys[i];
+                this.values[index] = oldValues[i];
+            }
+        }
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
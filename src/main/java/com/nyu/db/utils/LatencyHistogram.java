@@ -0,0 +1,97 @@
+package com.nyu.db.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative durations. Values below 16 get a bucket each, larger values are split into
+ * powers of two with 16 linear sub-buckets each, so a percentile is accurate to within 1/16 of its magnitude while
+ * the histogram stays a fixed 960 counters.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int NUM_BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts;
+    private final LongAdder count;
+    private final LongAdder sum;
+    private final AtomicLong max;
+
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(NUM_BUCKETS);
+        this.count = new LongAdder();
+        this.sum = new LongAdder();
+        this.max = new AtomicLong(0);
+    }
+
+    /**
+     * Record a value, negative values are recorded as 0
+     * @param value Value, e.g. a latency in nanoseconds
+     */
+    public void record(long value) {
+        value = Math.max(value, 0);
+        this.counts.incrementAndGet(bucketOf(value));
+        this.count.increment();
+        this.sum.add(value);
+        this.max.accumulateAndGet(value, Math::max);
+    }
+
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    public long getMax() {
+        return this.max.get();
+    }
+
+    public double getMean() {
+        long count = this.getCount();
+        return count == 0 ? 0 : (double) this.sum.sum() / count;
+    }
+
+    /**
+     * Get the value below which the given fraction of recorded values fall
+     * @param percentile Percentile in [0, 100]
+     * @return Upper bound of the bucket holding the percentile, never above the maximum recorded value. 0 if empty.
+     */
+    public long getPercentile(double percentile) {
+        long count = this.getCount();
+        if (count == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int bucket=0; bucket<NUM_BUCKETS; bucket++) {
+            seen += this.counts.get(bucket);
+            if (seen >= rank)
+                return Math.min(upperBoundOf(bucket), this.getMax());
+        }
+        return this.getMax();
+    }
+
+    public void reset() {
+        for (int bucket=0; bucket<NUM_BUCKETS; bucket++)
+            this.counts.set(bucket, 0);
+        this.count.reset();
+        this.sum.reset();
+        this.max.set(0);
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int magnitude = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long lowerBound = (long) (SUB_BUCKETS | (bucket % SUB_BUCKETS)) << (magnitude - SUB_BUCKET_BITS);
+        return lowerBound + (1L << (magnitude - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,71 @@
+package com.nyu.db.utils;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Fixed set of read-write locks shared by int keys, so that keys hashing to different stripes never contend
+ */
+public class StripedLock {
+
+    private final ReadWriteLock[] stripes;
+
+    public StripedLock(int numStripes) {
+        int size = Integer.highestOneBit(Math.max(1, numStripes) * 2 - 1);
+        this.stripes = new ReadWriteLock[size];
+        for (int i=0; i<size; i++)
+            this.stripes[i] = new ReentrantReadWriteLock();
+    }
+
+    public int stripeOf(int key) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (this.stripes.length - 1);
+    }
+
+    public ReadWriteLock get(int key) {
+        return this.stripes[this.stripeOf(key)];
+    }
+
+    /**
+     * Acquire the write locks of all stripes covering the keys. Stripes are always taken in ascending order so that
+     * two callers locking overlapping key sets can't deadlock.
+     * @param keys Keys to lock
+     * @return Stripes that were locked, to be passed to unlockAll
+     */
+    public int[] lockAll(int[] keys) {
+        int[] indexes = this.stripesOf(keys);
+        for (int index: indexes)
+            this.stripes[index].writeLock().lock();
+        return indexes;
+    }
+
+    public void unlockAll(int[] stripeIndexes) {
+        for (int i=stripeIndexes.length-1; i>=0; i--)
+            this.stripes[stripeIndexes[i]].writeLock().unlock();
+    }
+
+    /**
+     * Acquire the read locks of all stripes covering the keys, in the same ascending order as lockAll
+     * @param keys Keys to lock
+     * @return Stripes that were locked, to be passed to readUnlockAll
+     */
+    public int[] readLockAll(int[] keys) {
+        int[] indexes = this.stripesOf(keys);
+        for (int index: indexes)
+            this.stripes[index].readLock().lock();
+        return indexes;
+    }
+
+    public void readUnlockAll(int[] stripeIndexes) {
+        for (int i=stripeIndexes.length-1; i>=0; i--)
+            this.stripes[stripeIndexes[i]].readLock().unlock();
+    }
+
+    private int[] stripesOf(int[] keys) {
+        int[] indexes = new int[keys.length];
+        for (int i=0; i<keys.length; i++)
+            indexes[i] = this.stripeOf(keys[i]);
+        return Arrays.stream(indexes).sorted().distinct().toArray();
+    }
+}
@@ -1,18 +1,26 @@
 package com.nyu.db.utils;
 
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
- * Class to get current timestamp
+ * Class to get current timestamp. Acts as the timestamp oracle, safe to use from many threads.
  */
 public class TimeManager {
-    private static long time = 0;
+    private static final AtomicLong time = new AtomicLong(0);
 
     public static long getTime() {
-        return TimeManager.time;
+        return TimeManager.time.get();
     }
 
     public static long incrementTime() {
-        TimeManager.time += 1;
-        return TimeManager.time;
+        return TimeManager.time.incrementAndGet();
+    }
+
+    /**
+     * Moves the clock forward to at least the given time, e.g. past commits restored from disk
+     */
+    public static long advanceTo(long timestamp) {
+        return TimeManager.time.accumulateAndGet(timestamp, Math::max);
     }
 }
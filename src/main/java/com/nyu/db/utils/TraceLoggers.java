@@ -0,0 +1,21 @@
+package com.nyu.db.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loggers of the protocol trace, the transcript of reads, writes, commits, aborts and site failures that the
+ * simulation prints. They live under the "trace" logger hierarchy, apart from the diagnostic class loggers, so the
+ * trace can be routed, made asynchronous or switched off on its own.
+ */
+public final class TraceLoggers {
+
+    public static final String ROOT = "trace";
+
+    private TraceLoggers() {
+    }
+
+    public static Logger get(Class<?> clazz) {
+        return LoggerFactory.getLogger(ROOT + "." + clazz.getName());
+    }
+}
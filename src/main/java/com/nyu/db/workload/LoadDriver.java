@@ -0,0 +1,246 @@
+package com.nyu.db.workload;
+
+import com.nyu.db.client.ClientSession;
+import com.nyu.db.client.TransactionAbortedException;
+import com.nyu.db.client.impl.ClientSessionImpl;
+import com.nyu.db.datamanager.DataManager;
+import com.nyu.db.datamanager.impl.DataManagerImpl;
+import com.nyu.db.metrics.impl.JmxMetricsExporter;
+import com.nyu.db.model.AbortReason;
+import com.nyu.db.model.Transaction;
+import com.nyu.db.model.TransactionStatus;
+import com.nyu.db.placement.PlacementScheme;
+import com.nyu.db.transactionmanager.TransactionManager;
+import com.nyu.db.transactionmanager.TransactionManagerConfig;
+import com.nyu.db.transactionmanager.impl.TransactionManagerImpl;
+import com.nyu.db.utils.TraceLoggers;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a synthetic workload against a fresh database. Each client thread runs one transaction at a time through a
+ * client session, picking variables from a Zipfian distribution. With a target rate, transactions are scheduled at
+ * fixed intervals per client and a client that falls behind starts its next transaction immediately. Site failures
+ * are injected at the configured rate and every failed site recovers after the recovery delay. The operation timeout
+ * is a client knob bounding how long a client waits on one operation before it gives up on the transaction, which is
+ * reported as timed out rather than as an abort.
+ */
+public class LoadDriver {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadDriver.class);
+    private static final String JMX_NAME = "com.nyu.db:type=Metrics,component=transactionManager";
+
+    private final WorkloadConfig config;
+    private final TransactionManager transactionManager;
+    private final ZipfianGenerator variableGenerator;
+    private WorkloadReport report;
+    private volatile boolean injectingFailures;
+
+    public LoadDriver(WorkloadConfig config) {
+        this(config, createTransactionManager(config));
+    }
+
+    public LoadDriver(WorkloadConfig config, TransactionManager transactionManager) {
+        this.config = config;
+        this.transactionManager = transactionManager;
+        this.variableGenerator = new ZipfianGenerator(config.getNumVariables(), config.getZipfSkew());
+    }
+
+    private static TransactionManager createTransactionManager(WorkloadConfig config) {
+        List<DataManager> dataManagers = new ArrayList<>();
+        for (int siteId=1; siteId<=config.getNumSites(); siteId++) {
+            dataManagers.add(new DataManagerImpl(siteId));
+        }
+        config.getPlacement().create(config.getNumSites(), config.getNumVariables(), config.getReplicationFactor())
+                .registerVariables(dataManagers, config.getNumVariables(), variableId -> variableId*10);
+        return new TransactionManagerImpl(dataManagers, TransactionManagerConfig.builder().concurrent(true).build());
+    }
+
+    /**
+     * Run the workload for the configured duration
+     * @return Committed throughput, aborts by cause and commit latencies of the run
+     */
+    public WorkloadReport run() {
+        this.report = new WorkloadReport();
+        SplittableRandom random = new SplittableRandom(this.config.getSeed());
+        ExecutorService clients = Executors.newFixedThreadPool(this.config.getClients(), runnable -> new Thread(runnable, "load-client"));
+        ScheduledExecutorService failureInjector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "failure-injector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Set<Integer> downSites = new HashSet<>(); // Only touched by the failure injector thread
+        ObjectName metricsName = this.config.isExportJmx() ?
+                JmxMetricsExporter.register(this.transactionManager.getMetricsRegistry(), JMX_NAME) : null;
+
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(this.config.getDurationMillis());
+        this.injectingFailures = this.config.getFailureRate() > 0;
+        if (this.injectingFailures) {
+            SplittableRandom failureRandom = random.split();
+            long periodNanos = (long) (1e9 / this.config.getFailureRate());
+            failureInjector.scheduleAtFixedRate(() -> this.injectFailure(failureRandom, downSites, failureInjector),
+                    periodNanos, periodNanos, TimeUnit.NANOSECONDS);
+        }
+
+        List<Future<?>> results = new ArrayList<>();
+        for (int client=0; client<this.config.getClients(); client++) {
+            SplittableRandom clientRandom = random.split();
+            int clientIndex = client;
+            results.add(clients.submit(() -> this.runClient(clientIndex, clientRandom, start, deadline)));
+        }
+        try {
+            // Stop failing sites once the run is over, so that transactions waiting for a site can finish
+            long remaining = deadline - System.nanoTime();
+            if (remaining > 0)
+                TimeUnit.NANOSECONDS.sleep(remaining);
+            this.injectingFailures = false;
+            for (Future<?> result: results)
+                result.get();
+            this.report.setElapsedNanos(System.nanoTime() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for clients", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Client failed", e.getCause());
+        } finally {
+            clients.shutdownNow();
+            failureInjector.shutdownNow();
+            for (int siteId: downSites)
+                this.transactionManager.recover(siteId);
+            if (metricsName != null)
+                JmxMetricsExporter.unregister(metricsName);
+        }
+        return this.report;
+    }
+
+    private void injectFailure(SplittableRandom random, Set<Integer> downSites, ScheduledExecutorService failureInjector) {
+        if (!this.injectingFailures || downSites.size() >= this.config.getMaxDownSites())
+            return;
+        int siteId = 1 + random.nextInt(this.config.getNumSites());
+        if (!downSites.add(siteId))
+            return;
+        this.transactionManager.fail(siteId);
+        this.report.recordSiteFailure();
+        failureInjector.schedule(() -> {
+            this.transactionManager.recover(siteId);
+            downSites.remove(siteId);
+        }, this.config.getRecoveryDelayMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void runClient(int clientIndex, SplittableRandom random, long start, long deadline) {
+        ClientSession session = new ClientSessionImpl(this.transactionManager, Runnable::run);
+        long intervalNanos = this.config.getTargetRate() > 0 ? (long) (1e9 * this.config.getClients() / this.config.getTargetRate()) : 0;
+        // Spread the clients' schedules over one interval so they don't all start together
+        long scheduledStart = start + intervalNanos * clientIndex / this.config.getClients();
+        while (scheduledStart < deadline) {
+            long now = System.nanoTime();
+            if (intervalNanos == 0)
+                scheduledStart = now;
+            else if (scheduledStart > now)
+                LockSupport.parkNanos(scheduledStart - now);
+            this.runTransaction(session, random, scheduledStart);
+            scheduledStart += intervalNanos;
+        }
+    }
+
+    private void runTransaction(ClientSession session, SplittableRandom random, long scheduledStart) {
+        boolean readOnly = this.config.getReadOnlyRatio() > 0 && random.nextDouble() < this.config.getReadOnlyRatio();
+        Transaction transaction = readOnly ? session.beginReadOnly() : session.begin();
+        boolean timedOut = false;
+        try {
+            // A site failure can abort the transaction between operations, stop issuing them once it has
+            for (int i=0; i<this.config.getTransactionLength() && transaction.getStatus() == TransactionStatus.ACTIVE; i++) {
+                int variableId = 1 + this.variableGenerator.next(random);
+                CompletableFuture<?> result = readOnly || random.nextDouble() < this.config.getReadRatio() ?
+                        session.read(variableId) : session.write(variableId, random.nextInt(1_000_000));
+                try {
+                    result.get(this.config.getOperationTimeoutMillis(), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    // Stop waiting, the operation is still pending so the commit below aborts the transaction
+                    timedOut = true;
+                    break;
+                }
+            }
+            if (transaction.getStatus() == TransactionStatus.ACTIVE && session.commit().join()) {
+                this.report.recordCommit(System.nanoTime() - scheduledStart);
+                return;
+            }
+        } catch (ExecutionException e) {
+            if (!(e.getCause() instanceof TransactionAbortedException))
+                throw new RuntimeException("Operation of T"+transaction.getTransactionId()+" failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for T"+transaction.getTransactionId(), e);
+        }
+        if (timedOut) {
+            this.report.recordTimeout();
+            return;
+        }
+        AbortReason abortReason = transaction.getAbortReason();
+        this.report.recordAbort(abortReason == null ? AbortReason.UNSERVED_OPERATION : abortReason);
+    }
+
+    /**
+     * Runs a workload and logs its report. Arguments are optional key=value pairs naming WorkloadConfig fields, e.g.
+     * numSites=10 zipfSkew=0.99 targetRate=5000 failureRate=2
+     */
+    public static void main(String[] args) {
+        WorkloadConfig.WorkloadConfigBuilder builder = WorkloadConfig.builder();
+        for (String arg: args) {
+            String[] keyValue = arg.split("=", 2);
+            if (keyValue.length != 2) {
+                logger.error("Expected key=value argument, got {}", arg);
+                System.exit(1);
+            }
+            String value = keyValue[1].trim();
+            switch (keyValue[0].trim()) {
+                case "numSites" -> builder.numSites(Integer.parseInt(value));
+                case "numVariables" -> builder.numVariables(Integer.parseInt(value));
+                case "readRatio" -> builder.readRatio(Double.parseDouble(value));
+                case "readOnlyRatio" -> builder.readOnlyRatio(Double.parseDouble(value));
+                case "zipfSkew" -> builder.zipfSkew(Double.parseDouble(value));
+                case "transactionLength" -> builder.transactionLength(Integer.parseInt(value));
+                case "clients" -> builder.clients(Integer.parseInt(value));
+                case "targetRate" -> builder.targetRate(Double.parseDouble(value));
+                case "durationMillis" -> builder.durationMillis(Long.parseLong(value));
+                case "failureRate" -> builder.failureRate(Double.parseDouble(value));
+                case "recoveryDelayMillis" -> builder.recoveryDelayMillis(Long.parseLong(value));
+                case "operationTimeoutMillis" -> builder.operationTimeoutMillis(Long.parseLong(value));
+                case "maxDownSites" -> builder.maxDownSites(Integer.parseInt(value));
+                case "placement" -> builder.placement(PlacementScheme.valueOf(value.toUpperCase()));
+                case "replicationFactor" -> builder.replicationFactor(Integer.parseInt(value));
+                case "seed" -> builder.seed(Long.parseLong(value));
+                case "exportJmx" -> builder.exportJmx(Boolean.parseBoolean(value));
+                default -> {
+                    logger.error("Unknown workload parameter {}", keyValue[0]);
+                    System.exit(1);
+                }
+            }
+        }
+        // The per-operation protocol trace would dominate the run
+        Configurator.setLevel(TraceLoggers.ROOT, Level.OFF);
+        LoadDriver driver = new LoadDriver(builder.build());
+        WorkloadReport report = driver.run();
+        driver.transactionManager.close();
+        logger.info(report.toString());
+    }
+}
@@ -0,0 +1,109 @@
+package com.nyu.db.workload;
+
+import com.nyu.db.placement.PlacementScheme;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Shape of a synthetic workload and the database it runs against
+ */
+@Getter
+@Builder
+public class WorkloadConfig {
+
+    @Builder.Default
+    private final int numSites = 10;
+
+    @Builder.Default
+    private final int numVariables = 20;
+
+    /**
+     * How variables are placed on sites. LEGACY uses the layout of the simulation: odd variables live on a single
+     * site, even variables are replicated on every site.
+     */
+    @Builder.Default
+    private final PlacementScheme placement = PlacementScheme.LEGACY;
+
+    /**
+     * Number of copies of each variable under HASH or RANGE placement
+     */
+    @Builder.Default
+    private final int replicationFactor = 3;
+
+    /**
+     * Fraction of operations that are reads, the rest are writes
+     */
+    @Builder.Default
+    private final double readRatio = 0.8;
+
+    /**
+     * Fraction of transactions begun read-only, they issue only reads. The rest follow readRatio.
+     */
+    @Builder.Default
+    private final double readOnlyRatio = 0;
+
+    /**
+     * Zipfian skew of variable accesses, 0 picks variables uniformly. Variable 1 is the hottest.
+     */
+    @Builder.Default
+    private final double zipfSkew = 0.99;
+
+    /**
+     * Number of reads and writes in each transaction
+     */
+    @Builder.Default
+    private final int transactionLength = 4;
+
+    /**
+     * Number of client threads, each running one transaction at a time
+     */
+    @Builder.Default
+    private final int clients = 4;
+
+    /**
+     * Transactions started per second across all clients, 0 to run every client as fast as it can
+     */
+    @Builder.Default
+    private final double targetRate = 0;
+
+    @Builder.Default
+    private final long durationMillis = 10_000;
+
+    /**
+     * Site failures injected per second, 0 to never fail a site
+     */
+    @Builder.Default
+    private final double failureRate = 0;
+
+    /**
+     * How long a failed site stays down before it recovers
+     */
+    @Builder.Default
+    private final long recoveryDelayMillis = 100;
+
+    /**
+     * Most sites that are down at the same time
+     */
+    @Builder.Default
+    private final int maxDownSites = 1;
+
+    /**
+     * How long a client waits for a single operation, e.g. one parked on a failed site, before it gives up on the
+     * transaction. Waiting operations complete or abort once their site recovers, so this only cuts short slow runs.
+     */
+    @Builder.Default
+    private final long operationTimeoutMillis = 1_000;
+
+    @Builder.Default
+    private final long seed = 42;
+
+    /**
+     * Whether to publish the transaction manager's metrics over JMX while the workload runs
+     */
+    @Builder.Default
+    private final boolean exportJmx = false;
+
+    public static WorkloadConfig defaults() {
+        return WorkloadConfig.builder().build();
+    }
+}
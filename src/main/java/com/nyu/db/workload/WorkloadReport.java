@@ -0,0 +1,119 @@
+package com.nyu.db.workload;
+
+import com.nyu.db.model.AbortReason;
+import com.nyu.db.utils.LatencyHistogram;
+import lombok.Getter;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Outcome of a load run. Latencies are of committed transactions, measured from the time each transaction was
+ * scheduled to start, so time spent queued behind a slow transaction of the same client is included. Transactions a
+ * client gave up on after an operation timed out are counted apart from the aborts.
+ */
+public class WorkloadReport {
+
+    private final LongAdder committed;
+    private final AtomicLongArray aborts; // Indexed by AbortReason ordinal
+    private final LongAdder timedOut;
+    @Getter
+    private final LatencyHistogram latency;
+    private final LongAdder siteFailures;
+    @Getter
+    private long elapsedNanos;
+
+    WorkloadReport() {
+        this.committed = new LongAdder();
+        this.aborts = new AtomicLongArray(AbortReason.values().length);
+        this.timedOut = new LongAdder();
+        this.latency = new LatencyHistogram();
+        this.siteFailures = new LongAdder();
+    }
+
+    void recordCommit(long latencyNanos) {
+        this.committed.increment();
+        this.latency.record(latencyNanos);
+    }
+
+    void recordAbort(AbortReason abortReason) {
+        this.aborts.incrementAndGet(abortReason.ordinal());
+    }
+
+    void recordTimeout() {
+        this.timedOut.increment();
+    }
+
+    void recordSiteFailure() {
+        this.siteFailures.increment();
+    }
+
+    void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getCommitted() {
+        return this.committed.sum();
+    }
+
+    public long getAborted(AbortReason abortReason) {
+        return this.aborts.get(abortReason.ordinal());
+    }
+
+    public long getAborted() {
+        long aborted = 0;
+        for (int i=0; i<this.aborts.length(); i++)
+            aborted += this.aborts.get(i);
+        return aborted;
+    }
+
+    public long getTimedOut() {
+        return this.timedOut.sum();
+    }
+
+    public long getSiteFailures() {
+        return this.siteFailures.sum();
+    }
+
+    public double getCommittedPerSecond() {
+        return this.elapsedNanos == 0 ? 0 : this.getCommitted() * 1e9 / this.elapsedNanos;
+    }
+
+    /**
+     * @return Fraction of finished transactions that aborted for the given reason
+     */
+    public double getAbortRate(AbortReason abortReason) {
+        long finished = this.getCommitted() + this.getAborted() + this.getTimedOut();
+        return finished == 0 ? 0 : (double) this.getAborted(abortReason) / finished;
+    }
+
+    public Map<AbortReason, Long> getAbortsByReason() {
+        Map<AbortReason, Long> abortsByReason = new EnumMap<>(AbortReason.class);
+        for (AbortReason abortReason: AbortReason.values())
+            abortsByReason.put(abortReason, this.getAborted(abortReason));
+        return abortsByReason;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Ran for %.1fs, %d committed (%.1f tps), %d aborted, %d timed out, %d site failures injected%n",
+                this.elapsedNanos / 1e9, this.getCommitted(), this.getCommittedPerSecond(), this.getAborted(),
+                this.getTimedOut(), this.getSiteFailures()));
+        for (AbortReason abortReason: AbortReason.values()) {
+            sb.append(String.format("  aborts %-20s %8d (%.2f%%)%n", abortReason, this.getAborted(abortReason),
+                    100 * this.getAbortRate(abortReason)));
+        }
+        sb.append(String.format("  commit latency us: mean %.1f, p50 %d, p90 %d, p99 %d, p99.9 %d, max %d",
+                this.latency.getMean() / 1e3, micros(this.latency.getPercentile(50)), micros(this.latency.getPercentile(90)),
+                micros(this.latency.getPercentile(99)), micros(this.latency.getPercentile(99.9)), micros(this.latency.getMax())));
+        return sb.toString();
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
@@ -0,0 +1,41 @@
+package com.nyu.db.workload;
+
+import java.util.SplittableRandom;
+
+/**
+ * Draws ranks in [0, n) where rank i is picked with probability proportional to 1/(i+1)^skew. The cumulative
+ * distribution is precomputed, so each draw is a binary search. Immutable, callers pass their own random source.
+ */
+public class ZipfianGenerator {
+
+    private final double[] cumulativeProbabilities;
+
+    public ZipfianGenerator(int n, double skew) {
+        if (n <= 0)
+            throw new IllegalArgumentException("Number of items has to be positive, got "+n);
+        if (skew < 0)
+            throw new IllegalArgumentException("Skew can't be negative, got "+skew);
+        this.cumulativeProbabilities = new double[n];
+        double total = 0;
+        for (int i=0; i<n; i++) {
+            total += 1 / Math.pow(i + 1, skew);
+            this.cumulativeProbabilities[i] = total;
+        }
+        for (int i=0; i<n; i++)
+            this.cumulativeProbabilities[i] /= total;
+    }
+
+    public int next(SplittableRandom random) {
+        double u = random.nextDouble();
+        int lo = 0;
+        int hi = this.cumulativeProbabilities.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (this.cumulativeProbabilities[mid] <= u)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+}
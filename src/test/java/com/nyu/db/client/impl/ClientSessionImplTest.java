@@ -0,0 +1,100 @@
+package com.nyu.db.client.impl;
+
+import com.nyu.db.client.ClientSession;
+import com.nyu.db.client.TransactionAbortedException;
+import com.nyu.db.datamanager.DataManager;
+import com.nyu.db.datamanager.impl.DataManagerImpl;
+import com.nyu.db.transactionmanager.TransactionManager;
+import com.nyu.db.transactionmanager.impl.TransactionManagerImpl;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ClientSessionImplTest {
+
+    private TransactionManager createTransactionManager() {
+        List<DataManager> dataManagers = new ArrayList<>();
+        for (int siteId=1; siteId<=2; siteId++)
+            dataManagers.add(new DataManagerImpl(siteId));
+        dataManagers.get(0).registerVariable(1, 10);
+        dataManagers.get(1).registerVariable(3, 30);
+        return new TransactionManagerImpl(dataManagers);
+    }
+
+    @Test
+    public void waitingReadCompletesOnRecovery() throws Exception {
+        TransactionManager tm = this.createTransactionManager();
+        tm.fail(1);
+        List<CompletableFuture<Integer>> reads = new ArrayList<>();
+        for (int i=0; i<1000; i++) {
+            ClientSession session = new ClientSessionImpl(tm, Runnable::run);
+            session.begin();
+            reads.add(session.read(1));
+        }
+        assertTrue(reads.stream().noneMatch(CompletableFuture::isDone));
+
+        tm.recover(1);
+        for (CompletableFuture<Integer> read: reads)
+            assertEquals(10, read.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void waitingReadFailsWhenNoRecoveredSiteServesIt() {
+        List<DataManager> dataManagers = new ArrayList<>();
+        for (int siteId=1; siteId<=2; siteId++) {
+            DataManager dm = new DataManagerImpl(siteId);
+            dm.registerVariable(2, 20);
+            dataManagers.add(dm);
+        }
+        TransactionManager tm = new TransactionManagerImpl(dataManagers);
+        tm.fail(1);
+        tm.fail(2);
+        ClientSession session = new ClientSessionImpl(tm, Runnable::run);
+        session.begin();
+        CompletableFuture<Integer> read = session.read(2);
+
+        // Both replicas were down since x2 was last committed, so neither may serve the read once recovered
+        tm.recover(1);
+        assertFalse(read.isDone());
+        tm.recover(2);
+        ExecutionException e = assertThrows(ExecutionException.class, () -> read.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(TransactionAbortedException.class, e.getCause());
+    }
+
+    @Test
+    public void waitingWriteCompletesOnRecovery() throws Exception {
+        TransactionManager tm = this.createTransactionManager();
+        ClientSession session = new ClientSessionImpl(tm, Runnable::run);
+        session.begin();
+        tm.fail(2);
+        CompletableFuture<Boolean> write = session.write(3, 31);
+        assertFalse(write.isDone());
+
+        tm.recover(2);
+        assertTrue(write.get(10, TimeUnit.SECONDS));
+        assertTrue(session.commit().get(10, TimeUnit.SECONDS));
+        ClientSession reader = new ClientSessionImpl(tm, Runnable::run);
+        reader.begin();
+        assertEquals(31, reader.read(3).get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void waitingWriteFailsWhenTransactionAborts() {
+        TransactionManager tm = this.createTransactionManager();
+        ClientSession session = new ClientSessionImpl(tm, Runnable::run);
+        session.begin();
+        tm.fail(2);
+        CompletableFuture<Boolean> write = session.write(3, 31);
+        assertFalse(write.isDone());
+
+        assertFalse(session.commit().join());
+        ExecutionException e = assertThrows(ExecutionException.class, write::get);
+        assertInstanceOf(TransactionAbortedException.class, e.getCause());
+    }
+}
@@ -0,0 +1,81 @@
+package com.nyu.db.datamanager.databuffer.impl;
+
+import com.nyu.db.datamanager.StorageException;
+import com.nyu.db.datamanager.persistentstoremanager.impl.PersistentStoreManagerImpl;
+import com.nyu.db.model.DataEntry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DataBufferImplTest {
+
+    @TempDir
+    Path dataDirectory;
+
+    @Test
+    public void evictsUnreferencedFramesAndWritesBackDirtyOnes() {
+        PersistentStoreManagerImpl store = new PersistentStoreManagerImpl(this.dataDirectory.resolve("site-1.dat"));
+        DataBufferImpl buffer = new DataBufferImpl(4, store);
+        for (int variableId=1; variableId<=4; variableId++)
+            buffer.write(new DataEntry(variableId, variableId * 10, variableId));
+        assertEquals(4, buffer.getAllData(Long.MAX_VALUE).size());
+        buffer.clearUptoTimestamp(2);
+        assertEquals(2, buffer.getAllData(Long.MAX_VALUE).size());
+
+        // A full sweep clears every reference bit, x1 is evicted and x2 becomes the next victim unless it is used
+        buffer.write(new DataEntry(5, 50, 5));
+        assertEquals(1, buffer.getEvictionCount());
+        assertEquals(20, buffer.read(2, 10).get().getValue());
+        buffer.write(new DataEntry(6, 60, 6));
+        buffer.write(new DataEntry(7, 70, 7));
+        assertEquals(3, buffer.getEvictionCount());
+        assertEquals(1, buffer.getHitCount());
+
+        // x3 and x4 were dirty and got written back, x1 was clean and was never persisted
+        assertEquals(30, store.read(3, 10).get().getValue());
+        assertEquals(40, store.read(4, 10).get().getValue());
+        assertTrue(store.read(1, 10).isEmpty());
+        assertEquals(40, buffer.read(4, 10).get().getValue());
+        assertEquals(1, buffer.getMissCount());
+        assertTrue(buffer.read(4, 3).isEmpty());
+        store.close();
+    }
+
+    @Test
+    public void keepsDirtyFramesThatFailTheirWriteBack() {
+        Set<Integer> unwritable = new HashSet<>();
+        PersistentStoreManagerImpl store = new PersistentStoreManagerImpl(this.dataDirectory.resolve("site-1.dat")) {
+            @Override
+            public boolean write(List<DataEntry> data) {
+                return data.stream().noneMatch(entry -> unwritable.contains(entry.getVariableId())) && super.write(data);
+            }
+        };
+        DataBufferImpl buffer = new DataBufferImpl(2, store);
+        buffer.write(new DataEntry(1, 10, 1));
+        buffer.write(new DataEntry(2, 20, 2));
+
+        // x1 is the first victim but can't be written back, x2 goes instead
+        unwritable.add(1);
+        buffer.write(new DataEntry(3, 30, 3));
+        assertEquals(1, buffer.getEvictionCount());
+        assertEquals(20, store.read(2, 10).get().getValue());
+        assertEquals(10, buffer.read(1, 10).get().getValue());
+        assertEquals(0, buffer.getMissCount());
+
+        // Neither x1 nor x3 can be written back, so no frame is left for x2
+        unwritable.add(3);
+        assertThrows(StorageException.class, () -> buffer.read(2, 10));
+        assertEquals(10, buffer.read(1, 10).get().getValue());
+        assertEquals(30, buffer.read(3, 10).get().getValue());
+        assertEquals(2, buffer.getAllData(Long.MAX_VALUE).size());
+        store.close();
+    }
+}
@@ -0,0 +1,110 @@
+package com.nyu.db.datamanager.impl;
+
+import com.nyu.db.datamanager.DataManagerConfig;
+import com.nyu.db.datamanager.DurabilityMode;
+import com.nyu.db.model.CommitOperation;
+import com.nyu.db.model.ReadOperation;
+import com.nyu.db.model.Transaction;
+import com.nyu.db.model.WriteOperation;
+import com.nyu.db.utils.TimeManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DataManagerImplTest {
+
+    private static final int NUM_VARIABLES = 100;
+
+    @TempDir
+    Path dataDirectory;
+
+    private long nextTransactionId = 1;
+
+    @Test
+    public void restartRestoresCheckpointAndLogTail() throws Exception {
+        DataManagerConfig config = DataManagerConfig.builder()
+                .durabilityMode(DurabilityMode.GROUP_COMMIT)
+                .dataDirectory(this.dataDirectory)
+                .build();
+        DataManagerImpl dataManager = this.newDataManager(config);
+        for (int round=1; round<=5; round++) {
+            for (int variableId=1; variableId<=NUM_VARIABLES; variableId+=round)
+                this.commitWrite(dataManager, variableId, round * 1000 + variableId);
+        }
+        dataManager.checkpoint();
+        assertEquals(0, Files.size(this.dataDirectory.resolve("site-1.wal")));
+        this.commitWrite(dataManager, 7, -7);
+        this.commitWrite(dataManager, 8, -8);
+        dataManager.close();
+
+        DataManagerImpl restarted = this.newDataManager(config);
+        assertTrue(restarted.restoreCommittedState());
+        assertEquals(-7, this.readLatest(restarted, 7));
+        assertEquals(-8, this.readLatest(restarted, 8));
+        assertEquals(5000 + 11, this.readLatest(restarted, 11));
+        assertEquals(2000 + 3, this.readLatest(restarted, 3));
+        assertEquals(3000 + 100, this.readLatest(restarted, 100));
+        assertEquals(NUM_VARIABLES, restarted.getRetainedVersionCount());
+        restarted.close();
+    }
+
+    @Test
+    public void bufferPoolSpillsColdVariables() throws Exception {
+        DataManagerConfig config = DataManagerConfig.builder()
+                .durabilityMode(DurabilityMode.GROUP_COMMIT)
+                .dataDirectory(this.dataDirectory)
+                .bufferCapacity(10)
+                .build();
+        DataManagerImpl dataManager = this.newDataManager(config);
+        for (int variableId=1; variableId<=NUM_VARIABLES; variableId++)
+            this.commitWrite(dataManager, variableId, -variableId);
+        dataManager.advanceLowWatermark(TimeManager.getTime());
+        dataManager.checkpoint();
+        assertTrue(dataManager.getDataBuffer().getEvictionCount() >= NUM_VARIABLES - 10);
+
+        for (int variableId=1; variableId<=NUM_VARIABLES; variableId++)
+            assertEquals(-variableId, this.readLatest(dataManager, variableId));
+        for (int i=0; i<5; i++)
+            assertEquals(-3, this.readLatest(dataManager, 3));
+        assertEquals(4, dataManager.getDataBuffer().getHitCount());
+        this.commitWrite(dataManager, 3, 33);
+        assertEquals(33, this.readLatest(dataManager, 3));
+        dataManager.close();
+
+        DataManagerImpl restarted = this.newDataManager(config);
+        assertTrue(restarted.restoreCommittedState());
+        assertEquals(33, this.readLatest(restarted, 3));
+        assertEquals(-50, this.readLatest(restarted, 50));
+        restarted.close();
+    }
+
+    private DataManagerImpl newDataManager(DataManagerConfig config) {
+        DataManagerImpl dataManager = new DataManagerImpl(1, config);
+        for (int variableId=1; variableId<=NUM_VARIABLES; variableId++)
+            dataManager.registerVariable(variableId, variableId * 10);
+        return dataManager;
+    }
+
+    private void commitWrite(DataManagerImpl dataManager, int variableId, int value) {
+        Transaction transaction = new Transaction(this.nextTransactionId++);
+        WriteOperation write = new WriteOperation(transaction, variableId, value, TimeManager.getTime());
+        transaction.addOperation(write);
+        dataManager.write(write);
+        write.setExecutedTimestamp(TimeManager.getTime());
+        CommitOperation commit = new CommitOperation(transaction, TimeManager.getTime());
+        assertTrue(dataManager.precommitTransaction(commit));
+        transaction.setCommitTimestamp(TimeManager.incrementTime());
+        dataManager.commitTransaction(commit);
+    }
+
+    private int readLatest(DataManagerImpl dataManager, int variableId) {
+        TimeManager.incrementTime();
+        ReadOperation read = new ReadOperation(new Transaction(this.nextTransactionId++), variableId, TimeManager.getTime());
+        return dataManager.read(read, false).getAsInt();
+    }
+}
@@ -0,0 +1,54 @@
+package com.nyu.db.datamanager.impl;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DowntimeHistoryTest {
+
+    @Test
+    public void answersAvailabilityChecksAcrossManyFailures() {
+        DowntimeHistory history = DowntimeHistory.EMPTY;
+        // Down in [10k, 10k+5) for k = 1..1000
+        for (long k=1; k<=1000; k++)
+            history = history.withFailure(10*k).withRecovery(10*k + 5);
+        assertEquals(1000, history.size());
+        assertFalse(history.isDown());
+
+        assertTrue(history.wentDownBetween(0, 10));
+        assertTrue(history.wentDownBetween(5000, 5000));
+        assertFalse(history.wentDownBetween(5001, 5009));
+        assertFalse(history.wentDownBetween(10001, 20000));
+
+        assertTrue(history.wasDownAt(5003));
+        assertFalse(history.wasDownAt(5000)); // Window bounds don't count
+        assertFalse(history.wasDownAt(5005));
+        assertFalse(history.wasDownAt(5007));
+
+        DowntimeHistory down = history.withFailure(20000);
+        assertTrue(down.isDown());
+        assertSame(down, down.withFailure(20001));
+        assertFalse(down.wasDownAt(20003)); // Only windows the site recovered from refuse reads
+        assertTrue(down.wentDownBetween(15000, 20000));
+        assertEquals(1000, down.withoutLastFailure().size());
+    }
+
+    @Test
+    public void trimmingKeepsAnswersForTimestampsPastTheWatermark() {
+        DowntimeHistory history = DowntimeHistory.EMPTY;
+        for (long k=1; k<=100; k++)
+            history = history.withFailure(10*k).withRecovery(10*k + 5);
+        DowntimeHistory trimmed = history.trimmedBefore(503);
+        // Window [500, 505) is still open at the watermark, so it stays
+        assertEquals(51, trimmed.size());
+        assertTrue(trimmed.wasDownAt(504));
+        assertTrue(trimmed.wentDownBetween(0, 503));
+        assertTrue(trimmed.wentDownBetween(490, 503));
+        assertFalse(trimmed.wentDownBetween(496, 499));
+        assertSame(trimmed, trimmed.trimmedBefore(503));
+        for (long from=0; from<=1100; from+=7) {
+            assertEquals(history.wentDownBetween(from, 1100), trimmed.wentDownBetween(from, 1100));
+            assertEquals(history.wasDownAt(from + 503), trimmed.wasDownAt(from + 503));
+        }
+    }
+}
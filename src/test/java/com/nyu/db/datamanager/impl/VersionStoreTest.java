@@ -0,0 +1,61 @@
+package com.nyu.db.datamanager.impl;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class VersionStoreTest {
+
+    @Test
+    public void readsVersionVisibleAtTimestamp() {
+        VersionStore store = new VersionStore();
+        store.register(4, 40, 0);
+        int slot = store.slotOf(4);
+        for (int t=1; t<=10; t++)
+            assertEquals(0, store.append(slot, 40 + t, t * 10L, 0));
+
+        assertEquals(11, store.getVersionCount(slot));
+        assertEquals(40, store.getValue(slot, store.versionAt(slot, 9)));
+        assertEquals(43, store.getValue(slot, store.versionAt(slot, 30)));
+        assertEquals(45, store.getValue(slot, store.versionAt(slot, 59)));
+        assertEquals(50, store.getValue(slot, store.versionAt(slot, 1000)));
+    }
+
+    @Test
+    public void reclaimsVersionsBelowLowWatermark() {
+        VersionStore store = new VersionStore();
+        for (int v=1; v<=100; v++)
+            store.register(v, v * 10, 0);
+        int slot = store.slotOf(77);
+        store.append(slot, 1, 10, 5);
+        store.append(slot, 2, 20, 5);
+        assertEquals(3, store.getVersionCount(slot));
+
+        // Versions committed at 0 and 10 are hidden by the one at 20 for transactions starting from 25
+        assertEquals(2, store.append(slot, 3, 30, 25));
+        assertEquals(2, store.getVersionCount(slot));
+        assertEquals(2, store.getValue(slot, store.versionAt(slot, 25)));
+        assertEquals(3, store.getValue(slot, store.versionAt(slot, 30)));
+
+        assertEquals(2, store.append(slot, 4, 40, 40));
+        assertEquals(1, store.getVersionCount(slot));
+        assertEquals(4, store.getLatestValue(slot));
+        assertEquals(760, store.getLatestValue(store.slotOf(76)));
+    }
+
+    @Test
+    public void removedSlotsAreReused() {
+        VersionStore store = new VersionStore();
+        for (int v=1; v<=1000; v++)
+            store.register(v, v, 0);
+        for (int v=1; v<=1000; v+=3)
+            assertEquals(1, store.remove(v));
+        assertEquals(666, store.variableCount());
+        for (int v=1; v<=1000; v++)
+            assertEquals(v % 3 == 1 ? -1 : v, store.slotOf(v) == -1 ? -1 : store.getLatestValue(store.slotOf(v)));
+
+        store.register(5000, 7, 0);
+        assertEquals(1000, store.size());
+        assertEquals(7, store.getLatestValue(store.slotOf(5000)));
+    }
+}
@@ -0,0 +1,245 @@
+package com.nyu.db.datamanager.logmanager.impl;
+
+import com.nyu.db.datamanager.DurabilityMode;
+import com.nyu.db.model.LogEntry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LogManagerImplTest {
+
+    private static final int NUM_THREADS = 8;
+    private static final int COMMITS_PER_THREAD = 200;
+
+    @TempDir
+    Path dataDirectory;
+
+    @Test
+    public void concurrentGroupCommitsAreReplayedAfterReopen() throws InterruptedException {
+        Path logFile = this.dataDirectory.resolve("site-1.wal");
+        LogManagerImpl logManager = new LogManagerImpl(logFile, DurabilityMode.GROUP_COMMIT, 10);
+        List<Thread> threads = new ArrayList<>();
+        for (int t=0; t<NUM_THREADS; t++) {
+            int thread = t;
+            threads.add(new Thread(() -> {
+                for (int i=0; i<COMMITS_PER_THREAD; i++) {
+                    long lsn = logManager.pushToBuffer(new LogEntry(thread, i, new int[]{thread, i}, new int[]{i, thread}));
+                    logManager.flushUpTo(lsn);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread: threads)
+            thread.join();
+        logManager.close();
+
+        List<LogEntry> replayed = new ArrayList<>();
+        LogManagerImpl reopened = new LogManagerImpl(logFile, DurabilityMode.GROUP_COMMIT, 10);
+        assertTrue(reopened.recover(replayed::add));
+        assertEquals(NUM_THREADS * COMMITS_PER_THREAD, replayed.size());
+        // Entries of one thread are replayed in the order they were committed
+        long[] nextCommit = new long[NUM_THREADS];
+        for (LogEntry entry: replayed) {
+            int thread = (int) entry.getTransactionId();
+            assertEquals(nextCommit[thread]++, entry.getCommitTimestamp());
+            assertArrayEquals(new int[]{thread, (int) entry.getCommitTimestamp()}, entry.getVariableIds());
+        }
+        reopened.close();
+    }
+
+    @Test
+    public void tornTailIsDiscardedAndTruncateEmptiesLog() throws IOException {
+        Path logFile = this.dataDirectory.resolve("site-2.wal");
+        LogManagerImpl logManager = new LogManagerImpl(logFile, DurabilityMode.GROUP_COMMIT, 10);
+        logManager.flushUpTo(logManager.pushToBuffer(new LogEntry(1, 1, new int[]{2}, new int[]{20})));
+        logManager.flushUpTo(logManager.pushToBuffer(new LogEntry(2, 2, new int[]{4}, new int[]{40})));
+        logManager.close();
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 24, 1, 2, 3}));
+        }
+
+        List<LogEntry> replayed = new ArrayList<>();
+        LogManagerImpl reopened = new LogManagerImpl(logFile, DurabilityMode.GROUP_COMMIT, 10);
+        assertTrue(reopened.recover(replayed::add));
+        assertEquals(2, replayed.size());
+        reopened.flushUpTo(reopened.pushToBuffer(new LogEntry(3, 3, new int[]{6}, new int[]{60})));
+        replayed.clear();
+        assertTrue(reopened.recover(replayed::add));
+        assertEquals(3, replayed.size());
+        assertEquals(3, replayed.get(2).getTransactionId());
+
+        reopened.truncate();
+        reopened.flushUpTo(reopened.pushToBuffer(new LogEntry(4, 4, new int[]{8}, new int[]{80})));
+        replayed.clear();
+        assertTrue(reopened.recover(replayed::add));
+        assertEquals(1, replayed.size());
+        assertEquals(4, replayed.get(0).getTransactionId());
+        reopened.close();
+    }
+
+    @Test
+    public void failedWriteIsNeverReplayed() throws IOException {
+        Path logFile = this.dataDirectory.resolve("site-3.wal");
+        FailingChannel channel = new FailingChannel(FileChannel.open(logFile, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE));
+        LogManagerImpl logManager = new LogManagerImpl(logFile, channel, DurabilityMode.GROUP_COMMIT, 10);
+        assertTrue(logManager.flushUpTo(logManager.pushToBuffer(new LogEntry(1, 1, new int[]{2}, new int[]{20}))));
+        channel.failWrites = true;
+        long secondLsn = logManager.pushToBuffer(new LogEntry(2, 2, new int[]{4}, new int[]{40}));
+        assertFalse(logManager.flushUpTo(secondLsn));
+
+        // The next entry takes the place of the failed one, which stays failed once the log moves past it
+        channel.failWrites = false;
+        long thirdLsn = logManager.pushToBuffer(new LogEntry(3, 3, new int[]{6}, new int[]{60}));
+        assertTrue(logManager.flushUpTo(thirdLsn));
+        assertFalse(logManager.flushUpTo(secondLsn));
+        logManager.close();
+
+        List<LogEntry> replayed = new ArrayList<>();
+        LogManagerImpl reopened = new LogManagerImpl(logFile, DurabilityMode.GROUP_COMMIT, 10);
+        assertTrue(reopened.recover(replayed::add));
+        assertEquals(2, replayed.size());
+        assertEquals(1, replayed.get(0).getTransactionId());
+        assertEquals(3, replayed.get(1).getTransactionId());
+        reopened.close();
+
+        // A garbage length prefix ends the log instead of failing the replay
+        try (FileChannel append = FileChannel.open(logFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            append.write(ByteBuffer.wrap(new byte[]{(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xF0, 1, 2}));
+        }
+        replayed.clear();
+        reopened = new LogManagerImpl(logFile, DurabilityMode.GROUP_COMMIT, 10);
+        assertTrue(reopened.recover(replayed::add));
+        assertEquals(2, replayed.size());
+        reopened.close();
+    }
+
+    /**
+     * File channel that fails writes on demand, after writing half of the bytes as a crash or a full disk would
+     */
+    private static class FailingChannel extends FileChannel {
+        private final FileChannel delegate;
+        private volatile boolean failWrites;
+
+        private FailingChannel(FileChannel delegate) {
+            this.delegate = delegate;
+        }
+
+        private void checkWrite() throws IOException {
+            if (this.failWrites)
+                throw new IOException("Injected write failure");
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return this.delegate.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return this.delegate.read(dsts, offset, length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            this.checkWrite();
+            return this.delegate.write(src);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            this.checkWrite();
+            return this.delegate.write(srcs, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return this.delegate.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            this.delegate.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return this.delegate.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            this.delegate.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            this.delegate.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return this.delegate.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            this.checkWrite();
+            return this.delegate.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return this.delegate.read(dst, position);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            if (this.failWrites) {
+                ByteBuffer half = src.duplicate();
+                half.limit(half.position() + half.remaining() / 2);
+                this.delegate.write(half, position);
+                this.checkWrite();
+            }
+            return this.delegate.write(src, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return this.delegate.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return this.delegate.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return this.delegate.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            this.delegate.close();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.nyu.db.datamanager.persistentstoremanager.impl;
+
+import com.nyu.db.model.DataEntry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PersistentStoreManagerImplTest {
+
+    @TempDir
+    Path dataDirectory;
+
+    @Test
+    public void tornRecordIsLeftToTheLog() throws Exception {
+        Path storeFile = this.dataDirectory.resolve("site-1.dat");
+        PersistentStoreManagerImpl store = new PersistentStoreManagerImpl(storeFile);
+        List<DataEntry> data = new ArrayList<>();
+        for (int variableId=1; variableId<=300; variableId++)
+            data.add(new DataEntry(variableId, variableId * 10, 1));
+        assertTrue(store.write(data));
+        store.close();
+
+        // Half of an update of x256 reached the disk before a crash, its record is the last one of the first page
+        try (RandomAccessFile file = new RandomAccessFile(storeFile.toFile(), "rw")) {
+            file.seek(16 + 255 * 32 + 4);
+            file.writeInt(42);
+        }
+
+        store = new PersistentStoreManagerImpl(storeFile);
+        assertTrue(store.read(256, Long.MAX_VALUE).isEmpty());
+        assertEquals(2550, store.read(255, Long.MAX_VALUE).get().getValue());
+        assertEquals(299, store.getAllData().size());
+
+        // Replaying x256 from the log gives it a fresh record that survives a restart
+        assertTrue(store.write(List.of(new DataEntry(256, 2560, 1))));
+        store.close();
+        store = new PersistentStoreManagerImpl(storeFile);
+        assertEquals(2560, store.read(256, Long.MAX_VALUE).get().getValue());
+        assertEquals(300, store.getAllData().size());
+        store.close();
+    }
+}
@@ -0,0 +1,91 @@
+package com.nyu.db.metrics.impl;
+
+import com.nyu.db.datamanager.DataManager;
+import com.nyu.db.datamanager.impl.DataManagerImpl;
+import com.nyu.db.metrics.MetricsRegistry;
+import com.nyu.db.model.CommitOperation;
+import com.nyu.db.model.ReadOperation;
+import com.nyu.db.model.Transaction;
+import com.nyu.db.model.WriteOperation;
+import com.nyu.db.transactionmanager.TransactionManager;
+import com.nyu.db.transactionmanager.TransactionManagerConfig;
+import com.nyu.db.transactionmanager.impl.TransactionManagerImpl;
+import com.nyu.db.utils.TimeManager;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsRegistryImplTest {
+
+    @Test
+    public void sitesAndTransactionManagerPublishMetrics() {
+        MetricsRegistry registry = new MetricsRegistryImpl();
+        DataManager site1 = new DataManagerImpl(1);
+        DataManager site2 = new DataManagerImpl(2);
+        site1.registerVariable(2, 20);
+        site2.registerVariable(2, 20);
+        TransactionManager tm = new TransactionManagerImpl(List.of(site1, site2),
+                TransactionManagerConfig.builder().concurrent(true).metricsRegistry(registry).build());
+
+        // T1 and T2 both write x2, T2 commits second and loses to first committer wins
+        Transaction t1 = tm.createTransaction(1);
+        Transaction t2 = tm.createTransaction(2);
+        for (Transaction t: List.of(t1, t2)) {
+            WriteOperation write = new WriteOperation(t, 2, (int) t.getTransactionId(), TimeManager.getTime());
+            t.addOperation(write);
+            tm.write(write);
+        }
+        assertTrue(tm.commitTransaction(new CommitOperation(t1, TimeManager.getTime())));
+        assertFalse(tm.commitTransaction(new CommitOperation(t2, TimeManager.getTime())));
+
+        Transaction t3 = tm.createTransaction(3);
+        ReadOperation read = new ReadOperation(t3, 2, TimeManager.getTime());
+        t3.addOperation(read);
+        assertEquals(1, tm.read(read).getAsInt());
+        tm.fail(1);
+        tm.fail(2);
+        ReadOperation waitingRead = new ReadOperation(t3, 2, TimeManager.getTime());
+        t3.addOperation(waitingRead);
+        assertTrue(tm.read(waitingRead).isEmpty());
+
+        Map<String, Number> snapshot = registry.snapshot();
+        assertEquals(1L, snapshot.get("transactions.committed"));
+        assertEquals(1L, snapshot.get("transactions.aborted.FIRST_COMMITTER_WINS"));
+        assertEquals(2L, snapshot.get("commit.latencyNanos.count"));
+        assertEquals(1L, snapshot.get("serializationGraph.validationNanos.count"));
+        assertEquals(2L, snapshot.get("site.1.writes"));
+        assertEquals(1L, snapshot.get("site.1.commits"));
+        assertEquals(1L, snapshot.get("site.1.aborts.firstCommitterWins"));
+        assertEquals(1L, snapshot.get("site.1.reads.served"));
+        assertEquals(2L, snapshot.get("site.1.versions.longestChain"));
+        assertEquals(1L, snapshot.get("site.1.waitingOperations"));
+        assertEquals(1L, snapshot.get("site.2.waitingOperations"));
+    }
+
+    @Test
+    public void jmxExporterPublishesSnapshot() throws Exception {
+        MetricsRegistry registry = new MetricsRegistryImpl();
+        registry.counter("transactions.committed").add(3);
+        registry.histogram("commit.latencyNanos").record(1000);
+        registry.gauge("serializationGraph.size", () -> 7);
+        assertThrows(IllegalArgumentException.class, () -> registry.histogram("transactions.committed"));
+
+        ObjectName name = JmxMetricsExporter.register(registry, "com.nyu.db:type=Metrics,name=test");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            assertEquals(3L, server.getAttribute(name, "transactions.committed"));
+            assertEquals(7L, server.getAttribute(name, "serializationGraph.size"));
+            assertEquals(1000L, server.getAttribute(name, "commit.latencyNanos.max"));
+            registry.counter("transactions.committed").increment();
+            assertEquals(4L, server.getAttribute(name, "transactions.committed"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.nyu.db.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransactionTest {
+
+    @Test
+    public void indexesTrackOperationsAsTheyAreAdded() {
+        Transaction t = new Transaction(1, 0);
+        int numOperations = 20_000;
+        for (int i=0; i<numOperations; i++) {
+            int variableId = i % 10 + 1;
+            t.addOperation(i % 2 == 0 ? new WriteOperation(t, variableId, i, i) : new ReadOperation(t, variableId, i));
+        }
+        assertEquals(numOperations, t.getPendingOperations());
+        int[] writeSet = t.getWriteSet();
+        Arrays.sort(writeSet);
+        assertArrayEquals(new int[]{1, 3, 5, 7, 9}, writeSet);
+        assertEquals(5, t.getReadSet().length);
+        assertEquals(numOperations - 10, ((WriteOperation) t.getLatestWrite(1)).getValue());
+        assertNull(t.getLatestWrite(2));
+
+        for (SymbolOperation op: t.getOperations()) {
+            op.setExecutedTimestamp(1);
+            op.setExecutedTimestamp(2); // Executing again, e.g. on commit, doesn't count twice
+        }
+        assertEquals(0, t.getPendingOperations());
+
+        WriteOperation executed = new WriteOperation(t, 1, 0, 0);
+        executed.setExecutedTimestamp(3);
+        t.addOperation(executed);
+        assertEquals(0, t.getPendingOperations());
+        assertSame(executed, t.getLatestWrite(1));
+        assertThrows(UnsupportedOperationException.class, () -> t.getOperations().add(executed));
+    }
+
+    @Test
+    public void latestWriteIsVisibleOnlyOnceAdded() throws InterruptedException {
+        Transaction t = new Transaction(1, 0);
+        int numWrites = 100_000;
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread lookups = new Thread(() -> {
+            try {
+                int lastValue = -1;
+                while (lastValue < numWrites - 1) {
+                    WriteOperation latestWrite = (WriteOperation) t.getLatestWrite(1);
+                    if (latestWrite == null)
+                        continue;
+                    assertTrue(latestWrite.getValue() >= lastValue);
+                    lastValue = latestWrite.getValue();
+                }
+            } catch (Throwable e) {
+                error.set(e);
+            }
+        });
+        lookups.start();
+        for (int i=0; i<numWrites; i++)
+            t.addOperation(new WriteOperation(t, 1, i, i));
+        lookups.join(10_000);
+        assertFalse(lookups.isAlive());
+        assertNull(error.get());
+    }
+}
@@ -0,0 +1,42 @@
+package com.nyu.db.placement.impl;
+
+import com.nyu.db.placement.PlacementPolicy;
+import com.nyu.db.placement.PlacementScheme;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PlacementPolicyTest {
+
+    @Test
+    public void legacyPlacementMatchesSimulationLayout() {
+        PlacementPolicy policy = new LegacyPlacementPolicy(10);
+        assertArrayEquals(new int[]{2}, policy.getSites(1));
+        assertArrayEquals(new int[]{10}, policy.getSites(19));
+        assertEquals(10, policy.getSites(4).length);
+    }
+
+    @Test
+    public void partitionedPlacementKeepsReplicationFactorAndSpreadsLoad() {
+        int numSites = 10;
+        int numVariables = 100_000;
+        for (PlacementScheme scheme: new PlacementScheme[]{PlacementScheme.HASH, PlacementScheme.RANGE}) {
+            PlacementPolicy policy = scheme.create(numSites, numVariables, 3);
+            int[] copiesPerSite = new int[numSites];
+            for (int variableId=1; variableId<=numVariables; variableId++) {
+                int[] sites = policy.getSites(variableId);
+                assertEquals(3, sites.length);
+                for (int i=0; i<sites.length; i++) {
+                    if (i > 0)
+                        assertTrue(sites[i] > sites[i-1], "Sites must be distinct and ascending");
+                    copiesPerSite[sites[i]-1]++;
+                }
+            }
+            for (int copies: copiesPerSite)
+                assertEquals(3 * numVariables / numSites, copies, numVariables / 100, scheme.toString());
+        }
+        // Ranges wrap around past the last site
+        assertArrayEquals(new int[]{1, 2, 10}, new RangePlacementPolicy(10, 100, 3).getSites(100));
+        assertThrows(IllegalArgumentException.class, () -> new HashPlacementPolicy(2, 3));
+    }
+}
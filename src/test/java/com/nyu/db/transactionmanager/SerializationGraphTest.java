@@ -0,0 +1,64 @@
+package com.nyu.db.transactionmanager;
+
+import com.nyu.db.model.ReadOperation;
+import com.nyu.db.model.Transaction;
+import com.nyu.db.model.WriteOperation;
+import com.nyu.db.utils.TimeManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SerializationGraphTest {
+
+    private SerializationGraph graph;
+
+    @BeforeEach
+    void init() {
+        this.graph = new SerializationGraph();
+    }
+
+    private boolean commit(Transaction transaction) {
+        boolean status = this.graph.addTransactionAndRunChecks(transaction);
+        transaction.setCommitTimestamp(TimeManager.getTime());
+        TimeManager.incrementTime();
+        return status;
+    }
+
+    @Test
+    public void prunesTransactionsWithNoOverlap() {
+        for (long id=1; id<=100; id++) {
+            Transaction t = new Transaction(id);
+            t.addOperation(new ReadOperation(t, 2, TimeManager.getTime()));
+            t.addOperation(new WriteOperation(t, 2, (int) id, TimeManager.getTime()));
+            TimeManager.incrementTime();
+            assertTrue(this.commit(t));
+            this.graph.pruneTransactions(TimeManager.getTime());
+        }
+        assertEquals(0, this.graph.size());
+    }
+
+    @Test
+    public void keepsPrunedCandidateReachableFromConcurrentTransaction() {
+        Transaction y = new Transaction(1);
+        Transaction old = new Transaction(2);
+        old.addOperation(new WriteOperation(old, 1, 10, TimeManager.getTime()));
+        y.addOperation(new ReadOperation(y, 1, TimeManager.getTime()));
+        y.addOperation(new WriteOperation(y, 2, 20, TimeManager.getTime()));
+        TimeManager.incrementTime();
+        assertTrue(this.commit(old));
+
+        Transaction t = new Transaction(3);
+        t.addOperation(new ReadOperation(t, 1, TimeManager.getTime()));
+        t.addOperation(new ReadOperation(t, 2, TimeManager.getTime()));
+        TimeManager.incrementTime();
+        assertTrue(this.commit(y));
+
+        // Only t is still active, old committed before t began but y can still reach it
+        this.graph.pruneTransactions(t.getStartTimestamp());
+        assertEquals(2, this.graph.size());
+        assertFalse(this.commit(t));
+    }
+}
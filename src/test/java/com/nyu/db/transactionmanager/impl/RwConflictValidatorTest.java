@@ -0,0 +1,70 @@
+package com.nyu.db.transactionmanager.impl;
+
+import com.nyu.db.model.ReadOperation;
+import com.nyu.db.model.Transaction;
+import com.nyu.db.model.WriteOperation;
+import com.nyu.db.transactionmanager.SsiValidation;
+import com.nyu.db.transactionmanager.SsiValidator;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RwConflictValidatorTest {
+
+    private static Transaction transaction(long id, long start, int[] reads, int[] writes) {
+        Transaction t = new Transaction(id, start);
+        for (int variableId: reads)
+            t.addOperation(new ReadOperation(t, variableId, start));
+        for (int variableId: writes)
+            t.addOperation(new WriteOperation(t, variableId, (int) id, start));
+        return t;
+    }
+
+    private static boolean commit(SsiValidator validator, Transaction t, long commitTimestamp) {
+        t.setCommitTimestamp(commitTimestamp);
+        return validator.addTransactionAndRunChecks(t);
+    }
+
+    @Test
+    public void writeSkewIsRefusedByBothValidators() {
+        for (SsiValidation validation: SsiValidation.values()) {
+            SsiValidator validator = validation.create();
+            Transaction t1 = transaction(1, 10, new int[]{1, 2}, new int[]{1});
+            Transaction t2 = transaction(2, 10, new int[]{1, 2}, new int[]{2});
+            assertTrue(commit(validator, t1, 11));
+            assertFalse(commit(validator, t2, 12), validation.name());
+        }
+    }
+
+    @Test
+    public void refusesAPivotEvenWithoutACycle() {
+        // T0 -rw-> T1 -rw-> T2 with nothing leading back to T0
+        SsiValidator graph = SsiValidation.SERIALIZATION_GRAPH.create();
+        SsiValidator flags = SsiValidation.RW_CONFLICT_FLAGS.create();
+        for (SsiValidator validator: new SsiValidator[]{graph, flags}) {
+            Transaction t0 = transaction(0, 10, new int[]{2}, new int[]{});
+            Transaction t1 = transaction(1, 10, new int[]{1}, new int[]{2});
+            Transaction t2 = transaction(2, 10, new int[]{}, new int[]{1});
+            assertTrue(commit(validator, t2, 11));
+            assertTrue(commit(validator, t1, 12));
+            assertEquals(validator == graph, commit(validator, t0, 13));
+        }
+    }
+
+    @Test
+    public void prunesTransactionsNoActiveTransactionOverlaps() {
+        SsiValidator validator = new RwConflictValidator();
+        for (long id=1; id<=100; id++) {
+            assertTrue(commit(validator, transaction(id, 2*id, new int[]{2}, new int[]{2}), 2*id + 1));
+            validator.pruneTransactions(2*id + 1);
+        }
+        assertEquals(0, validator.size());
+
+        Transaction active = transaction(101, 300, new int[]{2}, new int[]{});
+        assertTrue(commit(validator, transaction(102, 300, new int[]{3}, new int[]{2}), 301));
+        validator.pruneTransactions(active.getStartTimestamp());
+        assertEquals(1, validator.size());
+    }
+}
@@ -0,0 +1,462 @@
+package com.nyu.db.transactionmanager.impl;
+
+import com.nyu.db.datamanager.DataManager;
+import com.nyu.db.datamanager.StorageException;
+import com.nyu.db.datamanager.impl.DataManagerImpl;
+import com.nyu.db.model.AbortReason;
+import com.nyu.db.model.CommitOperation;
+import com.nyu.db.model.ReadOperation;
+import com.nyu.db.model.SymbolOperation;
+import com.nyu.db.model.Transaction;
+import com.nyu.db.model.TransactionStatus;
+import com.nyu.db.model.WriteOperation;
+import com.nyu.db.transactionmanager.ReadRouting;
+import com.nyu.db.transactionmanager.RecoveryMode;
+import com.nyu.db.transactionmanager.ReplicationMode;
+import com.nyu.db.transactionmanager.SsiValidation;
+import com.nyu.db.transactionmanager.TransactionManager;
+import com.nyu.db.transactionmanager.TransactionManagerConfig;
+import com.nyu.db.utils.TimeManager;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TransactionManagerImplTest {
+
+    private static final int NUM_SITES = 3;
+    private static final int NUM_THREADS = 8;
+    private static final int INCREMENTS_PER_THREAD = 50;
+
+    private final AtomicLong transactionIds = new AtomicLong(1_000_000);
+
+    private TransactionManager createTransactionManager() {
+        return this.createTransactionManager(TransactionManagerConfig.builder().concurrent(true).commitParallelism(NUM_SITES).build());
+    }
+
+    private TransactionManager createTransactionManager(TransactionManagerConfig config) {
+        List<DataManager> dataManagers = new ArrayList<>();
+        for (int siteId=1; siteId<=NUM_SITES; siteId++) {
+            DataManager dm = new DataManagerImpl(siteId);
+            dm.registerVariable(2, 0);
+            dm.registerVariable(4, 0);
+            dataManagers.add(dm);
+        }
+        return new TransactionManagerImpl(dataManagers, config);
+    }
+
+    private boolean increment(TransactionManager tm, int variableId) {
+        Transaction t = tm.createTransaction(this.transactionIds.incrementAndGet());
+        ReadOperation read = new ReadOperation(t, variableId, TimeManager.getTime());
+        t.addOperation(read);
+        OptionalInt value = tm.read(read);
+        assertTrue(value.isPresent());
+        WriteOperation write = new WriteOperation(t, variableId, value.getAsInt() + 1, TimeManager.getTime());
+        t.addOperation(write);
+        tm.write(write);
+        CommitOperation commit = new CommitOperation(t, TimeManager.getTime());
+        boolean committed = tm.commitTransaction(commit);
+        if (committed)
+            assertEquals(NUM_SITES, commit.getResult().getCommitLatencyNanos().size());
+        return committed;
+    }
+
+    private int readCommitted(TransactionManager tm, int variableId) {
+        Transaction t = tm.createTransaction(this.transactionIds.incrementAndGet());
+        ReadOperation read = new ReadOperation(t, variableId, TimeManager.getTime());
+        t.addOperation(read);
+        int value = tm.read(read).getAsInt();
+        tm.commitTransaction(new CommitOperation(t, TimeManager.getTime()));
+        return value;
+    }
+
+    @Test
+    public void concurrentIncrementsAreNotLost() throws Exception {
+        TransactionManager tm = this.createTransactionManager();
+        ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i=0; i<NUM_THREADS; i++) {
+            int variableId = i % 2 == 0 ? 2 : 4;
+            futures.add(executor.submit(() -> {
+                for (int n=0; n<INCREMENTS_PER_THREAD; n++) {
+                    while (!this.increment(tm, variableId)) {
+                        Thread.yield();
+                    }
+                }
+            }));
+        }
+        for (Future<?> future: futures)
+            future.get(60, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        int expected = NUM_THREADS / 2 * INCREMENTS_PER_THREAD;
+        assertEquals(expected, this.readCommitted(tm, 2));
+        assertEquals(expected, this.readCommitted(tm, 4));
+    }
+
+    @Test
+    public void commitStandsWhenASiteMissesIt() {
+        AtomicBoolean failed = new AtomicBoolean();
+        List<DataManager> dataManagers = new ArrayList<>();
+        for (int siteId=1; siteId<=NUM_SITES; siteId++) {
+            DataManager dm = siteId > 1 ? new DataManagerImpl(siteId) : new DataManagerImpl(siteId) {
+                @Override
+                public boolean commitTransaction(CommitOperation op) {
+                    return false;
+                }
+
+                @Override
+                public void fail() {
+                    failed.set(true);
+                    super.fail();
+                }
+            };
+            dm.registerVariable(2, 0);
+            dataManagers.add(dm);
+        }
+        TransactionManager tm = new TransactionManagerImpl(dataManagers, TransactionManagerConfig.builder()
+                .concurrent(true).commitParallelism(NUM_SITES).build());
+        Transaction writer = tm.createTransaction(this.transactionIds.incrementAndGet());
+        WriteOperation write = new WriteOperation(writer, 2, 5, TimeManager.getTime());
+        writer.addOperation(write);
+        assertTrue(tm.write(write));
+
+        // Validation passed, so the commit is final and the site that did not install it is failed instead
+        assertTrue(tm.commitTransaction(new CommitOperation(writer, TimeManager.getTime())));
+        assertEquals(TransactionStatus.COMMITTED, writer.getStatus());
+        assertTrue(failed.get());
+        for (int i=0; i<NUM_SITES; i++)
+            assertEquals(5, this.readCommitted(tm, 2));
+        tm.close();
+    }
+
+    @Test
+    public void unansweredPrepareAbortsWhileUnansweredCommitFailsTheSite() {
+        AtomicBoolean answerPrepare = new AtomicBoolean();
+        List<DataManager> dataManagers = new ArrayList<>();
+        for (int siteId=1; siteId<=NUM_SITES; siteId++) {
+            DataManager dm = siteId > 1 ? new DataManagerImpl(siteId) : new DataManagerImpl(siteId) {
+                @Override
+                public boolean precommitTransaction(CommitOperation op) {
+                    if (!answerPrepare.get())
+                        throw new RuntimeException("No response to PRECOMMIT from site 1 within 10 ms");
+                    return super.precommitTransaction(op);
+                }
+
+                @Override
+                public boolean commitTransaction(CommitOperation op) {
+                    throw new RuntimeException("No response to COMMIT from site 1 within 10 ms");
+                }
+            };
+            dm.registerVariable(2, 0);
+            dataManagers.add(dm);
+        }
+        TransactionManager tm = new TransactionManagerImpl(dataManagers, TransactionManagerConfig.builder().concurrent(true).build());
+        Transaction aborted = tm.createTransaction(this.transactionIds.incrementAndGet());
+        WriteOperation abortedWrite = new WriteOperation(aborted, 2, 4, TimeManager.getTime());
+        aborted.addOperation(abortedWrite);
+        assertTrue(tm.write(abortedWrite));
+        assertFalse(tm.commitTransaction(new CommitOperation(aborted, TimeManager.getTime())));
+        assertEquals(TransactionStatus.ABORTED, aborted.getStatus());
+
+        answerPrepare.set(true);
+        Transaction committed = tm.createTransaction(this.transactionIds.incrementAndGet());
+        WriteOperation committedWrite = new WriteOperation(committed, 2, 5, TimeManager.getTime());
+        committed.addOperation(committedWrite);
+        assertTrue(tm.write(committedWrite));
+        assertTrue(tm.commitTransaction(new CommitOperation(committed, TimeManager.getTime())));
+        // Site 1 was failed, so x2 is only written to the other sites from now on
+        Transaction next = tm.createTransaction(this.transactionIds.incrementAndGet());
+        WriteOperation nextWrite = new WriteOperation(next, 2, 6, TimeManager.getTime());
+        next.addOperation(nextWrite);
+        assertTrue(tm.write(nextWrite));
+        assertTrue(tm.commitTransaction(new CommitOperation(next, TimeManager.getTime())));
+        assertEquals(6, this.readCommitted(tm, 2));
+    }
+
+    @Test
+    public void siteThatLosesItsStorageIsFailedAndItsReadWaits() throws InterruptedException {
+        AtomicBoolean storageLost = new AtomicBoolean(true);
+        CountDownLatch failed = new CountDownLatch(1);
+        DataManager dm = new DataManagerImpl(1) {
+            @Override
+            public OptionalInt read(ReadOperation op, boolean runConsistencyChecks) {
+                if (storageLost.getAndSet(false))
+                    throw new StorageException("No buffer frame can be freed");
+                return super.read(op, runConsistencyChecks);
+            }
+
+            @Override
+            public void fail() {
+                super.fail();
+                failed.countDown();
+            }
+        };
+        dm.registerVariable(1, 10);
+        TransactionManager tm = new TransactionManagerImpl(List.of(dm));
+        Transaction transaction = tm.createTransaction(this.transactionIds.incrementAndGet());
+        ReadOperation read = new ReadOperation(transaction, 1, TimeManager.getTime());
+        transaction.addOperation(read);
+        tm.read(read);
+        assertFalse(read.isExecuted());
+        assertTrue(failed.await(10, TimeUnit.SECONDS));
+
+        tm.recover(1);
+        assertTrue(read.isExecuted());
+        assertEquals(10, read.getValue());
+    }
+
+    @Test
+    public void recoveredSiteCatchesUpFromPeers() {
+        TransactionManager tm = this.createTransactionManager(TransactionManagerConfig.builder()
+                .concurrent(true).recoveryMode(RecoveryMode.CATCH_UP).build());
+        tm.fail(1);
+        TimeManager.incrementTime();
+        Transaction writer = tm.createTransaction(this.transactionIds.incrementAndGet());
+        WriteOperation write = new WriteOperation(writer, 2, 7, TimeManager.getTime());
+        writer.addOperation(write);
+        assertTrue(tm.write(write));
+        assertTrue(tm.commitTransaction(new CommitOperation(writer, TimeManager.getTime())));
+        assertEquals(0L, tm.getMetricsRegistry().snapshot().get("site.1.missedWrites"));
+
+        // Writes to x4 skip site 1 while it is down and reach it once it recovers
+        Transaction active = tm.createTransaction(this.transactionIds.incrementAndGet());
+        WriteOperation activeWrite = new WriteOperation(active, 4, 9, TimeManager.getTime());
+        active.addOperation(activeWrite);
+        assertTrue(tm.write(activeWrite));
+        tm.recover(1);
+        CommitOperation activeCommit = new CommitOperation(active, TimeManager.getTime());
+        assertTrue(tm.commitTransaction(activeCommit));
+        assertEquals(NUM_SITES, activeCommit.getResult().getCommitLatencyNanos().size());
+
+        // Site 1 is the only one left and serves the replicated variables without waiting for a new commit
+        tm.fail(2);
+        tm.fail(3);
+        TimeManager.incrementTime();
+        assertEquals(7, this.readCommitted(tm, 2));
+        assertEquals(9, this.readCommitted(tm, 4));
+    }
+
+    @Test
+    public void readOnlyTransactionsOnSafeSnapshotsSkipValidation() {
+        TransactionManager tm = this.createTransactionManager();
+        Transaction reader = tm.createReadOnlyTransaction(this.transactionIds.incrementAndGet());
+        ReadOperation read = new ReadOperation(reader, 2, TimeManager.getTime());
+        reader.addOperation(read);
+        assertEquals(OptionalInt.of(0), tm.read(read));
+        WriteOperation write = new WriteOperation(reader, 2, 1, TimeManager.getTime());
+        assertThrows(IllegalStateException.class, () -> reader.addOperation(write));
+        assertThrows(IllegalStateException.class, () -> tm.write(write));
+
+        // Began while a read-write transaction was active, so it is validated through the graph
+        Transaction writer = tm.createTransaction(this.transactionIds.incrementAndGet());
+        Transaction unsafeReader = tm.createReadOnlyTransaction(this.transactionIds.incrementAndGet());
+        assertTrue(reader.isSafeSnapshot());
+        assertFalse(unsafeReader.isSafeSnapshot());
+        ReadOperation unsafeRead = new ReadOperation(unsafeReader, 4, TimeManager.getTime());
+        unsafeReader.addOperation(unsafeRead);
+        assertEquals(OptionalInt.of(0), tm.read(unsafeRead));
+        WriteOperation writerWrite = new WriteOperation(writer, 4, 5, TimeManager.getTime());
+        writer.addOperation(writerWrite);
+        assertTrue(tm.write(writerWrite));
+        assertTrue(tm.commitTransaction(new CommitOperation(writer, TimeManager.getTime())));
+        assertTrue(tm.commitTransaction(new CommitOperation(unsafeReader, TimeManager.getTime())));
+        assertEquals(0L, tm.getMetricsRegistry().snapshot().get("transactions.committed.readOnly").longValue());
+
+        // Reader still sees the snapshot at its start and commits without touching any site
+        TimeManager.incrementTime();
+        Transaction lateReader = tm.createReadOnlyTransaction(this.transactionIds.incrementAndGet());
+        ReadOperation lateRead = new ReadOperation(lateReader, 4, TimeManager.getTime());
+        lateReader.addOperation(lateRead);
+        assertEquals(OptionalInt.of(5), tm.read(lateRead));
+        CommitOperation commit = new CommitOperation(reader, TimeManager.getTime());
+        assertTrue(tm.commitTransaction(commit));
+        assertTrue(commit.getResult().getCommitLatencyNanos().isEmpty());
+        assertTrue(tm.commitTransaction(new CommitOperation(lateReader, TimeManager.getTime())));
+        assertEquals(2L, tm.getMetricsRegistry().snapshot().get("transactions.committed.readOnly").longValue());
+    }
+
+    @Test
+    public void eagerAbortsStopDoomedTransactionsAtTheOperation() {
+        TransactionManager tm = this.createTransactionManager(TransactionManagerConfig.builder().concurrent(true)
+                .eagerAbort(true).ssiValidation(SsiValidation.RW_CONFLICT_FLAGS).build());
+        Transaction safeReader = tm.createReadOnlyTransaction(this.transactionIds.incrementAndGet());
+        assertTrue(safeReader.isSafeSnapshot());
+        Transaction reader = tm.createTransaction(this.transactionIds.incrementAndGet());
+        Transaction pivot = tm.createTransaction(this.transactionIds.incrementAndGet());
+        Transaction writer = tm.createTransaction(this.transactionIds.incrementAndGet());
+        WriteOperation write = new WriteOperation(writer, 4, 1, TimeManager.getTime());
+        writer.addOperation(write);
+        assertTrue(tm.write(write));
+        assertTrue(tm.commitTransaction(new CommitOperation(writer, TimeManager.getTime())));
+
+        // Pivot read x4 before the writer's commit, then wrote x2, so it has an RW edge out
+        ReadOperation pivotRead = new ReadOperation(pivot, 4, TimeManager.getTime());
+        pivot.addOperation(pivotRead);
+        assertEquals(OptionalInt.of(0), tm.read(pivotRead));
+        WriteOperation pivotWrite = new WriteOperation(pivot, 2, 2, TimeManager.getTime());
+        pivot.addOperation(pivotWrite);
+        assertTrue(tm.write(pivotWrite));
+        assertTrue(tm.commitTransaction(new CommitOperation(pivot, TimeManager.getTime())));
+
+        // Reading x2 would give the pivot an RW edge in as well
+        ReadOperation read = new ReadOperation(reader, 2, TimeManager.getTime());
+        reader.addOperation(read);
+        assertEquals(OptionalInt.empty(), tm.read(read));
+        assertEquals(TransactionStatus.ABORTED, reader.getStatus());
+        assertEquals(AbortReason.SERIALIZATION_CYCLE, reader.getAbortReason());
+        // A read-only transaction on a safe snapshot can't close a cycle and reads x2 as of its start
+        ReadOperation safeRead = new ReadOperation(safeReader, 2, TimeManager.getTime());
+        safeReader.addOperation(safeRead);
+        assertEquals(OptionalInt.of(0), tm.read(safeRead));
+        assertTrue(tm.commitTransaction(new CommitOperation(safeReader, TimeManager.getTime())));
+
+        // Writing x4 after the writer committed it can only fail first committer wins
+        Transaction late = tm.createTransaction(this.transactionIds.incrementAndGet());
+        Transaction lateWriter = tm.createTransaction(this.transactionIds.incrementAndGet());
+        WriteOperation first = new WriteOperation(lateWriter, 4, 3, TimeManager.getTime());
+        lateWriter.addOperation(first);
+        assertTrue(tm.write(first));
+        assertTrue(tm.commitTransaction(new CommitOperation(lateWriter, TimeManager.getTime())));
+        WriteOperation second = new WriteOperation(late, 4, 4, TimeManager.getTime());
+        late.addOperation(second);
+        assertFalse(tm.write(second));
+        assertEquals(AbortReason.FIRST_COMMITTER_WINS, late.getAbortReason());
+        assertEquals(2L, tm.getMetricsRegistry().snapshot().get("transactions.abortedEarly").longValue());
+    }
+
+    @Test
+    public void batchRunsOperationsInSubmissionOrder() {
+        List<DataManager> dataManagers = new ArrayList<>();
+        for (int siteId=1; siteId<=NUM_SITES; siteId++) {
+            DataManager dm = new DataManagerImpl(siteId);
+            dm.registerVariable(2, 20);
+            dataManagers.add(dm);
+        }
+        dataManagers.get(0).registerVariable(1, 10);
+        dataManagers.get(2).registerVariable(3, 30);
+        TransactionManager tm = new TransactionManagerImpl(dataManagers, TransactionManagerConfig.builder().concurrent(true).build());
+        tm.fail(3);
+
+        Transaction t1 = tm.createTransaction(this.transactionIds.incrementAndGet());
+        Transaction t2 = tm.createTransaction(this.transactionIds.incrementAndGet());
+        List<SymbolOperation> ops = List.of(
+                new ReadOperation(t1, 2, TimeManager.getTime()),
+                new ReadOperation(t2, 1, TimeManager.getTime()),
+                new WriteOperation(t1, 2, 21, TimeManager.getTime()),
+                new WriteOperation(t1, 1, 11, TimeManager.getTime()),
+                new WriteOperation(t2, 3, 31, TimeManager.getTime()),
+                new ReadOperation(t1, 2, TimeManager.getTime()),
+                new ReadOperation(t2, 2, TimeManager.getTime()),
+                new ReadOperation(t2, 3, TimeManager.getTime()));
+        for (SymbolOperation op: ops)
+            op.getTransaction().addOperation(op);
+
+        List<OptionalInt> results = tm.submitBatch(ops);
+        // x3 lives only on the failed site, so its write and read wait. T1 sees its own write of x2, T2 doesn't.
+        assertEquals(List.of(OptionalInt.of(20), OptionalInt.of(10), OptionalInt.of(21), OptionalInt.of(11),
+                OptionalInt.empty(), OptionalInt.of(21), OptionalInt.of(20), OptionalInt.empty()), results);
+        assertTrue(ops.get(2).isExecuted());
+        assertTrue(!ops.get(4).isExecuted() && !ops.get(7).isExecuted());
+
+        assertTrue(tm.commitTransaction(new CommitOperation(t1, TimeManager.getTime())));
+        assertEquals(21, this.readCommitted(tm, 2));
+        assertEquals(11, this.readCommitted(tm, 1));
+        tm.recover(3);
+        assertTrue(ops.get(4).isExecuted());
+        assertTrue(ops.get(7).isExecuted());
+        assertEquals(31, ((ReadOperation) ops.get(7)).getValue());
+        // The write to x3 replayed on recovery commits like any other
+        assertTrue(tm.commitTransaction(new CommitOperation(t2, TimeManager.getTime())));
+        assertEquals(31, this.readCommitted(tm, 3));
+    }
+
+    @Test
+    public void quorumReadsFindLatestVersionOnStaleReplicas() {
+        TransactionManager tm = this.createTransactionManager(TransactionManagerConfig.builder()
+                .concurrent(true).replicationMode(ReplicationMode.QUORUM).build());
+        // Majority of 3 sites: writes reach 2 replicas, reads ask 2 replicas
+        Transaction writer = tm.createTransaction(this.transactionIds.incrementAndGet());
+        WriteOperation write = new WriteOperation(writer, 2, 5, TimeManager.getTime());
+        writer.addOperation(write);
+        assertTrue(tm.write(write));
+        CommitOperation commit = new CommitOperation(writer, TimeManager.getTime());
+        assertTrue(tm.commitTransaction(commit));
+        assertEquals(2, commit.getResult().getCommitLatencyNanos().size());
+        assertEquals(0L, tm.getMetricsRegistry().snapshot().get("site.3.writes"));
+
+        // Site 3 missed the commit, the quorum of sites 2 and 3 still returns it
+        tm.fail(1);
+        assertEquals(5, this.readCommitted(tm, 2));
+
+        // Without a read quorum the read waits until a replica comes back
+        tm.fail(2);
+        Transaction reader = tm.createTransaction(this.transactionIds.incrementAndGet());
+        ReadOperation read = new ReadOperation(reader, 2, TimeManager.getTime());
+        reader.addOperation(read);
+        assertTrue(tm.read(read).isEmpty());
+        tm.recover(1);
+        assertTrue(read.isExecuted());
+        assertEquals(5, read.getValue());
+    }
+
+    @Test
+    public void readsAreSpreadOverReplicasAndHedgedPastSlowOnes() throws InterruptedException {
+        TransactionManager tm = this.createTransactionManager(TransactionManagerConfig.builder()
+                .concurrent(true).readRouting(ReadRouting.ROUND_ROBIN).build());
+        for (int i=0; i<3*NUM_SITES; i++)
+            this.readCommitted(tm, 2);
+        for (int siteId=1; siteId<=NUM_SITES; siteId++)
+            assertEquals(3L, tm.getMetricsRegistry().snapshot().get("site."+siteId+".reads.served"));
+
+        // Site 1 stalls until released, the read has to be served by site 2 in the meantime
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch slowReadDone = new CountDownLatch(1);
+        List<DataManager> dataManagers = new ArrayList<>();
+        for (int siteId=1; siteId<=2; siteId++) {
+            boolean slow = siteId == 1;
+            DataManager dm = new DataManagerImpl(siteId) {
+                @Override
+                public OptionalInt read(ReadOperation op) {
+                    if (!slow)
+                        return super.read(op);
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                        return super.read(op);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    } finally {
+                        slowReadDone.countDown();
+                    }
+                }
+            };
+            dm.registerVariable(2, 20);
+            dataManagers.add(dm);
+        }
+        TransactionManager hedged = new TransactionManagerImpl(dataManagers, TransactionManagerConfig.builder()
+                .concurrent(true).hedgeAfterMicros(1_000).build());
+        assertEquals(20, this.readCommitted(hedged, 2));
+        assertEquals(1, release.getCount());
+        release.countDown();
+        assertTrue(slowReadDone.await(10, TimeUnit.SECONDS));
+        Map<String, Number> metrics = hedged.getMetricsRegistry().snapshot();
+        assertEquals(1L, metrics.get("reads.hedged"));
+        // The stalled replica answered too late to count
+        assertEquals(0L, metrics.get("site.1.reads.served"));
+        assertEquals(1L, metrics.get("site.2.reads.served"));
+    }
+}
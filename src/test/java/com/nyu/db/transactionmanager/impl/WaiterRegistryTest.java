@@ -0,0 +1,53 @@
+package com.nyu.db.transactionmanager.impl;
+
+import com.nyu.db.model.AbortReason;
+import com.nyu.db.model.ReadOperation;
+import com.nyu.db.model.SymbolOperation;
+import com.nyu.db.model.Transaction;
+import com.nyu.db.model.WriteOperation;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WaiterRegistryTest {
+
+    @Test
+    public void wakesOnlyOperationsOfTheSiteInOrderAndDeduplicates() {
+        WaiterRegistry waiters = new WaiterRegistry();
+        Transaction t1 = new Transaction(1, 0);
+        Transaction t2 = new Transaction(2, 0);
+        ReadOperation replicatedRead = new ReadOperation(t1, 2, 0);
+        WriteOperation write = new WriteOperation(t2, 4, 40, 0);
+        ReadOperation otherSiteRead = new ReadOperation(t2, 1, 0);
+        waiters.park(replicatedRead, 1);
+        waiters.park(replicatedRead, 2);
+        waiters.park(replicatedRead, 2);
+        waiters.park(otherSiteRead, 2);
+        waiters.park(write, 1);
+        assertEquals(2, waiters.size(1));
+        assertEquals(2, waiters.size(2));
+
+        assertEquals(List.<SymbolOperation>of(replicatedRead, write), waiters.wake(1));
+        assertEquals(0, waiters.size(1));
+        assertTrue(waiters.wake(1).isEmpty());
+
+        // Served on site 1, so it no longer waits on site 2
+        waiters.remove(replicatedRead);
+        assertEquals(List.<SymbolOperation>of(otherSiteRead), waiters.wake(2));
+    }
+
+    @Test
+    public void abortedTransactionsStopWaiting() {
+        WaiterRegistry waiters = new WaiterRegistry();
+        Transaction t = new Transaction(1, 0);
+        waiters.park(new ReadOperation(t, 2, 0), 1);
+        waiters.park(new WriteOperation(t, 4, 40, 0), 3);
+        t.markAborted(AbortReason.SITE_FAILURE);
+        assertEquals(0, waiters.size(1));
+        assertTrue(waiters.wake(1).isEmpty());
+        assertTrue(waiters.wake(3).isEmpty());
+    }
+}
@@ -0,0 +1,121 @@
+package com.nyu.db.transport;
+
+import com.nyu.db.Simulation;
+import com.nyu.db.SimulationTest;
+import com.nyu.db.datamanager.impl.DataManagerImpl;
+import com.nyu.db.model.CommitOperation;
+import com.nyu.db.model.ReadOperation;
+import com.nyu.db.model.Transaction;
+import com.nyu.db.model.WriteOperation;
+import com.nyu.db.utils.TimeManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.boot.test.system.CapturedOutput;
+import org.springframework.boot.test.system.OutputCaptureExtension;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(OutputCaptureExtension.class)
+public class RemoteDataManagerTest {
+
+    private static final int NUM_SITES = 10;
+
+    @ParameterizedTest
+    @MethodSource("getTestNumbers")
+    public void simulationOverLoopbackMatchesLocalRun(int testNum, CapturedOutput output) throws Exception {
+        List<DataManagerServer> servers = new ArrayList<>();
+        List<RemoteDataManager> clients = new ArrayList<>();
+        try {
+            for (int siteId=1; siteId<=NUM_SITES; siteId++)
+                servers.add(new DataManagerServer(new DataManagerImpl(siteId), 0));
+            int offset = output.getOut().length();
+            Simulation sim = new Simulation(siteId -> {
+                RemoteDataManager client = new RemoteDataManager(siteId, "localhost", servers.get(siteId-1).getPort());
+                clients.add(client);
+                return client;
+            });
+            sim.run(String.format("src/test/resources/inputs/test%d.txt", testNum));
+            String expectedOut = Files.readString(Path.of(String.format("src/test/resources/outputs/test%d.txt", testNum)));
+            assertEquals(expectedOut, output.getOut().substring(offset));
+        } finally {
+            for (RemoteDataManager client: clients)
+                client.disconnect();
+            for (DataManagerServer server: servers)
+                server.close();
+        }
+    }
+
+    @Test
+    public void concurrentCallsArePipelinedOnOneConnection() throws Exception {
+        DataManagerImpl site = new DataManagerImpl(1);
+        site.registerVariable(2, 20);
+        try (DataManagerServer server = new DataManagerServer(site, 0)) {
+            RemoteDataManager remote = new RemoteDataManager(1, "localhost", server.getPort());
+            ExecutorService pool = Executors.newFixedThreadPool(8);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i=0; i<8; i++) {
+                long transactionId = 2_000_000 + i;
+                futures.add(pool.submit(() -> {
+                    for (int j=0; j<50; j++) {
+                        Transaction t = new Transaction(transactionId);
+                        WriteOperation write = new WriteOperation(t, 2, j, TimeManager.getTime());
+                        t.addOperation(write);
+                        assertTrue(remote.write(write));
+                        write.setExecutedTimestamp(TimeManager.getTime());
+                        // Own uncommitted write is read back from the site's workspace for this transaction
+                        OptionalInt value = remote.read(new ReadOperation(t, 2, TimeManager.getTime()));
+                        assertEquals(OptionalInt.of(j), value);
+                        remote.abortTransaction(transactionId);
+                    }
+                }));
+            }
+            for (Future<?> future: futures)
+                future.get();
+            pool.shutdown();
+
+            Transaction t = new Transaction(2_000_100);
+            t.setCommitTimestamp(TimeManager.incrementTime());
+            WriteOperation write = new WriteOperation(t, 2, 99, TimeManager.getTime());
+            t.addOperation(write);
+            remote.write(write);
+            CommitOperation commit = new CommitOperation(t, TimeManager.getTime());
+            assertTrue(remote.precommitTransaction(commit));
+            assertTrue(remote.commitTransaction(commit));
+            assertTrue(commit.isExecuted());
+            assertEquals(OptionalInt.of(99), site.read(new ReadOperation(new Transaction(2_000_101), 2, TimeManager.getTime())));
+            assertThrows(IllegalArgumentException.class, () -> new RemoteDataManager(2, "localhost", server.getPort()));
+            remote.disconnect();
+        }
+    }
+
+    @Test
+    public void unansweredCallFailsAfterTheResponseTimeout() throws Exception {
+        // Accepts the connection but never answers
+        try (ServerSocket silentServer = new ServerSocket(0)) {
+            long startNanos = System.nanoTime();
+            RuntimeException e = assertThrows(RuntimeException.class,
+                    () -> new RemoteDataManager(1, "localhost", silentServer.getLocalPort(), 200));
+            assertTrue(e.getMessage().contains("within 200 ms"));
+            assertTrue(System.nanoTime() - startNanos < TimeUnit.SECONDS.toNanos(10));
+        }
+    }
+
+    public static IntStream getTestNumbers() {
+        return SimulationTest.getTestNumbers();
+    }
+}
@@ -0,0 +1,64 @@
+package com.nyu.db.workload;
+
+import com.nyu.db.model.AbortReason;
+import org.junit.jupiter.api.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LoadDriverTest {
+
+    @Test
+    public void zipfianSkewFavoursLowRanks() {
+        ZipfianGenerator uniform = new ZipfianGenerator(10, 0);
+        ZipfianGenerator skewed = new ZipfianGenerator(10, 1.5);
+        SplittableRandom random = new SplittableRandom(1);
+        int[] uniformCounts = new int[10];
+        int[] skewedCounts = new int[10];
+        for (int i=0; i<100_000; i++) {
+            uniformCounts[uniform.next(random)]++;
+            skewedCounts[skewed.next(random)]++;
+        }
+        for (int count: uniformCounts)
+            assertEquals(10_000, count, 500);
+        // 1/H(10, 1.5) of the draws go to the first rank
+        assertEquals(50_100, skewedCounts[0], 1_000);
+        assertTrue(skewedCounts[1] > skewedCounts[9]);
+    }
+
+    @Test
+    public void reportsCommitsAndAbortsUnderFailures() throws Exception {
+        WorkloadConfig config = WorkloadConfig.builder()
+                .numSites(4)
+                .clients(4)
+                .readRatio(0.5)
+                .targetRate(400)
+                .durationMillis(500)
+                .failureRate(20)
+                .recoveryDelayMillis(20)
+                .operationTimeoutMillis(200)
+                .exportJmx(true)
+                .build();
+        WorkloadReport report = new LoadDriver(config).run();
+
+        assertTrue(report.getCommitted() > 0);
+        assertTrue(report.getSiteFailures() > 0);
+        assertTrue(report.getAborted() > 0);
+        // Operations parked on a failed site complete or abort once it recovers, well within the client's timeout
+        assertEquals(0, report.getTimedOut());
+        assertEquals(report.getCommitted(), report.getLatency().getCount());
+        long aborted = report.getAbortsByReason().values().stream().mapToLong(Long::longValue).sum();
+        assertEquals(report.getAborted(), aborted);
+        // Transactions are paced, so the run can't outpace the target rate by much
+        assertTrue(report.getCommitted() + report.getAborted() + report.getTimedOut() <= 400 * 0.5 + config.getClients());
+        assertTrue(report.getAbortRate(AbortReason.SITE_FAILURE) <= 1);
+        // Metrics are only published while the workload runs
+        assertFalse(ManagementFactory.getPlatformMBeanServer()
+                .isRegistered(new ObjectName("com.nyu.db:type=Metrics,component=transactionManager")));
+    }
+}